@@ -11,7 +11,10 @@ package org.openmrs.module.ugandaemrsync;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.ugandaemrsync.api.ConceptCodingCache;
+import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpClient;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
 
 /**
@@ -34,9 +37,19 @@ public class UgandaEMRSyncActivator extends BaseModuleActivator {
 		catch (Exception e) {
 			
 		}
+		Context.getAdministrationService().addGlobalPropertyListener(getHttpClient());
+		Context.getAdministrationService().addGlobalPropertyListener(ConceptCodingCache.getInstance());
 		log.info("Started UgandaemrSync");
 	}
 	
+	/**
+	 * @see #stopped()
+	 */
+	public void stopped() {
+		Context.getAdministrationService().removeGlobalPropertyListener(getHttpClient());
+		Context.getAdministrationService().removeGlobalPropertyListener(ConceptCodingCache.getInstance());
+	}
+	
 	/**
 	 * @see #shutdown()
 	 */
@@ -44,4 +57,8 @@ public class UgandaEMRSyncActivator extends BaseModuleActivator {
 		log.info("Shutdown UgandaemrSync");
 	}
 	
+	private UgandaEMRHttpClient getHttpClient() {
+		return Context.getRegisteredComponent("ugandaemrsync.UgandaEMRHttpClient", UgandaEMRHttpClient.class);
+	}
+	
 }
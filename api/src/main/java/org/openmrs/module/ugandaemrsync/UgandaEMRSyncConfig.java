@@ -106,5 +106,49 @@ public class UgandaEMRSyncConfig {
 	public static final String PATIENT_ID_TYPE_CROSS_BORDER_NAME = "Patient Unique  ID Code (UIC)";
 	public static final String FSHR_SYNC_FHIR_PROFILE_UUID = "f2190cf4-2236-11ee-be56-0242ac120002";
 
+	public static final String GP_HTTP_MAX_CONNECTIONS_TOTAL = "ugandaemrsync.http.maxConnectionsTotal";
+
+	public static final String GP_HTTP_MAX_CONNECTIONS_PER_ROUTE = "ugandaemrsync.http.maxConnectionsPerRoute";
+
+	public static final String GP_HTTP_CONNECT_TIMEOUT = "ugandaemrsync.http.connectTimeout";
+
+	public static final String GP_HTTP_SOCKET_TIMEOUT = "ugandaemrsync.http.socketTimeout";
+
+	public static final String GP_HTTP_CONNECTION_REQUEST_TIMEOUT = "ugandaemrsync.http.connectionRequestTimeout";
+
+	public static final String GP_HTTP_IDLE_CONNECTION_TIMEOUT = "ugandaemrsync.http.idleConnectionTimeout";
+
+	public static final String GP_CONNECTIVITY_CACHE_TTL = "ugandaemrsync.connectivity.cacheTtl";
+
+	public static final String GP_CONNECTIVITY_FAILURE_THRESHOLD = "ugandaemrsync.connectivity.failureThreshold";
+
+	public static final String GP_CIRCUIT_BREAKER_FAILURE_THRESHOLD = "ugandaemrsync.circuitBreaker.failureThreshold";
+
+	public static final String GP_CIRCUIT_BREAKER_INITIAL_BACKOFF = "ugandaemrsync.circuitBreaker.initialBackoff";
+
+	public static final String GP_CIRCUIT_BREAKER_MAX_BACKOFF = "ugandaemrsync.circuitBreaker.maxBackoff";
+
+	public static final String GP_CONCEPT_CODING_CACHE_MAX_SIZE = "ugandaemrsync.conceptCodingCache.maxSize";
+
+	public static final String GP_CASE_GENERATION_THREADS = "ugandaemrsync.caseGeneration.threads";
+
+	public static final String GP_CHANGE_EVENT_RETENTION_DAYS = "ugandaemrsync.changeEvent.retentionDays";
+
+	public static final String GP_FHIR_RESOURCE_PURGE_BATCH_SIZE = "ugandaemrsync.fhirResourcePurge.batchSize";
+
+	public static final String GP_FHIR_RESOURCE_PURGE_TIME_BUDGET = "ugandaemrsync.fhirResourcePurge.timeBudget";
+
+	public static final String GP_FHIR_RESOURCE_ARCHIVE_AGE = "ugandaemrsync.fhirResourceArchive.age";
+
+	public static final String GP_FHIR_RESOURCE_ARCHIVE_KEEP_RESOURCE = "ugandaemrsync.fhirResourceArchive.keepResource";
+
+	public static final String GP_OUTBOX_LEASE_DURATION = "ugandaemrsync.outbox.leaseDuration";
+
+	public static final String GP_RETRY_NETWORK_BACKOFF = "ugandaemrsync.retry.networkBackoff";
+
+	public static final String GP_RETRY_SERVER_ERROR_BACKOFF = "ugandaemrsync.retry.serverErrorBackoff";
+
+	public static final String GP_RETRY_CLIENT_ERROR_BACKOFF = "ugandaemrsync.retry.clientErrorBackoff";
+
 
 }
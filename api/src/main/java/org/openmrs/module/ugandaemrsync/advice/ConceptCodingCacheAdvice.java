@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.advice;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.module.ugandaemrsync.api.ConceptCodingCache;
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+
+/**
+ * Keeps the {@link ConceptCodingCache} in line with the dictionary. Saving, retiring or purging a concept removes it
+ * from the cache, changing a reference term, concept source or datatype empties the cache since any concept may use
+ * it.
+ */
+public class ConceptCodingCacheAdvice implements AfterReturningAdvice {
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+        if (args == null || args.length == 0 || !isChange(method.getName())) {
+            return;
+        }
+        Object changed = args[0];
+        if (changed instanceof Concept) {
+            ConceptCodingCache.getInstance().invalidate(((Concept) changed).getUuid());
+        } else if (changed instanceof ConceptReferenceTerm || changed instanceof ConceptSource || changed instanceof ConceptDatatype) {
+            ConceptCodingCache.getInstance().invalidateAll();
+        }
+    }
+
+    private boolean isChange(String methodName) {
+        return methodName.startsWith("save") || methodName.startsWith("retire") || methodName.startsWith("unretire") || methodName.startsWith("purge");
+    }
+}
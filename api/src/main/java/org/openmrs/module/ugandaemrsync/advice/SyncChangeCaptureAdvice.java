@@ -0,0 +1,129 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.advice;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientProgram;
+import org.openmrs.Person;
+import org.openmrs.PersonAddress;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
+import org.openmrs.module.ugandaemrsync.model.SyncChangeEvent;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Date;
+
+import static org.openmrs.module.ugandaemrsync.model.SyncChangeEvent.ENTITY_TYPE_ENCOUNTER;
+import static org.openmrs.module.ugandaemrsync.model.SyncChangeEvent.ENTITY_TYPE_OBS;
+import static org.openmrs.module.ugandaemrsync.model.SyncChangeEvent.ENTITY_TYPE_ORDER;
+import static org.openmrs.module.ugandaemrsync.model.SyncChangeEvent.ENTITY_TYPE_PATIENT;
+import static org.openmrs.module.ugandaemrsync.model.SyncChangeEvent.ENTITY_TYPE_PATIENT_PROGRAM;
+
+/**
+ * Records a {@link SyncChangeEvent} when an encounter, observation, order, patient or patient program is saved, voided,
+ * unvoided, discontinued or purged. Changes to a person, a person name, a person address or a patient identifier are
+ * recorded as a change to the patient they belong to. The event is saved in a transaction of its own once the
+ * transaction of the change commits, so it is only kept when the change is committed and failing to save it never
+ * fails the change. The event is lost when the process dies between the two commits, see
+ * {@link UgandaEMRSyncService#saveSyncChangeEvent(SyncChangeEvent)}.
+ */
+public class SyncChangeCaptureAdvice implements AfterReturningAdvice {
+
+    private Log log = LogFactory.getLog(SyncChangeCaptureAdvice.class);
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+        if (!isChange(method.getName())) {
+            return;
+        }
+        // saving an observation or discontinuing an order returns a new object in place of the argument
+        Object changed = returnValue;
+        if (!isCaptured(changed)) {
+            changed = args == null || args.length == 0 ? null : args[0];
+            if (!isCaptured(changed)) {
+                return;
+            }
+        }
+
+        SyncChangeEvent syncChangeEvent = toSyncChangeEvent(changed);
+        if (syncChangeEvent.getEntityId() == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    record(syncChangeEvent);
+                }
+            });
+        } else {
+            record(syncChangeEvent);
+        }
+    }
+
+    private void record(SyncChangeEvent syncChangeEvent) {
+        try {
+            Context.getService(UgandaEMRSyncService.class).saveSyncChangeEvent(syncChangeEvent);
+        } catch (Exception e) {
+            log.error("Unable to record change to " + syncChangeEvent.getEntityType() + " " + syncChangeEvent.getEntityId(), e);
+        }
+    }
+
+    private boolean isChange(String methodName) {
+        return methodName.startsWith("save") || methodName.startsWith("void") || methodName.startsWith("unvoid") || methodName.startsWith("discontinue") || methodName.startsWith("purge");
+    }
+
+    private boolean isCaptured(Object changed) {
+        return changed instanceof Encounter || changed instanceof Obs || changed instanceof Order || changed instanceof Person || changed instanceof PersonName
+                || changed instanceof PersonAddress || changed instanceof PatientIdentifier || changed instanceof PatientProgram;
+    }
+
+    private SyncChangeEvent toSyncChangeEvent(Object changed) {
+        Date now = new Date();
+        if (changed instanceof Encounter) {
+            Encounter encounter = (Encounter) changed;
+            return new SyncChangeEvent(ENTITY_TYPE_ENCOUNTER, encounter.getEncounterId(), getPersonId(encounter.getPatient()), now);
+        } else if (changed instanceof Obs) {
+            Obs obs = (Obs) changed;
+            return new SyncChangeEvent(ENTITY_TYPE_OBS, obs.getObsId(), getPersonId(obs.getPerson()), now);
+        } else if (changed instanceof Order) {
+            Order order = (Order) changed;
+            return new SyncChangeEvent(ENTITY_TYPE_ORDER, order.getOrderId(), getPersonId(order.getPatient()), now);
+        } else if (changed instanceof Person) {
+            Integer personId = ((Person) changed).getPersonId();
+            return new SyncChangeEvent(ENTITY_TYPE_PATIENT, personId, personId, now);
+        } else if (changed instanceof PersonName) {
+            Integer personId = getPersonId(((PersonName) changed).getPerson());
+            return new SyncChangeEvent(ENTITY_TYPE_PATIENT, personId, personId, now);
+        } else if (changed instanceof PersonAddress) {
+            Integer personId = getPersonId(((PersonAddress) changed).getPerson());
+            return new SyncChangeEvent(ENTITY_TYPE_PATIENT, personId, personId, now);
+        } else if (changed instanceof PatientIdentifier) {
+            Integer personId = getPersonId(((PatientIdentifier) changed).getPatient());
+            return new SyncChangeEvent(ENTITY_TYPE_PATIENT, personId, personId, now);
+        }
+        PatientProgram patientProgram = (PatientProgram) changed;
+        return new SyncChangeEvent(ENTITY_TYPE_PATIENT_PROGRAM, patientProgram.getPatientProgramId(), getPersonId(patientProgram.getPatient()), now);
+    }
+
+    private Integer getPersonId(Person person) {
+        return person == null ? null : person.getPersonId();
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Circuit breaker for a single sync destination. The circuit opens once the number of consecutive failed requests
+ * reaches the threshold, after which requests are refused until a backoff period has passed. The backoff doubles each
+ * time the circuit opens again without a successful request in between, up to the maximum, and is jittered so that
+ * tasks sharing a destination do not all retry at the same moment. When the backoff has passed a single trial request
+ * is let through, its outcome either closes the circuit or opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String destination;
+
+    private final int failureThreshold;
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private int timesOpened;
+
+    private long openUntil;
+
+    private long trialStartedAt;
+
+    private Date lastFailureDate;
+
+    public CircuitBreaker(String destination, int failureThreshold, long initialBackoff, long maxBackoff) {
+        this.destination = destination;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialBackoff = Math.max(1, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+    }
+
+    /**
+     * Checks if a request may be sent to the destination. Callers that get true must report the outcome through
+     * {@link #recordSuccess()}, {@link #recordFailure()} or {@link #recordResponse(Map)}.
+     *
+     * @return false when the circuit is open
+     */
+    public synchronized boolean allowRequest() {
+        long now = currentTimeMillis();
+        switch (state) {
+            case OPEN:
+                if (now < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialStartedAt = now;
+                return true;
+            case HALF_OPEN:
+                // allow another trial if the outcome of the previous one was never reported
+                if (now - trialStartedAt < initialBackoff) {
+                    return false;
+                }
+                trialStartedAt = now;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks if requests are being refused without letting a trial request through
+     *
+     * @return true while the circuit is open and its backoff has not passed
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && currentTimeMillis() < openUntil;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        timesOpened = 0;
+        openUntil = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        lastFailureDate = new Date(currentTimeMillis());
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            open();
+        }
+    }
+
+    /**
+     * Records the outcome of a request sent through {@link UgandaEMRHttpURLConnection}. A response without a status
+     * code, meaning the server could not be reached, or with a 5xx status code counts as a failure. Any other response
+     * shows that the destination is up.
+     *
+     * @param response the map returned by the request
+     */
+    public void recordResponse(Map response) {
+        if (isFailure(response)) {
+            recordFailure();
+        } else {
+            recordSuccess();
+        }
+    }
+
+    public static boolean isFailure(Map response) {
+        if (response == null || response.get("responseCode") == null) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(response.get("responseCode").toString()) >= 500;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private void open() {
+        timesOpened++;
+        long backoff = initialBackoff;
+        for (int i = 1; i < timesOpened && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoff);
+        long jitteredBackoff = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        openUntil = currentTimeMillis() + jitteredBackoff;
+        state = State.OPEN;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized int getTimesOpened() {
+        return timesOpened;
+    }
+
+    public synchronized Date getOpenUntil() {
+        return state == State.CLOSED ? null : new Date(openUntil);
+    }
+
+    public synchronized Date getLastFailureDate() {
+        return lastFailureDate;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.openmrs.api.context.Context;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CIRCUIT_BREAKER_INITIAL_BACKOFF;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CIRCUIT_BREAKER_MAX_BACKOFF;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Holds one {@link CircuitBreaker} per sync destination, keyed by the url of the SyncTaskType or SyncFhirProfile the
+ * requests are sent to. Breakers live for as long as the module is started so that an open circuit carries over from
+ * one run of a scheduled task to the next.
+ */
+@Component("ugandaemrsync.CircuitBreakerRegistry")
+public class CircuitBreakerRegistry {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    public static final int DEFAULT_INITIAL_BACKOFF = 60000;
+
+    public static final int DEFAULT_MAX_BACKOFF = 3600000;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the registry from the module application context
+     *
+     * @return the circuit breaker registry
+     */
+    public static CircuitBreakerRegistry getInstance() {
+        return Context.getRegisteredComponent("ugandaemrsync.CircuitBreakerRegistry", CircuitBreakerRegistry.class);
+    }
+
+    /**
+     * Gets the circuit breaker of a destination, creating it from the global properties the first time
+     *
+     * @param destination the url requests are sent to
+     * @return the circuit breaker of the destination
+     */
+    public CircuitBreaker getCircuitBreaker(String destination) {
+        String key = destination == null ? "" : destination.trim();
+        return circuitBreakers.computeIfAbsent(key, k -> new CircuitBreaker(k,
+                getIntegerGlobalProperty(GP_CIRCUIT_BREAKER_FAILURE_THRESHOLD, DEFAULT_FAILURE_THRESHOLD),
+                getIntegerGlobalProperty(GP_CIRCUIT_BREAKER_INITIAL_BACKOFF, DEFAULT_INITIAL_BACKOFF),
+                getIntegerGlobalProperty(GP_CIRCUIT_BREAKER_MAX_BACKOFF, DEFAULT_MAX_BACKOFF)));
+    }
+
+    /**
+     * @return the circuit breakers of all destinations requests have been sent to
+     */
+    public List<CircuitBreaker> getCircuitBreakers() {
+        return new ArrayList<>(circuitBreakers.values());
+    }
+
+    /**
+     * Closes all circuits. Breakers are created again with the current global properties on next use.
+     */
+    public void reset() {
+        circuitBreakers.clear();
+    }
+}
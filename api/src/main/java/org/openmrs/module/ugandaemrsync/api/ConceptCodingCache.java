@@ -0,0 +1,290 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CONCEPT_CODING_CACHE_MAX_SIZE;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Least recently used cache of the FHIR codings added to outbound Observations for a concept, keyed by concept uuid.
+ * The codings are the UgandaEMR concept id followed by the concept reference terms the concept is mapped to. The same
+ * few hundred concepts are used by most observations, so the concept, its name and mappings are loaded once instead of
+ * for every observation. Entries are removed when a concept, reference term or concept source is saved, and the cache
+ * is reset when its maximum size global property changes.
+ */
+@Component("ugandaemrsync.ConceptCodingCache")
+public class ConceptCodingCache implements GlobalPropertyListener {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    public static final String UGANDAEMR_CODING_SYSTEM = "UgandaEMR";
+
+    private final Function<String, ConceptCodings> loader;
+
+    private final Map<String, ConceptCodings> conceptCodings = new LinkedHashMap<String, ConceptCodings>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ConceptCodings> eldest) {
+            if (size() > getMaxSize()) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final int configuredMaxSize;
+
+    private volatile int maxSize;
+
+    public ConceptCodingCache() {
+        this(0, uuid -> ConceptCodings.fromConcept(Context.getConceptService().getConceptByUuid(uuid)));
+    }
+
+    /**
+     * @param maxSize the most concepts to keep, read from the global property when 0
+     * @param loader loads the codings of a concept uuid that is not in the cache
+     */
+    public ConceptCodingCache(int maxSize, Function<String, ConceptCodings> loader) {
+        this.configuredMaxSize = maxSize;
+        this.maxSize = maxSize;
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the cache from the module application context
+     *
+     * @return the concept coding cache
+     */
+    public static ConceptCodingCache getInstance() {
+        return Context.getRegisteredComponent("ugandaemrsync.ConceptCodingCache", ConceptCodingCache.class);
+    }
+
+    /**
+     * Gets the codings of a concept, loading them when the concept is not in the cache
+     *
+     * @param conceptUuid the uuid of the concept
+     * @return the codings of the concept, null if there is no concept with the uuid
+     */
+    public ConceptCodings getConceptCodings(String conceptUuid) {
+        if (conceptUuid == null) {
+            return null;
+        }
+        synchronized (conceptCodings) {
+            ConceptCodings cached = conceptCodings.get(conceptUuid);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        ConceptCodings loaded = loader.apply(conceptUuid);
+        if (loaded != null) {
+            synchronized (conceptCodings) {
+                conceptCodings.put(conceptUuid, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Removes a concept from the cache so that its codings are loaded again on next use
+     *
+     * @param conceptUuid the uuid of the concept
+     */
+    public void invalidate(String conceptUuid) {
+        if (conceptUuid == null) {
+            return;
+        }
+        synchronized (conceptCodings) {
+            if (conceptCodings.remove(conceptUuid) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all concepts from the cache, used when a reference term or concept source that any concept may be
+     * mapped to changes
+     */
+    public void invalidateAll() {
+        synchronized (conceptCodings) {
+            invalidations.addAndGet(conceptCodings.size());
+            conceptCodings.clear();
+        }
+    }
+
+    /**
+     * Empties the cache and its statistics. The maximum size is read again from the global property on next use.
+     */
+    public void reset() {
+        synchronized (conceptCodings) {
+            conceptCodings.clear();
+            hits.set(0);
+            misses.set(0);
+            evictions.set(0);
+            invalidations.set(0);
+            maxSize = configuredMaxSize;
+        }
+    }
+
+    /**
+     * @see GlobalPropertyListener#supportsPropertyName(String)
+     */
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return GP_CONCEPT_CODING_CACHE_MAX_SIZE.equals(propertyName);
+    }
+
+    /**
+     * @see GlobalPropertyListener#globalPropertyChanged(GlobalProperty)
+     */
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        reset();
+    }
+
+    /**
+     * @see GlobalPropertyListener#globalPropertyDeleted(String)
+     */
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        reset();
+    }
+
+    public int getSize() {
+        synchronized (conceptCodings) {
+            return conceptCodings.size();
+        }
+    }
+
+    public int getMaxSize() {
+        if (maxSize <= 0) {
+            maxSize = readMaxSize();
+        }
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+
+    private int readMaxSize() {
+        int configuredMaxSize = getIntegerGlobalProperty(GP_CONCEPT_CODING_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE);
+        return configuredMaxSize > 0 ? configuredMaxSize : DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * The precomputed codings of a single concept. Instances are immutable and shared between threads, every call to
+     * {@link #appendCodings(JSONArray)} adds new json objects.
+     */
+    public static class ConceptCodings {
+
+        private final boolean coded;
+
+        private final List<String[]> codings;
+
+        public ConceptCodings(boolean coded, List<String[]> codings) {
+            this.coded = coded;
+            this.codings = Collections.unmodifiableList(new ArrayList<>(codings));
+        }
+
+        /**
+         * Precomputes the codings of a concept
+         *
+         * @param concept the concept, may be null
+         * @return the codings of the concept, null when the concept is null
+         */
+        public static ConceptCodings fromConcept(Concept concept) {
+            if (concept == null) {
+                return null;
+            }
+            List<String[]> codings = new ArrayList<>();
+            codings.add(new String[]{UGANDAEMR_CODING_SYSTEM, String.valueOf(concept.getConceptId()), concept.getName() == null ? null : concept.getName().getName()});
+            for (ConceptMap conceptMap : concept.getConceptMappings()) {
+                ConceptReferenceTerm conceptReferenceTerm = conceptMap.getConceptReferenceTerm();
+                codings.add(new String[]{conceptReferenceTerm.getConceptSource().getName(), conceptReferenceTerm.getCode(), conceptReferenceTerm.getName()});
+            }
+            return new ConceptCodings(concept.getDatatype() != null && concept.getDatatype().isCoded(), codings);
+        }
+
+        /**
+         * @return true when the concept is a question with coded answers
+         */
+        public boolean isCoded() {
+            return coded;
+        }
+
+        public List<String[]> getCodings() {
+            return codings;
+        }
+
+        /**
+         * Appends the codings to a FHIR coding array
+         *
+         * @param coding the coding array of a CodeableConcept
+         */
+        public void appendCodings(JSONArray coding) {
+            for (String[] systemCodeDisplay : codings) {
+                JSONObject jsonObject = new JSONObject();
+                jsonObject.put("system", String.valueOf(systemCodeDisplay[0]));
+                jsonObject.put("code", String.valueOf(systemCodeDisplay[1]));
+                jsonObject.put("display", String.valueOf(systemCodeDisplay[2]));
+                coding.put(jsonObject);
+            }
+        }
+    }
+}
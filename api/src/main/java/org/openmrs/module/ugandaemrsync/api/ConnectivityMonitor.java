@@ -0,0 +1,186 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig;
+import org.springframework.stereotype.Component;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CONNECTIVITY_CACHE_TTL;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CONNECTIVITY_FAILURE_THRESHOLD;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Keeps track of whether the internet and the sync destinations are reachable. Probe results are cached per host
+ * for a short time so that the scheduler tasks can ask as often as they need without opening a connection each time.
+ * Failures reported by real requests are counted as well and the host is marked down once they reach the configured
+ * threshold, which saves the tasks from waiting on a timeout for every item of a run.
+ */
+@Component("ugandaemrsync.ConnectivityMonitor")
+public class ConnectivityMonitor {
+
+    public static final int DEFAULT_CACHE_TTL = 60000;
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    private Log log = LogFactory.getLog(ConnectivityMonitor.class);
+
+    private final Map<String, HostStatus> hostStatuses = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the monitor from the module application context
+     *
+     * @return the connectivity monitor
+     */
+    public static ConnectivityMonitor getInstance() {
+        return Context.getRegisteredComponent("ugandaemrsync.ConnectivityMonitor", ConnectivityMonitor.class);
+    }
+
+    /**
+     * Checks if the facility is connected to the internet
+     *
+     * @return true when the connectivity check url can be reached
+     */
+    public boolean isConnectionAvailable() {
+        return isServerAvailable(UgandaEMRSyncConfig.CONNECTIVITY_CHECK_URL);
+    }
+
+    /**
+     * Checks if the server at the given url can be reached. The host is probed only when its cached status has expired.
+     *
+     * @param url the url of the server
+     * @return true when the host is reachable
+     */
+    public boolean isServerAvailable(String url) {
+        HostStatus hostStatus = getHostStatus(url);
+        synchronized (hostStatus) {
+            if (hostStatus.isExpired(getCacheTtl())) {
+                boolean reachable = probe(url);
+                if (reachable) {
+                    hostStatus.markUp();
+                } else {
+                    hostStatus.markDown();
+                }
+            }
+            return hostStatus.reachable;
+        }
+    }
+
+    /**
+     * Checks the cached status of the host without probing it. A host that has not been seen yet, or whose status has
+     * expired, is assumed to be up so that the next request can find out.
+     *
+     * @param url the url of the server
+     * @return false only when the host has been marked down within the cache ttl
+     */
+    public boolean isHostUp(String url) {
+        HostStatus hostStatus = getHostStatus(url);
+        synchronized (hostStatus) {
+            return hostStatus.reachable || hostStatus.isExpired(getCacheTtl());
+        }
+    }
+
+    /**
+     * Records a request to the host that got a response from the server
+     *
+     * @param url the url the request was sent to
+     */
+    public void recordSuccess(String url) {
+        HostStatus hostStatus = getHostStatus(url);
+        synchronized (hostStatus) {
+            hostStatus.markUp();
+        }
+    }
+
+    /**
+     * Records a request to the host that failed to reach the server. The host is marked down once the number of
+     * consecutive failures reaches the threshold.
+     *
+     * @param url the url the request was sent to
+     */
+    public void recordFailure(String url) {
+        HostStatus hostStatus = getHostStatus(url);
+        synchronized (hostStatus) {
+            hostStatus.consecutiveFailures++;
+            if (hostStatus.consecutiveFailures >= getFailureThreshold()) {
+                if (hostStatus.reachable) {
+                    log.info("Marking " + getHostKey(url) + " as down after " + hostStatus.consecutiveFailures + " consecutive failures");
+                }
+                hostStatus.markDown();
+            }
+        }
+    }
+
+    /**
+     * Forgets all cached statuses so that the next check probes again
+     */
+    public void reset() {
+        hostStatuses.clear();
+    }
+
+    protected boolean probe(String url) {
+        UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
+        if (UgandaEMRSyncConfig.CONNECTIVITY_CHECK_URL.equals(url)) {
+            return ugandaEMRHttpURLConnection.isConnectionAvailable();
+        }
+        return ugandaEMRHttpURLConnection.isServerAvailable(url);
+    }
+
+    protected int getCacheTtl() {
+        return getIntegerGlobalProperty(GP_CONNECTIVITY_CACHE_TTL, DEFAULT_CACHE_TTL);
+    }
+
+    protected int getFailureThreshold() {
+        return getIntegerGlobalProperty(GP_CONNECTIVITY_FAILURE_THRESHOLD, DEFAULT_FAILURE_THRESHOLD);
+    }
+
+    private HostStatus getHostStatus(String url) {
+        return hostStatuses.computeIfAbsent(getHostKey(url), key -> new HostStatus());
+    }
+
+    private String getHostKey(String url) {
+        try {
+            return new URL(url).getAuthority().toLowerCase();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private static class HostStatus {
+
+        private boolean reachable = true;
+
+        private int consecutiveFailures;
+
+        private long checkedAt;
+
+        private boolean isExpired(int ttl) {
+            return System.currentTimeMillis() - checkedAt >= ttl;
+        }
+
+        private void markUp() {
+            reachable = true;
+            consecutiveFailures = 0;
+            checkedAt = System.currentTimeMillis();
+        }
+
+        private void markDown() {
+            reachable = false;
+            checkedAt = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+
+import java.util.Date;
+import java.util.function.LongSupplier;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_FHIR_RESOURCE_PURGE_BATCH_SIZE;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_FHIR_RESOURCE_PURGE_TIME_BUDGET;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Deletes expired FHIR resources in batches, each batch in its own transaction so that the rows deleted so far are kept
+ * and locks are released between batches. Purging stops when there are no more expired resources or once the time
+ * budget is used up, the rest is left for the next run. Resources are deleted without being loaded.
+ */
+public class ExpiredFhirResourcePurger {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    public static final int DEFAULT_TIME_BUDGET = 300;
+
+    private static final Log log = LogFactory.getLog(ExpiredFhirResourcePurger.class);
+
+    private final int batchSize;
+
+    private final long timeBudget;
+
+    private final LongSupplier currentTimeMillis;
+
+    private int purged = 0;
+
+    private int batches = 0;
+
+    private long elapsed = 0;
+
+    private boolean completed = false;
+
+    /**
+     * @param batchSize the most resources deleted in a transaction
+     * @param timeBudget the seconds after which no new batch is started
+     */
+    public ExpiredFhirResourcePurger(int batchSize, int timeBudget) {
+        this(batchSize, timeBudget, System::currentTimeMillis);
+    }
+
+    /**
+     * @param batchSize the most resources deleted in a transaction
+     * @param timeBudget the seconds after which no new batch is started
+     * @param currentTimeMillis the clock the time budget is measured with
+     */
+    public ExpiredFhirResourcePurger(int batchSize, int timeBudget, LongSupplier currentTimeMillis) {
+        this.batchSize = Math.max(batchSize, 1);
+        this.timeBudget = Math.max(timeBudget, 0) * 1000L;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * Creates a purger with the batch size and time budget set in the global properties
+     *
+     * @return the purger
+     */
+    public static ExpiredFhirResourcePurger fromGlobalProperties() {
+        return new ExpiredFhirResourcePurger(getIntegerGlobalProperty(GP_FHIR_RESOURCE_PURGE_BATCH_SIZE, DEFAULT_BATCH_SIZE),
+                getIntegerGlobalProperty(GP_FHIR_RESOURCE_PURGE_TIME_BUDGET, DEFAULT_TIME_BUDGET));
+    }
+
+    /**
+     * Deletes the resources that expired on or before a date. Must not be called within a transaction, otherwise the
+     * batches are only committed with it.
+     *
+     * @param date the date on or before which resources expired
+     * @return the number of resources deleted
+     */
+    public int purge(Date date) {
+        long start = currentTimeMillis.getAsLong();
+        int deleted;
+        do {
+            deleted = purgeBatch(date, batchSize);
+            purged += deleted;
+            batches++;
+            elapsed = currentTimeMillis.getAsLong() - start;
+        } while (deleted >= batchSize && elapsed < timeBudget);
+        completed = deleted < batchSize;
+
+        String message = String.format("Purged %d expired resources in %d batches and %.1f seconds (%.1f resources per second)", purged, batches, elapsed / 1000.0, getResourcesPerSecond());
+        if (completed) {
+            log.info(message);
+        } else {
+            log.info(message + ", stopped after the time budget of " + timeBudget / 1000 + " seconds with expired resources left");
+        }
+        return purged;
+    }
+
+    public int getPurged() {
+        return purged;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the milliseconds purging took
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return true when all expired resources were deleted, false when purging stopped at the time budget
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public double getResourcesPerSecond() {
+        return elapsed <= 0 ? purged : purged * 1000.0 / elapsed;
+    }
+
+    protected int purgeBatch(Date date, int batchSize) {
+        return Context.getService(UgandaEMRSyncService.class).purgeExpiredSyncFhirResources(date, batchSize);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openmrs.api.context.Context;
+import org.springframework.stereotype.Component;
+
+/**
+ * Module wide FHIR R4 serialization. Building a {@link FhirContext} scans the whole model so a single context is
+ * created and shared, it is thread safe once built. Parsers are cheap but not thread safe, so each thread gets its own
+ * json parser that is reused for every resource it encodes.
+ */
+@Component("ugandaemrsync.FhirSerializer")
+public class FhirSerializer {
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    private final ThreadLocal<IParser> jsonParser = ThreadLocal.withInitial(fhirContext::newJsonParser);
+
+    /**
+     * Gets the serializer from the module application context
+     *
+     * @return the fhir serializer
+     */
+    public static FhirSerializer getInstance() {
+        return Context.getRegisteredComponent("ugandaemrsync.FhirSerializer", FhirSerializer.class);
+    }
+
+    public FhirContext getFhirContext() {
+        return fhirContext;
+    }
+
+    /**
+     * Gets the json parser of the calling thread. The parser must not be reconfigured or handed to another thread.
+     *
+     * @return the json parser of the calling thread
+     */
+    public IParser getJsonParser() {
+        return jsonParser.get();
+    }
+
+    /**
+     * Encodes a resource to json
+     *
+     * @param resource the resource to encode
+     * @return the json of the resource
+     */
+    public String encodeResourceToString(IBaseResource resource) {
+        return getJsonParser().encodeResourceToString(resource);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_RETRY_CLIENT_ERROR_BACKOFF;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_RETRY_NETWORK_BACKOFF;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_RETRY_SERVER_ERROR_BACKOFF;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Decides when a resource whose send failed is retried. The backoff depends on the class of the error: the server not
+ * being reached is retried soon, a 5xx status code later and a 4xx status code, which the server will most likely
+ * return again for the same resource, much later. The backoff doubles with each failed attempt up to
+ * {@link #MAX_BACKOFF_FACTOR} times the initial backoff of the class, and is jittered so that resources that failed
+ * together are not all retried at the same moment.
+ */
+public class SendRetryPolicy {
+
+    public enum ErrorClass {
+        NETWORK, SERVER_ERROR, CLIENT_ERROR
+    }
+
+    public static final int DEFAULT_NETWORK_BACKOFF = 60;
+
+    public static final int DEFAULT_SERVER_ERROR_BACKOFF = 300;
+
+    public static final int DEFAULT_CLIENT_ERROR_BACKOFF = 3600;
+
+    public static final int MAX_BACKOFF_FACTOR = 64;
+
+    private final long networkBackoff;
+
+    private final long serverErrorBackoff;
+
+    private final long clientErrorBackoff;
+
+    private final LongSupplier currentTimeMillis;
+
+    /**
+     * @param networkBackoff the seconds before the first retry when the server could not be reached
+     * @param serverErrorBackoff the seconds before the first retry after a 5xx status code
+     * @param clientErrorBackoff the seconds before the first retry after a 4xx status code
+     */
+    public SendRetryPolicy(int networkBackoff, int serverErrorBackoff, int clientErrorBackoff) {
+        this(networkBackoff, serverErrorBackoff, clientErrorBackoff, System::currentTimeMillis);
+    }
+
+    /**
+     * @param networkBackoff the seconds before the first retry when the server could not be reached
+     * @param serverErrorBackoff the seconds before the first retry after a 5xx status code
+     * @param clientErrorBackoff the seconds before the first retry after a 4xx status code
+     * @param currentTimeMillis the clock the next attempt dates are counted from
+     */
+    public SendRetryPolicy(int networkBackoff, int serverErrorBackoff, int clientErrorBackoff, LongSupplier currentTimeMillis) {
+        this.networkBackoff = Math.max(networkBackoff, 1) * 1000L;
+        this.serverErrorBackoff = Math.max(serverErrorBackoff, 1) * 1000L;
+        this.clientErrorBackoff = Math.max(clientErrorBackoff, 1) * 1000L;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * Creates a policy with the backoffs set in the global properties
+     *
+     * @return the policy
+     */
+    public static SendRetryPolicy fromGlobalProperties() {
+        return new SendRetryPolicy(getIntegerGlobalProperty(GP_RETRY_NETWORK_BACKOFF, DEFAULT_NETWORK_BACKOFF),
+                getIntegerGlobalProperty(GP_RETRY_SERVER_ERROR_BACKOFF, DEFAULT_SERVER_ERROR_BACKOFF),
+                getIntegerGlobalProperty(GP_RETRY_CLIENT_ERROR_BACKOFF, DEFAULT_CLIENT_ERROR_BACKOFF));
+    }
+
+    /**
+     * Classifies the response of a failed request sent through {@link UgandaEMRHttpURLConnection}. A response without
+     * a status code means the server could not be reached. A 408 or 429 status code is classed with the 5xx status
+     * codes since the same resource can succeed once the server catches up.
+     *
+     * @param response the map returned by the request, null when the request threw
+     * @return the class of the error
+     */
+    public static ErrorClass classify(Map response) {
+        if (response == null || response.get("responseCode") == null) {
+            return ErrorClass.NETWORK;
+        }
+        int responseCode;
+        try {
+            responseCode = Integer.parseInt(response.get("responseCode").toString());
+        } catch (NumberFormatException e) {
+            return ErrorClass.NETWORK;
+        }
+        if (responseCode >= 400 && responseCode < 500 && responseCode != 408 && responseCode != 429) {
+            return ErrorClass.CLIENT_ERROR;
+        }
+        return ErrorClass.SERVER_ERROR;
+    }
+
+    /**
+     * Gets the backoff before the next attempt, without jitter
+     *
+     * @param errorClass the class of the last error
+     * @param attempts the number of failed attempts including the last one
+     * @return the backoff in milliseconds
+     */
+    public long getBackoff(ErrorClass errorClass, int attempts) {
+        long initialBackoff = getInitialBackoff(errorClass);
+        long maxBackoff = initialBackoff * MAX_BACKOFF_FACTOR;
+        long backoff = initialBackoff;
+        for (int i = 1; i < attempts && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoff);
+    }
+
+    /**
+     * Gets the date from which a failed resource may be sent again
+     *
+     * @param errorClass the class of the last error
+     * @param attempts the number of failed attempts including the last one
+     * @return the date of the next attempt
+     */
+    public Date getNextAttemptDate(ErrorClass errorClass, int attempts) {
+        long backoff = getBackoff(errorClass, attempts);
+        long jitteredBackoff = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        return new Date(currentTimeMillis.getAsLong() + jitteredBackoff);
+    }
+
+    private long getInitialBackoff(ErrorClass errorClass) {
+        switch (errorClass) {
+            case CLIENT_ERROR:
+                return clientErrorBackoff;
+            case SERVER_ERROR:
+                return serverErrorBackoff;
+            default:
+                return networkBackoff;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_OUTBOX_LEASE_DURATION;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * The lease a run takes on the outbox items it claims. The owner is unique to the run and made of the host name, so
+ * that leases can be traced to the node holding them.
+ */
+public class SyncOutboxLease {
+
+    public static final int DEFAULT_DURATION = 600;
+
+    private static final Log log = LogFactory.getLog(SyncOutboxLease.class);
+
+    private final String owner;
+
+    private final int duration;
+
+    /**
+     * @param owner the name of the run holding the lease
+     * @param duration the seconds after which the lease expires
+     */
+    public SyncOutboxLease(String owner, int duration) {
+        this.owner = owner;
+        this.duration = Math.max(duration, 1);
+    }
+
+    /**
+     * Creates a lease for a new run with the duration set in the global properties
+     *
+     * @return the lease
+     */
+    public static SyncOutboxLease fromGlobalProperties() {
+        String hostName = "unknown";
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.debug("Unable to get the host name for the outbox lease owner", e);
+        }
+        String owner = hostName + ":" + UUID.randomUUID();
+        return new SyncOutboxLease(owner.length() > 100 ? owner.substring(owner.length() - 100) : owner,
+                getIntegerGlobalProperty(GP_OUTBOX_LEASE_DURATION, DEFAULT_DURATION));
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+}
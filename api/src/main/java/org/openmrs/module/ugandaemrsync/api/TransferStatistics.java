@@ -0,0 +1,132 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import java.util.Date;
+
+/**
+ * Bytes and time spent transferring data to a single sync destination during a run of a sync task. Request bodies are
+ * counted both before and after gzip compression and response bodies as received on the wire, so that the bandwidth
+ * saved by compression can be reported per run.
+ */
+public class TransferStatistics {
+
+    private final String destination;
+
+    private final Date startDate;
+
+    private Date endDate;
+
+    private int requests;
+
+    private long contentBytes;
+
+    private long sentBytes;
+
+    private long receivedBytes;
+
+    private long transferTime;
+
+    public TransferStatistics(String destination) {
+        this.destination = destination;
+        this.startDate = new Date();
+    }
+
+    /**
+     * Records a request sent to the destination
+     *
+     * @param contentBytes the size of the request body before compression
+     * @param sentBytes the size of the request body as sent
+     * @param receivedBytes the size of the response body as received, before decompression
+     * @param transferTime the time in milliseconds from sending the request to reading the response
+     */
+    public synchronized void record(long contentBytes, long sentBytes, long receivedBytes, long transferTime) {
+        requests++;
+        this.contentBytes += contentBytes;
+        this.sentBytes += sentBytes;
+        this.receivedBytes += Math.max(0, receivedBytes);
+        this.transferTime += transferTime;
+    }
+
+    /**
+     * Adds the requests recorded by another run, used to keep totals per destination
+     *
+     * @param other the statistics to add
+     */
+    public synchronized void add(TransferStatistics other) {
+        synchronized (other) {
+            requests += other.requests;
+            contentBytes += other.contentBytes;
+            sentBytes += other.sentBytes;
+            receivedBytes += other.receivedBytes;
+            transferTime += other.transferTime;
+            endDate = other.endDate;
+        }
+    }
+
+    public synchronized void complete() {
+        endDate = new Date();
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public synchronized Date getEndDate() {
+        return endDate;
+    }
+
+    public synchronized int getRequests() {
+        return requests;
+    }
+
+    public synchronized long getContentBytes() {
+        return contentBytes;
+    }
+
+    public synchronized long getSentBytes() {
+        return sentBytes;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public synchronized long getTransferTime() {
+        return transferTime;
+    }
+
+    public synchronized long getBytesSaved() {
+        return contentBytes - sentBytes;
+    }
+
+    /**
+     * Estimates the transfer time saved by compression from the throughput observed during the run
+     *
+     * @return the estimated time saved in milliseconds
+     */
+    public synchronized long getEstimatedTimeSaved() {
+        if (sentBytes == 0) {
+            return 0;
+        }
+        return (contentBytes - sentBytes) * transferTime / sentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return requests + " requests to " + destination + ": " + contentBytes + " bytes of content sent as " + sentBytes
+                + " bytes (" + getBytesSaved() + " saved), " + receivedBytes + " bytes received in " + transferTime
+                + "ms (about " + getEstimatedTimeSaved() + "ms saved)";
+    }
+}
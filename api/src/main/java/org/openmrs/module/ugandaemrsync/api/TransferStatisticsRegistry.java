@@ -0,0 +1,90 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the {@link TransferStatistics} of the last run and the totals since the module started for each sync
+ * destination, keyed by the url of the SyncTaskType or SyncFhirProfile the requests are sent to.
+ */
+@Component("ugandaemrsync.TransferStatisticsRegistry")
+public class TransferStatisticsRegistry {
+
+    private Log log = LogFactory.getLog(TransferStatisticsRegistry.class);
+
+    private final Map<String, TransferStatistics> lastRuns = new ConcurrentHashMap<>();
+
+    private final Map<String, TransferStatistics> totals = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the registry from the module application context
+     *
+     * @return the transfer statistics registry
+     */
+    public static TransferStatisticsRegistry getInstance() {
+        return Context.getRegisteredComponent("ugandaemrsync.TransferStatisticsRegistry", TransferStatisticsRegistry.class);
+    }
+
+    /**
+     * Starts recording a run against a destination. The run must be ended with {@link #completeRun(TransferStatistics)}.
+     *
+     * @param destination the url requests are sent to
+     * @return the statistics to record the requests of the run in
+     */
+    public TransferStatistics startRun(String destination) {
+        return new TransferStatistics(destination == null ? "" : destination.trim());
+    }
+
+    /**
+     * Ends a run, keeping it as the last run of its destination and adding it to the destination totals. Runs that
+     * sent no requests are ignored.
+     *
+     * @param transferStatistics the statistics of the run
+     */
+    public void completeRun(TransferStatistics transferStatistics) {
+        if (transferStatistics == null || transferStatistics.getRequests() == 0) {
+            return;
+        }
+        transferStatistics.complete();
+        String destination = transferStatistics.getDestination();
+        lastRuns.put(destination, transferStatistics);
+        totals.computeIfAbsent(destination, TransferStatistics::new).add(transferStatistics);
+        log.info(transferStatistics);
+    }
+
+    /**
+     * @return the last run of each destination
+     */
+    public List<TransferStatistics> getLastRuns() {
+        return new ArrayList<>(lastRuns.values());
+    }
+
+    /**
+     * @param destination the url requests are sent to
+     * @return the totals of the destination since the module started, null if nothing was sent to it
+     */
+    public TransferStatistics getTotals(String destination) {
+        return totals.get(destination);
+    }
+
+    public void reset() {
+        lastRuns.clear();
+        totals.clear();
+    }
+}
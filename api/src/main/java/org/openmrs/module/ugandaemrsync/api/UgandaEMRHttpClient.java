@@ -0,0 +1,291 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_CONNECTION_REQUEST_TIMEOUT;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_CONNECT_TIMEOUT;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_IDLE_CONNECTION_TIMEOUT;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_MAX_CONNECTIONS_PER_ROUTE;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_MAX_CONNECTIONS_TOTAL;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_SOCKET_TIMEOUT;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Module wide pooled http client shared by all sync tasks. Connections are kept alive and reused across requests
+ * to the same destination so that a sync run pays the TCP and TLS handshake once per connection rather than once
+ * per request. The pool is built on first use from the ugandaemrsync.http.* global properties, and is rebuilt when
+ * one of them changes. Requests already running on the replaced pool finish on it, the replaced pool is closed once
+ * none of its connections are in use or after {@link #RETIRED_POOL_MAX_WAIT} milliseconds.
+ * <p>
+ * The client sends Accept-Encoding and decompresses gzip and deflate responses transparently. Response bodies are
+ * counted as they come off the wire, before decompression, and the count is exposed to the caller through the
+ * {@link #RECEIVED_BYTES_COUNTER} attribute of the request context.
+ */
+@Component("ugandaemrsync.UgandaEMRHttpClient")
+public class UgandaEMRHttpClient implements GlobalPropertyListener {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 20;
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+
+    public static final int DEFAULT_SOCKET_TIMEOUT = 120000;
+
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 30000;
+
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
+
+    public static final String GP_HTTP_PREFIX = "ugandaemrsync.http.";
+
+    public static final String RECEIVED_BYTES_COUNTER = "ugandaemrsync.receivedBytesCounter";
+
+    public static final long RETIRED_POOL_CHECK_INTERVAL = 5000;
+
+    public static final long RETIRED_POOL_MAX_WAIT = 600000;
+
+    private Log log = LogFactory.getLog(UgandaEMRHttpClient.class);
+
+    private CloseableHttpClient httpClient;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private final Set<CloseableHttpClient> retiredHttpClients = new HashSet<>();
+
+    private ScheduledExecutorService retiredPoolCloser;
+
+    /**
+     * Gets the shared client, building the connection pool the first time it is requested
+     *
+     * @return the pooled http client
+     * @throws Exception when the ssl context for self signed certificates can not be created
+     */
+    public synchronized CloseableHttpClient getHttpClient() throws Exception {
+        if (httpClient == null) {
+            httpClient = createPooledClient();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Gets the shared client from the module application context
+     *
+     * @return the pooled http client
+     * @throws Exception when the client can not be created
+     */
+    public static CloseableHttpClient getInstance() throws Exception {
+        return Context.getRegisteredComponent("ugandaemrsync.UgandaEMRHttpClient", UgandaEMRHttpClient.class).getHttpClient();
+    }
+
+    private CloseableHttpClient createPooledClient() throws Exception {
+        SSLContext sslContext = SSLContextBuilder
+                .create()
+                .loadTrustMaterial(new TrustSelfSignedStrategy())
+                .build();
+
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext, new NoopHostnameVerifier()))
+                .build();
+
+        int idleConnectionTimeout = getIntegerGlobalProperty(GP_HTTP_IDLE_CONNECTION_TIMEOUT, DEFAULT_IDLE_CONNECTION_TIMEOUT);
+
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(getIntegerGlobalProperty(GP_HTTP_MAX_CONNECTIONS_TOTAL, DEFAULT_MAX_CONNECTIONS_TOTAL));
+        connectionManager.setDefaultMaxPerRoute(getIntegerGlobalProperty(GP_HTTP_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(getIntegerGlobalProperty(GP_HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT))
+                .setSocketTimeout(getIntegerGlobalProperty(GP_HTTP_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT))
+                .setConnectionRequestTimeout(getIntegerGlobalProperty(GP_HTTP_CONNECTION_REQUEST_TIMEOUT, DEFAULT_CONNECTION_REQUEST_TIMEOUT))
+                .build();
+
+        log.info("Creating pooled http client with " + connectionManager.getMaxTotal() + " total and " + connectionManager.getDefaultMaxPerRoute() + " per route connections");
+
+        // added first so that it sees the entity before the content encoding interceptor decompresses it
+        HttpResponseInterceptor receivedBytesCounter = (response, context) -> {
+            if (response.getEntity() != null) {
+                ReceivedBytesCountingEntity countingEntity = new ReceivedBytesCountingEntity(response.getEntity());
+                response.setEntity(countingEntity);
+                context.setAttribute(RECEIVED_BYTES_COUNTER, countingEntity);
+            }
+        };
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .addInterceptorFirst(receivedBytesCounter)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Builds a new pool from the current global properties and swaps it in. Callers that already hold the replaced
+     * client keep using it, so it is only closed once none of its connections are leased, or after
+     * {@link #RETIRED_POOL_MAX_WAIT} milliseconds. When the new pool can not be built it is built on the next use.
+     */
+    public synchronized void rebuild() {
+        if (httpClient == null) {
+            return;
+        }
+        CloseableHttpClient retiredHttpClient = httpClient;
+        PoolingHttpClientConnectionManager retiredConnectionManager = connectionManager;
+        try {
+            httpClient = createPooledClient();
+        } catch (Exception e) {
+            log.error("Failed to rebuild pooled http client, it will be built on next use", e);
+            httpClient = null;
+            connectionManager = null;
+        }
+        retiredHttpClients.add(retiredHttpClient);
+        if (retiredPoolCloser == null) {
+            retiredPoolCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ugandaemrsync-http-pool-closer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduleRetiredPoolClose(retiredHttpClient, retiredConnectionManager, System.currentTimeMillis());
+    }
+
+    private synchronized void scheduleRetiredPoolClose(CloseableHttpClient retiredHttpClient, PoolingHttpClientConnectionManager retiredConnectionManager, long retiredAt) {
+        if (retiredPoolCloser == null) {
+            return;
+        }
+        retiredPoolCloser.schedule(() -> {
+            if (retiredConnectionManager.getTotalStats().getLeased() > 0 && System.currentTimeMillis() - retiredAt < RETIRED_POOL_MAX_WAIT) {
+                scheduleRetiredPoolClose(retiredHttpClient, retiredConnectionManager, retiredAt);
+            } else {
+                closeRetiredPool(retiredHttpClient);
+            }
+        }, RETIRED_POOL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void closeRetiredPool(CloseableHttpClient retiredHttpClient) {
+        if (retiredHttpClients.remove(retiredHttpClient)) {
+            close(retiredHttpClient);
+        }
+    }
+
+    /**
+     * Closes the pool and all the connections it holds, including replaced pools that are still in use. Only called
+     * when the module is stopped, requests still running on the pools fail.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (retiredPoolCloser != null) {
+            retiredPoolCloser.shutdownNow();
+            retiredPoolCloser = null;
+        }
+        for (CloseableHttpClient retiredHttpClient : retiredHttpClients) {
+            close(retiredHttpClient);
+        }
+        retiredHttpClients.clear();
+        if (httpClient != null) {
+            close(httpClient);
+            httpClient = null;
+            connectionManager = null;
+        }
+    }
+
+    private void close(CloseableHttpClient closeableHttpClient) {
+        try {
+            closeableHttpClient.close();
+        } catch (IOException e) {
+            log.error("Failed to close pooled http client", e);
+        }
+    }
+
+    /**
+     * @see GlobalPropertyListener#supportsPropertyName(String)
+     */
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return propertyName != null && propertyName.startsWith(GP_HTTP_PREFIX);
+    }
+
+    /**
+     * @see GlobalPropertyListener#globalPropertyChanged(GlobalProperty)
+     */
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        rebuild();
+    }
+
+    /**
+     * @see GlobalPropertyListener#globalPropertyDeleted(String)
+     */
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        rebuild();
+    }
+
+    /**
+     * Counts the bytes read from the wrapped response entity
+     */
+    public static class ReceivedBytesCountingEntity extends HttpEntityWrapper {
+
+        private CountingInputStream content;
+
+        public ReceivedBytesCountingEntity(HttpEntity wrappedEntity) {
+            super(wrappedEntity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (content == null) {
+                content = new CountingInputStream(super.getContent());
+            }
+            return content;
+        }
+
+        /**
+         * @return the number of bytes read from the response so far
+         */
+        public long getReceivedBytes() {
+            return content == null ? 0 : content.getByteCount();
+        }
+    }
+}
@@ -11,12 +11,16 @@ import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthenticationException;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.HttpMultipartMode;
@@ -39,6 +43,7 @@ import org.openmrs.module.ugandaemrsync.server.Facility;
 import org.openmrs.module.ugandaemrsync.server.SyncConstant;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
 import org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig;
+import org.openmrs.module.ugandaemrsync.util.UgandaEMRSyncUtil;
 import org.openmrs.notification.Alert;
 
 import javax.net.ssl.TrustManager;
@@ -53,6 +58,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -146,16 +152,13 @@ public class UgandaEMRHttpURLConnection {
     public Map getByWithBasicAuth(String url, String username, String password, String resultType) throws Exception {
 
 
-        HttpResponse response = null;
-
-
         HttpUriRequest httpGet = new HttpGet(url);
         httpGet.setHeader("Method", "GET");
 
         Map map = new HashMap();
         try {
             SyncGlobalProperties syncGlobalProperties = new SyncGlobalProperties();
-            CloseableHttpClient client = createAcceptSelfSignedCertificateClient();
+            CloseableHttpClient client = UgandaEMRHttpClient.getInstance();
 
             httpGet.addHeader(UgandaEMRSyncConfig.HEADER_EMR_DATE, new Date().toString());
 
@@ -168,25 +171,28 @@ public class UgandaEMRHttpURLConnection {
             httpGet.addHeader("x-ugandaemr-dhis2uuid", syncGlobalProperties.getGlobalProperty(GP_DHIS2_ORGANIZATION_UUID));
 
 
-            response = client.execute(httpGet);
+            try (CloseableHttpResponse response = client.execute(httpGet)) {
 
-            int responseCode = response.getStatusLine().getStatusCode();
-            String responseMessage = response.getStatusLine().getReasonPhrase();
-            //reading the response
-            map.put("responseCode", responseCode);
-            if ((responseCode == CONNECTION_SUCCESS_200 || responseCode == CONNECTION_SUCCESS_201)) {
-                InputStream inputStreamReader = response.getEntity().getContent();
-                HttpEntity entityResponse = response.getEntity();
-                if (resultType.equals("String")) {
-                    map.put("result", getStringOfResults(inputStreamReader));
-                } else if (resultType.equals("Map")) {
-                    map = getMapOfResults(entityResponse, responseCode);
-                }
-            } else {
+                int responseCode = response.getStatusLine().getStatusCode();
+                String responseMessage = response.getStatusLine().getReasonPhrase();
+                //reading the response
                 map.put("responseCode", responseCode);
-                log.info(responseMessage);
+                if ((responseCode == CONNECTION_SUCCESS_200 || responseCode == CONNECTION_SUCCESS_201)) {
+                    InputStream inputStreamReader = response.getEntity().getContent();
+                    HttpEntity entityResponse = response.getEntity();
+                    if (resultType.equals("String")) {
+                        map.put("result", getStringOfResults(inputStreamReader));
+                    } else if (resultType.equals("Map")) {
+                        map = getMapOfResults(entityResponse, responseCode);
+                    }
+                } else {
+                    map.put("responseCode", responseCode);
+                    log.info(responseMessage);
+                }
+                // release the connection back to the pool
+                EntityUtils.consumeQuietly(response.getEntity());
+                map.put("responseMessage", responseMessage);
             }
-            map.put("responseMessage", responseMessage);
         } catch (Exception e) {
             log.error(e.getMessage());
         }
@@ -207,9 +213,27 @@ public class UgandaEMRHttpURLConnection {
      * @throws Exception
      */
     public Map sendPostByWithBasicAuth(String contentType, String content, String facilityId, String url, String username, String password, String token) throws Exception {
+        return sendPostByWithBasicAuth(contentType, content, facilityId, url, username, password, token, false, null);
+    }
+
+    /**
+     * HTTP POST with basic auth, optionally gzip compressing the request body
+     *
+     * @param contentType
+     * @param content
+     * @param facilityId
+     * @param url
+     * @param username
+     * @param password
+     * @param token
+     * @param gzipRequest when true the body is sent gzip compressed with a Content-Encoding: gzip header
+     * @param transferStatistics the statistics of the run to record the request in, may be null
+     * @return
+     * @throws Exception
+     */
+    public Map sendPostByWithBasicAuth(String contentType, String content, String facilityId, String url, String username, String password, String token, boolean gzipRequest, TransferStatistics transferStatistics) throws Exception {
 
         SyncGlobalProperties syncGlobalProperties = new SyncGlobalProperties();
-        HttpResponse response = null;
 
         HttpPost post = new HttpPost(url);
 
@@ -217,7 +241,7 @@ public class UgandaEMRHttpURLConnection {
 
 
         try {
-            CloseableHttpClient client = createAcceptSelfSignedCertificateClient();
+            CloseableHttpClient client = UgandaEMRHttpClient.getInstance();
 
             post.addHeader(UgandaEMRSyncConfig.HEADER_EMR_DATE, new Date().toString());
 
@@ -235,27 +259,44 @@ public class UgandaEMRHttpURLConnection {
 
             post.addHeader("x-ugandaemr-dhis2uuid", syncGlobalProperties.getGlobalProperty(GP_DHIS2_ORGANIZATION_UUID));
 
-            HttpEntity httpEntity = new StringEntity(content, ContentType.APPLICATION_JSON);
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            AbstractHttpEntity httpEntity;
+            if (gzipRequest) {
+                httpEntity = new ByteArrayEntity(UgandaEMRSyncUtil.compress(content), ContentType.APPLICATION_JSON);
+                httpEntity.setContentEncoding("gzip");
+            } else {
+                httpEntity = new ByteArrayEntity(body, ContentType.APPLICATION_JSON);
+            }
 
             if (contentType != null && contentType != "") {
-                ((StringEntity) httpEntity).setContentType(contentType);
+                httpEntity.setContentType(contentType);
             }
 
             post.setEntity(httpEntity);
 
-            response = client.execute(post);
+            HttpClientContext httpClientContext = HttpClientContext.create();
+            long startTime = System.currentTimeMillis();
+            try (CloseableHttpResponse response = client.execute(post, httpClientContext)) {
+
+                int responseCode = response.getStatusLine().getStatusCode();
+                String responseMessage = response.getStatusLine().getReasonPhrase();
+                //reading the response
+                if ((responseCode == CONNECTION_SUCCESS_200 || responseCode == CONNECTION_SUCCESS_201)) {
+                    HttpEntity responseEntity = response.getEntity();
+                    map = getMapOfResults(responseEntity, responseCode);
+                } else {
+                    map.put("responseCode", responseCode);
+                    log.info(responseMessage);
+                }
+                // release the connection back to the pool
+                EntityUtils.consumeQuietly(response.getEntity());
+                map.put("responseMessage", responseMessage);
 
-            int responseCode = response.getStatusLine().getStatusCode();
-            String responseMessage = response.getStatusLine().getReasonPhrase();
-            //reading the response
-            if ((responseCode == CONNECTION_SUCCESS_200 || responseCode == CONNECTION_SUCCESS_201)) {
-                HttpEntity responseEntity = response.getEntity();
-                map = getMapOfResults(responseEntity, responseCode);
-            } else {
-                map.put("responseCode", responseCode);
-                log.info(responseMessage);
+                if (transferStatistics != null) {
+                    UgandaEMRHttpClient.ReceivedBytesCountingEntity receivedBytesCounter = httpClientContext.getAttribute(UgandaEMRHttpClient.RECEIVED_BYTES_COUNTER, UgandaEMRHttpClient.ReceivedBytesCountingEntity.class);
+                    transferStatistics.record(body.length, httpEntity.getContentLength(), receivedBytesCounter == null ? 0 : receivedBytesCounter.getReceivedBytes(), System.currentTimeMillis() - startTime);
+                }
             }
-            map.put("responseMessage", responseMessage);
         } catch (Exception e) {
             log.error(e.getMessage());
         }
@@ -273,6 +314,21 @@ public class UgandaEMRHttpURLConnection {
      * @throws Exception
      */
     public Map sendPostBy(String url, String username, String password, String token, String data, boolean facilityIdRequired) throws Exception {
+        return sendPostBy(url, username, password, token, data, facilityIdRequired, false, null);
+    }
+
+    /**
+     * Send Post, optionally gzip compressing the request body
+     *
+     * @param url
+     * @param data
+     * @param facilityIdRequired
+     * @param gzipRequest when true the body is sent gzip compressed
+     * @param transferStatistics the statistics of the run to record the request in, may be null
+     * @return
+     * @throws Exception
+     */
+    public Map sendPostBy(String url, String username, String password, String token, String data, boolean facilityIdRequired, boolean gzipRequest, TransferStatistics transferStatistics) throws Exception {
         SyncGlobalProperties syncGlobalProperties = new SyncGlobalProperties();
         String contentTypeJSON = SyncConstant.JSON_CONTENT_TYPE;
 
@@ -282,7 +338,7 @@ public class UgandaEMRHttpURLConnection {
         }
 
 
-        return sendPostByWithBasicAuth(contentTypeJSON, data, facilitySyncId, url, username, password, token);
+        return sendPostByWithBasicAuth(contentTypeJSON, data, facilitySyncId, url, username, password, token, gzipRequest, transferStatistics);
     }
 
     public Map getMapOfResults(HttpEntity inputStreamReader, int responseCode) throws IOException {
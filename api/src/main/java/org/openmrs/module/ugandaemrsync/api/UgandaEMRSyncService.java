@@ -18,16 +18,22 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResourceArchive;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfileLog;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirCase;
+import org.openmrs.module.ugandaemrsync.model.SyncChangeEvent;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirGenerationCursor;
+import org.openmrs.module.ugandaemrsync.model.SyncOutboxItem;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.text.ParseException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -80,6 +86,25 @@ public interface UgandaEMRSyncService extends OpenmrsService {
     @Transactional
     List<SyncTask> getSyncTasksBySyncTaskId(String syncTaskId) throws APIException;
 
+    /**
+     * Gets the SyncTasks of a sync task type that match the sync task parameter
+     * @param syncTaskId the sync task, for example the accession number of an order
+     * @param syncTaskType the type of the sync tasks
+     * @return List<SyncTask> of the type that match the sync task
+     * @throws APIException
+     */
+    List<SyncTask> getSyncTasksBySyncTaskIdAndType(String syncTaskId, SyncTaskType syncTaskType) throws APIException;
+
+    /**
+     * Gets the SyncTasks of the given sync task types that match any of the sync tasks, so that the existing tasks of
+     * many orders are looked up at once instead of one query per order
+     * @param syncTaskIds the sync tasks, for example the accession numbers of orders
+     * @param syncTaskTypes the types of the sync tasks
+     * @return List<SyncTask> of the types that match any of the sync tasks
+     * @throws APIException
+     */
+    List<SyncTask> getSyncTasksBySyncTaskIds(Collection<String> syncTaskIds, Collection<SyncTaskType> syncTaskTypes) throws APIException;
+
     /**
      * Saves or updates the sync task set or given
      * @param syncTask the sync task that is to be saved
@@ -228,13 +253,25 @@ public interface UgandaEMRSyncService extends OpenmrsService {
 
 
     /**
-     * This Method saves a Sync FHIR Resource
+     * This Method saves a Sync FHIR Resource. The resource is stored compressed when the profile that generated it has
+     * compression enabled.
      * @param syncFHIRResource the resource to be saved
      * @return the saved sync fhir resource
      */
     @Transactional
     public SyncFhirResource saveFHIRResource(SyncFhirResource syncFHIRResource);
 
+    /**
+     * This Method saves Sync FHIR Resources in a single transaction. The session is flushed and the saved resources are
+     * evicted from it after every few resources, so that large numbers of resources can be saved with a bounded session
+     * and fewer flushes than a transaction per resource. Each row is still inserted with its own statement, since the
+     * ids are generated by the database.
+     * @param syncFhirResources the resources to be saved
+     * @return the saved sync fhir resources
+     */
+    @Transactional
+    public List<SyncFhirResource> saveFHIRResources(Collection<SyncFhirResource> syncFhirResources);
+
 
     /**
      * This Method gets a list of sync fhir resources by the profile that generated them
@@ -244,6 +281,16 @@ public interface UgandaEMRSyncService extends OpenmrsService {
      */
     public List<SyncFhirResource> getSyncFHIRResourceBySyncFhirProfile(SyncFhirProfile syncFhirProfile, boolean includeSynced);
 
+    /**
+     * This Method gets a page of sync fhir resources by the profile that generated them
+     * @param syncFhirProfile the profile that generated the resources
+     * @param includeSynced the check to determine if it has been sent to the destined server
+     * @param startIndex the index of the first resource to return
+     * @param maxResults the maximum number of resources to return
+     * @return a page of sync fhir resources ordered by date created, latest first
+     */
+    public List<SyncFhirResource> getSyncFHIRResourceBySyncFhirProfile(SyncFhirProfile syncFhirProfile, boolean includeSynced, Integer startIndex, Integer maxResults);
+
 
     /**
      * Gets a Sync FHIR Resource using an id
@@ -265,23 +312,75 @@ public interface UgandaEMRSyncService extends OpenmrsService {
      * gets all expired resources based on date passed
      * @param date the date which will be used to match expired resources
      * @return a list of expired resources
+     * @deprecated loads every expired resource at once, use {@link #purgeExpiredSyncFhirResources(Date, Integer)} to
+     * delete expired resources in batches
      */
+    @Deprecated
     public List<SyncFhirResource> getExpiredSyncFHIRResources(Date date);
 
 
     /**
-     * gets all expired resources based on date passed
+     * gets all resources generated by a profile that have not yet been synced
      * @param syncFhirProfile the profile that generated the resources
-     * @return a list of expired resources
+     * @return a list of unsynced resources of the profile
      */
     public List<SyncFhirResource> getUnSyncedFHirResources(SyncFhirProfile syncFhirProfile);
 
+    /**
+     * Gets the next chunk of resources generated by the profile whose resource is stored uncompressed, in resource id
+     * order. Used to compress existing resources once compression is enabled on a profile.
+     * @param syncFhirProfile the profile that generated the resources
+     * @param afterResourceId the id of the last resource of the previous chunk, null to start from the beginning
+     * @param maxResults the size of the chunk
+     * @return a chunk of uncompressed resources
+     */
+    public List<SyncFhirResource> getUncompressedSyncFhirResources(SyncFhirProfile syncFhirProfile, Integer afterResourceId, Integer maxResults);
+
     /**
      * Purges all resources that have  expired
      */
     @Transactional
     public void purgeExpiredFHIRResource(Date date);
 
+    /**
+     * Deletes a batch of resources that expired on or before a date without loading them, archived resources are
+     * deleted once no expired resources are left in sync_fhir_resource
+     * @param date the date on or before which resources expired
+     * @param maxResults the most resources to delete, null to delete all expired resources
+     * @return the number of deleted resources, less than maxResults when no expired resources are left
+     */
+    @Transactional
+    public int purgeExpiredSyncFhirResources(Date date, Integer maxResults);
+
+    /**
+     * Moves a batch of resources synced before a date out of sync_fhir_resource into the archive
+     * @param syncedBefore the date before which resources were synced
+     * @param maxResults the most resources to archive
+     * @param keepResource true to archive the compressed resource with its metadata, false to archive the metadata only
+     * @return the number of archived resources, less than maxResults when no resources are left to archive
+     */
+    @Transactional
+    public int archiveSyncedFhirResources(Date syncedBefore, Integer maxResults, boolean keepResource);
+
+    /**
+     * Gets the archived resources generated by a profile in a period
+     * @param syncFhirProfile the profile that generated the resources
+     * @param dateCreatedFrom the start of the period
+     * @param dateCreatedTo the end of the period
+     * @return the archived resources
+     */
+    public List<SyncFhirResourceArchive> getSyncFhirResourceArchives(SyncFhirProfile syncFhirProfile, Date dateCreatedFrom, Date dateCreatedTo);
+
+    /**
+     * Counts the resources of a profile synced in a period by the status code the server responded with, including the
+     * archived resources
+     * @param syncFhirProfile the profile that generated the resources
+     * @param dateSyncedFrom the start of the period
+     * @param dateSyncedTo the end of the period
+     * @return the number of resources of each status code
+     */
+    public Map<Integer, Integer> getSyncedFhirResourceCountsByStatusCode(SyncFhirProfile syncFhirProfile, Date dateSyncedFrom, Date dateSyncedTo);
+
     /**
      * This Saves the Sync Profile Log
      * @param syncFhirProfileLog the log to be saved
@@ -324,6 +423,25 @@ public interface UgandaEMRSyncService extends OpenmrsService {
     @Transactional
     public SyncFhirCase saveSyncFHIRCase(SyncFhirCase syncFHIRCase);
 
+    /**
+     * Saves new FHIR Cases in batches, flushing and evicting each batch from the session
+     * @param syncFhirCases the cases to be saved
+     * @return the saved cases
+     */
+    @Transactional
+    public List<SyncFhirCase> saveSyncFHIRCases(Collection<SyncFhirCase> syncFhirCases);
+
+    /**
+     * Gets the candidates of a profile that do not have a case yet, by joining the candidates against the existing
+     * cases of the profile in the database rather than looking up each candidate
+     * @param syncFhirProfile the profile the cases belong to
+     * @param candidateQuery sql selecting a patient_id and case_identifier column for every candidate of the profile
+     * @param changedSince when set, only candidates whose patient has a captured change after this date are returned.
+     *                     It is ignored when changes were not captured since this date.
+     * @return the patient id and case identifier of each candidate without a case
+     */
+    public List<Object[]> getNewSyncFhirCaseCandidates(SyncFhirProfile syncFhirProfile, String candidateQuery, Date changedSince);
+
     /**
      * This Method gets a List of all Sync Fhir Profiles
      * @return a List of Sync Fhir Profiles
@@ -339,6 +457,145 @@ public interface UgandaEMRSyncService extends OpenmrsService {
      */
      List<SyncFhirCase> getSyncFhirCasesByProfile(SyncFhirProfile syncFhirProfile);
 
+    /**
+     * Gets the cases of a profile whose patient has data that changed since the case was last updated, in the tables
+     * the resource types of the profile are generated from. Cases updated after the oldest captured change are checked
+     * against the captured changes instead of the tables. Cases that were never updated are always returned.
+     * @param syncFhirProfile the profile
+     * @return the cases of the profile with changes to generate resources for
+     */
+    List<SyncFhirCase> getChangedSyncFhirCasesByProfile(SyncFhirProfile syncFhirProfile);
+
+    /**
+     * Gets the ids of the cases returned by {@link #getChangedSyncFhirCasesByProfile(SyncFhirProfile)}, without loading
+     * the cases
+     * @param syncFhirProfile the profile
+     * @return the ids of the cases of the profile with changes to generate resources for
+     */
+    List<Integer> getChangedSyncFhirCaseIdsByProfile(SyncFhirProfile syncFhirProfile);
+
+    /**
+     * Saves a change captured when a clinical record is saved. The change is saved in a transaction of its own, so that
+     * a failure to save it does not mark the transaction of the caller for rollback.
+     * <p>
+     * {@link org.openmrs.module.ugandaemrsync.advice.SyncChangeCaptureAdvice} calls this once the transaction of the
+     * clinical change has committed, so the two are not atomic: a change is lost when the process dies or this fails
+     * between the commit of the clinical change and the commit of this call. A lost change is only picked up again
+     * once the record changes anew, or by the regular change detection for cases last updated before capture started.
+     * @param syncChangeEvent the change to be saved
+     * @return the saved change
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    SyncChangeEvent saveSyncChangeEvent(SyncChangeEvent syncChangeEvent);
+
+    /**
+     * Gets the date of the oldest captured change that is still kept. Changes have been captured continuously since
+     * this date.
+     * @return the date of the oldest captured change, null when there are no captured changes
+     */
+    Date getOldestSyncChangeEventDate();
+
+    /**
+     * Gets the generation cursor of a profile for a resource type
+     * @param syncFhirProfile the profile
+     * @param resourceType the resource type
+     * @return the cursor, null when the profile has not generated resources of the type with a cursor yet
+     */
+    SyncFhirGenerationCursor getSyncFhirGenerationCursor(SyncFhirProfile syncFhirProfile, String resourceType);
+
+    /**
+     * Saves the resources generated from a page of records together with the cursor moved to the last record of the
+     * page, so that the cursor only moves when the resources are saved
+     * @param syncFhirResources the resources generated from the page
+     * @param syncFhirGenerationCursor the cursor moved to the last record of the page
+     * @return the saved cursor
+     */
+    @Transactional
+    SyncFhirGenerationCursor saveFHIRResourcesAndCursor(Collection<SyncFhirResource> syncFhirResources, SyncFhirGenerationCursor syncFhirGenerationCursor);
+
+    /**
+     * Gets the next page of encounters changed after the position of a cursor, ordered by the date they were last
+     * changed and their id
+     * @param syncFhirGenerationCursor the cursor
+     * @param changedUntil the date up to which encounters are returned
+     * @param encounterTypes the types of the encounters, encounters of all types are returned when empty
+     * @param maxResults the size of the page
+     * @return the encounter id and the date last changed of each encounter that is not voided
+     */
+    List<Object[]> getEncountersAfterCursor(SyncFhirGenerationCursor syncFhirGenerationCursor, Date changedUntil, Collection<EncounterType> encounterTypes, int maxResults);
+
+    /**
+     * Deletes the captured changes made before a date
+     * @param before the date before which changes are deleted
+     * @return the number of deleted changes
+     */
+    @Transactional
+    int purgeSyncChangeEvents(Date before);
+
+    /**
+     * Claims items of the outbox by taking a lease on them. Items leased by another sender are skipped until that lease
+     * is released or expires, so the same item is not sent by two senders at once. Joins the transaction of the
+     * caller, so other senders only see the lease once that transaction commits. The scheduled senders call it outside
+     * a transaction, so the lease is committed when it returns, before the items are sent. Items selected by this
+     * sender but leased by another one in the meantime are skipped, and the next free items are claimed in their place.
+     * @param itemType the type of the items
+     * @param profileId the id of the profile the items belong to
+     * @param afterOutboxItemId the id after which items are claimed, all items are considered when null
+     * @param leaseOwner a name unique to the sender
+     * @param leaseDuration the seconds after which the lease expires
+     * @param maxResults the most items claimed
+     * @return the claimed items ordered by outbox item id
+     */
+    @Transactional
+    List<SyncOutboxItem> claimSyncOutboxItems(String itemType, Integer profileId, Integer afterOutboxItemId, String leaseOwner, int leaseDuration, Integer maxResults);
+
+    /**
+     * Removes claimed items whose work is done from the outbox
+     * @param leaseOwner the sender holding the lease
+     * @param outboxItemIds the ids of the items
+     * @return the number of items removed
+     */
+    @Transactional
+    int completeSyncOutboxItems(String leaseOwner, Collection<Integer> outboxItemIds);
+
+    /**
+     * Releases the lease on claimed items whose work is not done, so that they are claimed again
+     * @param leaseOwner the sender holding the lease
+     * @param outboxItemIds the ids of the items
+     * @param attempted true when the work of the items was attempted and failed, which counts as an attempt
+     * @return the number of items released
+     */
+    @Transactional
+    int releaseSyncOutboxItems(String leaseOwner, Collection<Integer> outboxItemIds, boolean attempted);
+
+    /**
+     * Releases the lease on claimed items whose work failed, saving the attempt count, the class of the last error and
+     * the date before which they are not claimed again as set on each item
+     * @param leaseOwner the sender holding the lease
+     * @param syncOutboxItems the items
+     * @return the number of items rescheduled
+     */
+    @Transactional
+    int rescheduleSyncOutboxItems(String leaseOwner, Collection<SyncOutboxItem> syncOutboxItems);
+
+    /**
+     * Gets the patients that have resources of a profile queued in the outbox ahead of an item, which are either
+     * waiting for a retry or being sent by another sender
+     * @param syncFhirProfile the profile
+     * @param beforeOutboxItemId the id of the item
+     * @param patientIds the ids of the patients to check
+     * @return the ids of the patients with earlier resources that are not sent yet
+     */
+    @Transactional
+    List<Integer> getPatientsWithEarlierUnsentResources(SyncFhirProfile syncFhirProfile, Integer beforeOutboxItemId, Collection<Integer> patientIds);
+
+    /**
+     * Gets resources by their ids
+     * @param resourceIds the ids of the resources
+     * @return the resources ordered by resource id, ids of resources that no longer exist are left out
+     */
+    List<SyncFhirResource> getSyncFhirResourcesByIds(Collection<Integer> resourceIds);
+
     /**
      * This Method Checks if a test order has results entered on it either through an encounter or on the order it self
      * @param order the order which is being checked
@@ -14,8 +14,12 @@ import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.Transaction;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.IntegerType;
 import org.hibernate.type.StringType;
+import org.hibernate.type.TimestampType;
+import org.openmrs.EncounterType;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.hibernate.DbSession;
@@ -23,18 +27,85 @@ import org.openmrs.api.db.hibernate.DbSessionFactory;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResourceArchive;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfileLog;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirCase;
+import org.openmrs.module.ugandaemrsync.model.SyncChangeEvent;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirGenerationCursor;
+import org.openmrs.module.ugandaemrsync.model.SyncOutboxItem;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VIRAL_LOAD_SYNC_TASK_TYPE_UUID;
 
 @Repository("ugandaemrsync.UgandaEMRSyncDao")
 public class UgandaEMRSyncDao {
 
+    private static final int SAVE_BATCH_SIZE = 50;
+
+    private static final int SYNC_TASK_LOOKUP_BATCH_SIZE = 500;
+
+    private static final String PERSON_CHANGED = "select 1 from person pe where pe.person_id = sfc.patient and (pe.date_created > sfc.last_date_updated or pe.date_changed > sfc.last_date_updated)";
+
+    private static final String PERSON_NAME_CHANGED = "select 1 from person_name pn where pn.person_id = sfc.patient and (pn.date_created > sfc.last_date_updated or pn.date_changed > sfc.last_date_updated)";
+
+    private static final String PERSON_ADDRESS_CHANGED = "select 1 from person_address pa where pa.person_id = sfc.patient and (pa.date_created > sfc.last_date_updated or pa.date_changed > sfc.last_date_updated)";
+
+    private static final String PATIENT_CHANGED = "select 1 from patient p where p.patient_id = sfc.patient and (p.date_created > sfc.last_date_updated or p.date_changed > sfc.last_date_updated)";
+
+    private static final String PATIENT_IDENTIFIER_CHANGED = "select 1 from patient_identifier pi where pi.patient_id = sfc.patient and (pi.date_created > sfc.last_date_updated or pi.date_changed > sfc.last_date_updated)";
+
+    private static final String PATIENT_PROGRAM_CHANGED = "select 1 from patient_program pp where pp.patient_id = sfc.patient and (pp.date_created > sfc.last_date_updated or pp.date_changed > sfc.last_date_updated)";
+
+    private static final String ENCOUNTER_CHANGED = "select 1 from encounter e where e.patient_id = sfc.patient and (e.date_created > sfc.last_date_updated or e.date_changed > sfc.last_date_updated)";
+
+    private static final String OBS_CHANGED = "select 1 from obs o where o.person_id = sfc.patient and (o.date_created > sfc.last_date_updated or o.date_voided > sfc.last_date_updated)";
+
+    private static final String ORDER_CHANGED = "select 1 from orders o where o.patient_id = sfc.patient and (o.date_created > sfc.last_date_updated or o.date_stopped > sfc.last_date_updated)";
+
+    /**
+     * The tables each resource type of a case is generated from, as correlated sub queries that find a row of the case's
+     * patient created or changed after the case was last updated
+     */
+    private static final Map<String, List<String>> CASE_CHANGE_CONDITIONS = new HashMap<>();
+
+    static {
+        CASE_CHANGE_CONDITIONS.put("Patient", Arrays.asList(PERSON_CHANGED, PERSON_NAME_CHANGED, PERSON_ADDRESS_CHANGED, PATIENT_CHANGED, PATIENT_IDENTIFIER_CHANGED));
+        CASE_CHANGE_CONDITIONS.put("Person", Arrays.asList(PERSON_CHANGED, PERSON_NAME_CHANGED, PERSON_ADDRESS_CHANGED));
+        CASE_CHANGE_CONDITIONS.put("EpisodeOfCare", Collections.singletonList(PATIENT_PROGRAM_CHANGED));
+        CASE_CHANGE_CONDITIONS.put("Encounter", Collections.singletonList(ENCOUNTER_CHANGED));
+        CASE_CHANGE_CONDITIONS.put("Observation", Arrays.asList(ENCOUNTER_CHANGED, OBS_CHANGED));
+        CASE_CHANGE_CONDITIONS.put("ServiceRequest", Collections.singletonList(ORDER_CHANGED));
+        CASE_CHANGE_CONDITIONS.put("Practitioner", Arrays.asList(ENCOUNTER_CHANGED, ORDER_CHANGED));
+    }
+
+    /**
+     * The kinds of captured changes each resource type of a case is generated from
+     */
+    private static final Map<String, List<String>> CASE_CHANGE_ENTITY_TYPES = new HashMap<>();
+
+    static {
+        CASE_CHANGE_ENTITY_TYPES.put("Patient", Collections.singletonList(SyncChangeEvent.ENTITY_TYPE_PATIENT));
+        CASE_CHANGE_ENTITY_TYPES.put("Person", Collections.singletonList(SyncChangeEvent.ENTITY_TYPE_PATIENT));
+        CASE_CHANGE_ENTITY_TYPES.put("EpisodeOfCare", Collections.singletonList(SyncChangeEvent.ENTITY_TYPE_PATIENT_PROGRAM));
+        CASE_CHANGE_ENTITY_TYPES.put("Encounter", Collections.singletonList(SyncChangeEvent.ENTITY_TYPE_ENCOUNTER));
+        CASE_CHANGE_ENTITY_TYPES.put("Observation", Arrays.asList(SyncChangeEvent.ENTITY_TYPE_ENCOUNTER, SyncChangeEvent.ENTITY_TYPE_OBS));
+        CASE_CHANGE_ENTITY_TYPES.put("ServiceRequest", Collections.singletonList(SyncChangeEvent.ENTITY_TYPE_ORDER));
+        CASE_CHANGE_ENTITY_TYPES.put("Practitioner", Arrays.asList(SyncChangeEvent.ENTITY_TYPE_ENCOUNTER, SyncChangeEvent.ENTITY_TYPE_ORDER));
+    }
+
     @Autowired
     DbSessionFactory sessionFactory;
 
@@ -86,6 +157,34 @@ public class UgandaEMRSyncDao {
         return (List<SyncTask>) getSession().createCriteria(SyncTask.class).add(Restrictions.eq("syncTask", syncTask)).list();
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncTasksBySyncTaskIdAndType(String, SyncTaskType)
+     */
+    public List<SyncTask> getSyncTasks(String syncTask, SyncTaskType syncTaskType) {
+        Criteria criteria = getSession().createCriteria(SyncTask.class);
+        criteria.add(Restrictions.eq("syncTask", syncTask));
+        criteria.add(Restrictions.eq("syncTaskType", syncTaskType));
+        return criteria.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncTasksBySyncTaskIds(Collection, Collection)
+     */
+    public List<SyncTask> getSyncTasks(Collection<String> syncTasks, Collection<SyncTaskType> syncTaskTypes) {
+        List<SyncTask> matchingSyncTasks = new ArrayList<>();
+        if (syncTasks == null || syncTasks.isEmpty() || syncTaskTypes == null || syncTaskTypes.isEmpty()) {
+            return matchingSyncTasks;
+        }
+        List<String> distinctSyncTasks = new ArrayList<>(new LinkedHashSet<>(syncTasks));
+        for (int from = 0; from < distinctSyncTasks.size(); from += SYNC_TASK_LOOKUP_BATCH_SIZE) {
+            Criteria criteria = getSession().createCriteria(SyncTask.class);
+            criteria.add(Restrictions.in("syncTask", distinctSyncTasks.subList(from, Math.min(from + SYNC_TASK_LOOKUP_BATCH_SIZE, distinctSyncTasks.size()))));
+            criteria.add(Restrictions.in("syncTaskType", syncTaskTypes));
+            matchingSyncTasks.addAll(criteria.list());
+        }
+        return matchingSyncTasks;
+    }
+
     /**
      * /**
      *
@@ -102,10 +201,20 @@ public class UgandaEMRSyncDao {
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveSyncTask(org.openmrs.module.ugandaemrsync.model.SyncTask)
      */
     public SyncTask saveSyncTask(SyncTask syncTask) {
+        boolean isNew = syncTask.getId() == 0;
         getSession().saveOrUpdate(syncTask);
+        if (isNew && isAwaitingViralLoadResult(syncTask)) {
+            // the result is fetched by claiming the item, so that two nodes do not fetch and save the same result
+            getSession().save(new SyncOutboxItem(SyncOutboxItem.ITEM_TYPE_VIRAL_LOAD_RESULT, syncTask.getId(), null, new Date()));
+        }
         return syncTask;
     }
 
+    private boolean isAwaitingViralLoadResult(SyncTask syncTask) {
+        return Boolean.TRUE.equals(syncTask.getRequireAction()) && !Boolean.TRUE.equals(syncTask.getActionCompleted())
+                && syncTask.getSyncTaskType() != null && VIRAL_LOAD_SYNC_TASK_TYPE_UUID.equals(syncTask.getSyncTaskType().getUuid());
+    }
+
     /**
      * @param query
      * @return
@@ -134,13 +243,12 @@ public class UgandaEMRSyncDao {
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getIncompleteActionSyncTask(java.lang.String)
      */
     public List<SyncTask> getIncompleteActionSyncTask(String syncTaskTypeUuid) {
-        SQLQuery sqlQuery = getSession()
-                .createSQLQuery(
-                        "select sync_task.* from sync_task inner join sync_task_type on (sync_task_type.sync_task_type_id=sync_task.sync_task_type) where sync_task_type.uuid='"
-                                + syncTaskTypeUuid
-                                + "' and  require_action=true and action_completed=false;");
-        sqlQuery.addEntity(SyncTask.class);
-        return sqlQuery.list();
+        Criteria criteria = getSession().createCriteria(SyncTask.class);
+        criteria.createAlias("syncTaskType", "syncTaskType");
+        criteria.add(Restrictions.eq("syncTaskType.uuid", syncTaskTypeUuid));
+        criteria.add(Restrictions.eq("requireAction", true));
+        criteria.add(Restrictions.eq("actionCompleted", false));
+        return criteria.list();
     }
 
     /**
@@ -173,12 +281,72 @@ public class UgandaEMRSyncDao {
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResource(SyncFhirResource)
      */
     public SyncFhirResource saveSyncFHIRResource(SyncFhirResource syncFHIRResource) {
+        boolean isNew = syncFHIRResource.getResourceId() == 0;
         getSession().saveOrUpdate(syncFHIRResource);
+        if (isNew) {
+            addToOutbox(syncFHIRResource);
+        }
 
         return syncFHIRResource;
 
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResources(Collection)
+     */
+    public List<SyncFhirResource> saveSyncFHIRResources(Collection<SyncFhirResource> syncFhirResources) {
+        DbSession session = getSession();
+        List<Object> batch = new ArrayList<>();
+        for (SyncFhirResource syncFhirResource : syncFhirResources) {
+            boolean isNew = syncFhirResource.getResourceId() == 0;
+            session.saveOrUpdate(syncFhirResource);
+            batch.add(syncFhirResource);
+            if (isNew) {
+                SyncOutboxItem syncOutboxItem = addToOutbox(syncFhirResource);
+                if (syncOutboxItem != null) {
+                    batch.add(syncOutboxItem);
+                }
+            }
+            if (batch.size() >= SAVE_BATCH_SIZE) {
+                flushAndEvict(batch);
+            }
+        }
+        flushAndEvict(batch);
+        return new ArrayList<>(syncFhirResources);
+    }
+
+    /**
+     * Queues a newly saved resource in the outbox so that a sender can claim it
+     *
+     * @return the outbox item, null when the resource was saved as already synced
+     */
+    private SyncOutboxItem addToOutbox(SyncFhirResource syncFhirResource) {
+        if (Boolean.TRUE.equals(syncFhirResource.getSynced())) {
+            return null;
+        }
+        Integer profileId = syncFhirResource.getGeneratorProfile() != null ? syncFhirResource.getGeneratorProfile().getSyncFhirProfileId() : null;
+        SyncOutboxItem syncOutboxItem = new SyncOutboxItem(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirResource.getResourceId(), profileId, new Date());
+        getSession().save(syncOutboxItem);
+        return syncOutboxItem;
+    }
+
+    /**
+     * Flushes the pending inserts and updates of a batch and removes the batch from the session so that saving a large
+     * number of objects does not grow the session and is flushed once per batch rather than once per object. Only the
+     * batch is evicted, objects the caller still holds in the session are left alone.
+     */
+    private void flushAndEvict(List<?> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        DbSession session = getSession();
+        session.flush();
+        for (Object saved : batch) {
+            session.evict(saved);
+        }
+        batch.clear();
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResource(SyncFhirResource)
      */
@@ -199,6 +367,34 @@ public class UgandaEMRSyncDao {
         return criteria.list();
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFHIRResourceBySyncFhirProfile(SyncFhirProfile, boolean, Integer, Integer)
+     */
+    public List<SyncFhirResource> getSyncResourceBySyncFhirProfile(SyncFhirProfile syncFhirProfile, boolean includeSynced, Integer startIndex, Integer maxResults) {
+
+        Criteria criteria = getSession().createCriteria(SyncFhirResource.class);
+
+        if (syncFhirProfile != null) {
+            criteria.add(Restrictions.eq("generatorProfile", syncFhirProfile));
+        }
+
+        if (!includeSynced) {
+            criteria.add(Restrictions.eq("synced", false));
+        }
+
+        criteria.addOrder(Order.desc("dateCreated"));
+        criteria.addOrder(Order.desc("resourceId"));
+
+        if (startIndex != null) {
+            criteria.setFirstResult(startIndex);
+        }
+        if (maxResults != null) {
+            criteria.setMaxResults(maxResults);
+        }
+
+        return criteria.list();
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFHIRResourceById(java.lang.Integer)
      */
@@ -209,15 +405,120 @@ public class UgandaEMRSyncDao {
     }
 
     /**
-     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#purgeExpiredFHIRResource(java.util.Date)
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#purgeExpiredSyncFhirResources(java.util.Date, java.lang.Integer)
      */
-    public void purgeExpiredFHIRResource(SyncFhirResource syncFHIRResource) {
-        getSession().delete(syncFHIRResource);
+    public int purgeExpiredSyncFhirResources(Date date, Integer maxResults) {
+        int purged = purgeExpiredRows("sync_fhir_resource", date, maxResults);
+        if (maxResults == null || purged < maxResults) {
+            purged += purgeExpiredRows("sync_fhir_resource_archive", date, maxResults == null ? null : maxResults - purged);
+        }
+        return purged;
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#archiveSyncedFhirResources(java.util.Date, java.lang.Integer, boolean)
+     */
+    public int archiveSyncedFhirResources(Date syncedBefore, Integer maxResults, boolean keepResource) {
+        SQLQuery idQuery = getSession().createSQLQuery("select resource_id from sync_fhir_resource where synced = :synced and date_synced < :syncedBefore");
+        idQuery.addScalar("resource_id", IntegerType.INSTANCE);
+        idQuery.setParameter("synced", true);
+        idQuery.setParameter("syncedBefore", syncedBefore);
+        idQuery.setMaxResults(maxResults);
+        List<Integer> resourceIds = idQuery.list();
+        if (resourceIds.isEmpty()) {
+            return 0;
+        }
+
+        if (keepResource) {
+            // only the compressed column is archived, so resources stored uncompressed are compressed first
+            Criteria criteria = getSession().createCriteria(SyncFhirResource.class);
+            criteria.add(Restrictions.in("resourceId", resourceIds));
+            criteria.add(Restrictions.isNull("compressedResource"));
+            List<SyncFhirResource> uncompressedResources = criteria.list();
+            for (SyncFhirResource syncFhirResource : uncompressedResources) {
+                syncFhirResource.compressResource();
+            }
+            getSession().flush();
+            for (SyncFhirResource syncFhirResource : uncompressedResources) {
+                getSession().evict(syncFhirResource);
+            }
+        }
+
+        SQLQuery insertQuery = getSession().createSQLQuery("insert into sync_fhir_resource_archive (resource_id, uuid, generator_profile, patient_id, statusCode, status_code_detail, date_created, date_synced, expiry_date, date_archived, compressed_resource) "
+                + "select resource_id, uuid, generator_profile, patient_id, statusCode, status_code_detail, date_created, date_synced, expiry_date, current_timestamp, " + (keepResource ? "compressed_resource" : "null")
+                + " from sync_fhir_resource where resource_id in (:resourceIds)");
+        insertQuery.setParameterList("resourceIds", resourceIds);
+        insertQuery.executeUpdate();
+
+        SQLQuery deleteQuery = getSession().createSQLQuery("delete from sync_fhir_resource where resource_id in (:resourceIds)");
+        deleteQuery.setParameterList("resourceIds", resourceIds);
+        return deleteQuery.executeUpdate();
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirResourceArchives(SyncFhirProfile, java.util.Date, java.util.Date)
+     */
+    public List<SyncFhirResourceArchive> getSyncFhirResourceArchives(SyncFhirProfile syncFhirProfile, Date dateCreatedFrom, Date dateCreatedTo) {
+        Criteria criteria = getSession().createCriteria(SyncFhirResourceArchive.class);
+        criteria.add(Restrictions.eq("generatorProfile", syncFhirProfile));
+        criteria.add(Restrictions.between("dateCreated", dateCreatedFrom, dateCreatedTo));
+        return criteria.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncedFhirResourceCountsByStatusCode(SyncFhirProfile, java.util.Date, java.util.Date)
+     */
+    public Map<Integer, Integer> getSyncedFhirResourceCountsByStatusCode(SyncFhirProfile syncFhirProfile, Date dateSyncedFrom, Date dateSyncedTo) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        Criteria syncedCriteria = getSession().createCriteria(SyncFhirResource.class);
+        syncedCriteria.add(Restrictions.eq("synced", true));
+        Criteria archivedCriteria = getSession().createCriteria(SyncFhirResourceArchive.class);
+
+        for (Criteria criteria : Arrays.asList(syncedCriteria, archivedCriteria)) {
+            criteria.add(Restrictions.eq("generatorProfile", syncFhirProfile));
+            criteria.add(Restrictions.between("dateSynced", dateSyncedFrom, dateSyncedTo));
+            criteria.setProjection(Projections.projectionList().add(Projections.groupProperty("statusCode")).add(Projections.rowCount()));
+            for (Object row : criteria.list()) {
+                Object[] columns = (Object[]) row;
+                counts.merge((Integer) columns[0], ((Number) columns[1]).intValue(), Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private int purgeExpiredRows(String table, Date date, Integer maxResults) {
+        // the ids are selected first since a limit is not allowed in a subquery of a delete
+        List<Integer> resourceIds = getExpiredResourceIds(table, date, maxResults);
+        if (resourceIds.isEmpty()) {
+            return 0;
+        }
+
+        SQLQuery deleteQuery = getSession().createSQLQuery("delete from " + table + " where resource_id in (:resourceIds)");
+        deleteQuery.setParameterList("resourceIds", resourceIds);
+        return deleteQuery.executeUpdate();
+    }
+
+    private List<Integer> getExpiredResourceIds(String table, Date date, Integer maxResults) {
+        SQLQuery idQuery = getSession().createSQLQuery("select resource_id from " + table + " where expiry_date <= :date");
+        idQuery.addScalar("resource_id", IntegerType.INSTANCE);
+        idQuery.setParameter("date", date);
+        if (maxResults != null) {
+            idQuery.setMaxResults(maxResults);
+        }
+        return idQuery.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getExpiredSyncFHIRResources(java.util.Date)
+     */
+    @Deprecated
     public List<SyncFhirResource> getExpiredSyncFHIRResources(Date date) {
+        List<Integer> resourceIds = getExpiredResourceIds("sync_fhir_resource", date, null);
+        if (resourceIds.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        Criteria criteria = getSession().createCriteria(SyncFhirResource.class).add(Restrictions.le("expiryDate", date));
+        Criteria criteria = getSession().createCriteria(SyncFhirResource.class).add(Restrictions.in("resourceId", resourceIds));
 
         criteria.addOrder(Order.desc("expiryDate"));
 
@@ -232,6 +533,18 @@ public class UgandaEMRSyncDao {
         return syncFhirProfileLog;
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getLatestSyncFhirProfileLogByProfileAndResourceName(SyncFhirProfile, java.lang.String)
+     */
+    public SyncFhirProfileLog getLatestSyncFhirProfileLogByProfileAndResourceName(SyncFhirProfile syncFhirProfile, String resourceType) {
+        Criteria criteria = getSession().createCriteria(SyncFhirProfileLog.class);
+        criteria.add(Restrictions.eq("profile", syncFhirProfile));
+        criteria.add(Restrictions.eq("resourceType", resourceType));
+        criteria.addOrder(Order.desc("dateCreated"));
+        criteria.setMaxResults(1);
+        return (SyncFhirProfileLog) criteria.uniqueResult();
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirProfileLogByProfileAndResourceName(SyncFhirProfile, java.lang.String)
      */
@@ -269,6 +582,47 @@ public class UgandaEMRSyncDao {
         return syncFHIRCase;
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveSyncFHIRCases(Collection)
+     */
+    public List<SyncFhirCase> saveSyncFHIRCases(Collection<SyncFhirCase> syncFhirCases) {
+        DbSession session = getSession();
+        List<SyncFhirCase> batch = new ArrayList<>();
+        for (SyncFhirCase syncFhirCase : syncFhirCases) {
+            session.saveOrUpdate(syncFhirCase);
+            batch.add(syncFhirCase);
+            if (batch.size() >= SAVE_BATCH_SIZE) {
+                flushAndEvict(batch);
+            }
+        }
+        flushAndEvict(batch);
+        return new ArrayList<>(syncFhirCases);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getNewSyncFhirCaseCandidates(SyncFhirProfile, String, Date)
+     */
+    public List<Object[]> getNewSyncFhirCaseCandidates(SyncFhirProfile syncFhirProfile, String candidateQuery, Date changedSince) {
+        Date captureStartDate = getOldestSyncChangeEventDate();
+        boolean onlyChangedPatients = changedSince != null && captureStartDate != null && !changedSince.before(captureStartDate);
+
+        StringBuilder query = new StringBuilder("select distinct candidate.patient_id, candidate.case_identifier from (" + candidateQuery + ") candidate "
+                + "where candidate.case_identifier is not null and not exists (select 1 from sync_fhir_case sfc where sfc.profile = :profile "
+                + "and sfc.patient = candidate.patient_id and sfc.case_identifier = candidate.case_identifier)");
+        if (onlyChangedPatients) {
+            query.append(" and candidate.patient_id in (select sce.patient from sync_change_event sce where sce.date_created > :changedSince)");
+        }
+
+        SQLQuery sqlQuery = getSession().createSQLQuery(query.toString());
+        sqlQuery.setParameter("profile", syncFhirProfile.getId());
+        if (onlyChangedPatients) {
+            sqlQuery.setParameter("changedSince", changedSince);
+        }
+        sqlQuery.addScalar("patient_id", IntegerType.INSTANCE);
+        sqlQuery.addScalar("case_identifier", StringType.INSTANCE);
+        return sqlQuery.list();
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getAllSyncFhirProfile()
      */
@@ -285,12 +639,31 @@ public class UgandaEMRSyncDao {
         Criteria criteria = getSession().createCriteria(SyncFhirResource.class);
         criteria.add(Restrictions.eq("generatorProfile", syncFhirProfile));
         criteria.add(Restrictions.eq("synced", false));
+        criteria.addOrder(Order.asc("resourceId"));
         if (syncFhirProfile.getSyncLimit() != null) {
             criteria.setMaxResults(syncFhirProfile.getSyncLimit());
         }
         return criteria.list();
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getUncompressedSyncFhirResources(SyncFhirProfile, Integer, Integer)
+     */
+    public List<SyncFhirResource> getUncompressedSyncFhirResources(SyncFhirProfile syncFhirProfile, Integer afterResourceId, Integer maxResults) {
+
+        Criteria criteria = getSession().createCriteria(SyncFhirResource.class);
+        criteria.add(Restrictions.eq("generatorProfile", syncFhirProfile));
+        criteria.add(Restrictions.isNotNull("resource"));
+        if (afterResourceId != null) {
+            criteria.add(Restrictions.gt("resourceId", afterResourceId));
+        }
+        criteria.addOrder(Order.asc("resourceId"));
+        if (maxResults != null) {
+            criteria.setMaxResults(maxResults);
+        }
+        return criteria.list();
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirCasesByProfile(org.openmrs.module.ugandaemrsync.model.SyncFhirProfile)
      */
@@ -301,6 +674,303 @@ public class UgandaEMRSyncDao {
         return criteria.list();
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getChangedSyncFhirCasesByProfile(org.openmrs.module.ugandaemrsync.model.SyncFhirProfile)
+     */
+    public List<SyncFhirCase> getChangedSyncFhirCasesByProfile(SyncFhirProfile syncFhirProfile) {
+        SQLQuery sqlQuery = createChangedSyncFhirCasesQuery(syncFhirProfile, "sfc.*");
+        sqlQuery.addEntity(SyncFhirCase.class);
+        return sqlQuery.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getChangedSyncFhirCaseIdsByProfile(org.openmrs.module.ugandaemrsync.model.SyncFhirProfile)
+     */
+    public List<Integer> getChangedSyncFhirCaseIdsByProfile(SyncFhirProfile syncFhirProfile) {
+        SQLQuery sqlQuery = createChangedSyncFhirCasesQuery(syncFhirProfile, "sfc.case_id");
+        sqlQuery.addScalar("case_id", IntegerType.INSTANCE);
+        return sqlQuery.list();
+    }
+
+    private SQLQuery createChangedSyncFhirCasesQuery(SyncFhirProfile syncFhirProfile, String columns) {
+        Set<String> changeConditions = new LinkedHashSet<>();
+        Set<String> changeEntityTypes = new LinkedHashSet<>();
+        if (syncFhirProfile.getResourceTypes() != null) {
+            for (String resourceType : syncFhirProfile.getResourceTypes().split(",")) {
+                changeConditions.addAll(CASE_CHANGE_CONDITIONS.getOrDefault(resourceType.trim(), Collections.emptyList()));
+                changeEntityTypes.addAll(CASE_CHANGE_ENTITY_TYPES.getOrDefault(resourceType.trim(), Collections.emptyList()));
+            }
+        }
+
+        StringBuilder tableChanges = new StringBuilder();
+        for (String changeCondition : changeConditions) {
+            tableChanges.append(tableChanges.length() == 0 ? "" : " or ").append("exists (").append(changeCondition).append(")");
+        }
+
+        // cases updated after the oldest captured change are checked against the captured changes, older ones against the tables
+        Date captureStartDate = changeEntityTypes.isEmpty() ? null : getOldestSyncChangeEventDate();
+
+        StringBuilder query = new StringBuilder("select " + columns + " from sync_fhir_case sfc where sfc.profile = :profile and (sfc.last_date_updated is null");
+        if (captureStartDate != null) {
+            query.append(" or (sfc.last_date_updated >= :captureStartDate and exists (select 1 from sync_change_event sce where sce.patient = sfc.patient ")
+                    .append("and sce.date_created > sfc.last_date_updated and sce.entity_type in (:entityTypes)))");
+            if (tableChanges.length() > 0) {
+                query.append(" or (sfc.last_date_updated < :captureStartDate and (").append(tableChanges).append("))");
+            }
+        } else if (tableChanges.length() > 0) {
+            query.append(" or ").append(tableChanges);
+        }
+        query.append(")");
+
+        SQLQuery sqlQuery = getSession().createSQLQuery(query.toString());
+        sqlQuery.setParameter("profile", syncFhirProfile.getId());
+        if (captureStartDate != null) {
+            sqlQuery.setParameter("captureStartDate", captureStartDate);
+            sqlQuery.setParameterList("entityTypes", changeEntityTypes);
+        }
+        return sqlQuery;
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveSyncChangeEvent(SyncChangeEvent)
+     */
+    public SyncChangeEvent saveSyncChangeEvent(SyncChangeEvent syncChangeEvent) {
+        getSession().saveOrUpdate(syncChangeEvent);
+        return syncChangeEvent;
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getOldestSyncChangeEventDate()
+     */
+    public Date getOldestSyncChangeEventDate() {
+        SQLQuery sqlQuery = getSession().createSQLQuery("select min(date_created) as oldest from sync_change_event");
+        sqlQuery.addScalar("oldest", TimestampType.INSTANCE);
+        return (Date) sqlQuery.uniqueResult();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#purgeSyncChangeEvents(Date)
+     */
+    public int purgeSyncChangeEvents(Date before) {
+        SQLQuery sqlQuery = getSession().createSQLQuery("delete from sync_change_event where date_created < :before");
+        sqlQuery.setParameter("before", before);
+        return sqlQuery.executeUpdate();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#claimSyncOutboxItems(String, Integer, Integer, String, int, Integer)
+     */
+    public List<SyncOutboxItem> claimSyncOutboxItems(String itemType, Integer profileId, Integer afterOutboxItemId, String leaseOwner, Date now, Date leaseExpiry, Integer maxResults) {
+        Integer lastSelectedOutboxItemId = afterOutboxItemId;
+        while (true) {
+            List<Integer> outboxItemIds = getFreeSyncOutboxItemIds(itemType, profileId, lastSelectedOutboxItemId, now, maxResults);
+            if (outboxItemIds.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            // the update re-checks that each item is still free, so of two senders that selected the same item only the
+            // one whose update reaches the row first gets the lease, the other one skips it
+            SQLQuery leaseQuery = getSession().createSQLQuery("update sync_outbox set status = :leased, lease_owner = :leaseOwner, lease_expiry = :leaseExpiry"
+                    + " where outbox_item_id in (:outboxItemIds) and (status = :pending or (status = :leased and lease_expiry < :now))");
+            leaseQuery.setParameter("leased", SyncOutboxItem.STATUS_LEASED);
+            leaseQuery.setParameter("leaseOwner", leaseOwner);
+            leaseQuery.setParameter("leaseExpiry", leaseExpiry);
+            leaseQuery.setParameterList("outboxItemIds", outboxItemIds);
+            leaseQuery.setParameter("pending", SyncOutboxItem.STATUS_PENDING);
+            leaseQuery.setParameter("now", now);
+            if (leaseQuery.executeUpdate() > 0) {
+                // the owner is unique to the run, so only the selected items this sender got the lease on are returned
+                Criteria criteria = getSession().createCriteria(SyncOutboxItem.class);
+                criteria.add(Restrictions.in("outboxItemId", outboxItemIds));
+                criteria.add(Restrictions.eq("leaseOwner", leaseOwner));
+                criteria.addOrder(Order.asc("outboxItemId"));
+                return criteria.list();
+            }
+            // every selected item was leased by another sender first, move past them to the next free items
+            lastSelectedOutboxItemId = outboxItemIds.get(outboxItemIds.size() - 1);
+        }
+    }
+
+    private List<Integer> getFreeSyncOutboxItemIds(String itemType, Integer profileId, Integer afterOutboxItemId, Date now, Integer maxResults) {
+        StringBuilder query = new StringBuilder("select outbox_item_id from sync_outbox where item_type = :itemType and next_attempt_at <= :now");
+        query.append(" and (status = :pending or (status = :leased and lease_expiry < :now))");
+        query.append(profileId != null ? " and profile = :profile" : " and profile is null");
+        if (afterOutboxItemId != null) {
+            query.append(" and outbox_item_id > :afterOutboxItemId");
+        }
+        query.append(" order by outbox_item_id");
+
+        SQLQuery idQuery = getSession().createSQLQuery(query.toString());
+        idQuery.addScalar("outbox_item_id", IntegerType.INSTANCE);
+        idQuery.setParameter("itemType", itemType);
+        idQuery.setParameter("now", now);
+        idQuery.setParameter("pending", SyncOutboxItem.STATUS_PENDING);
+        idQuery.setParameter("leased", SyncOutboxItem.STATUS_LEASED);
+        if (profileId != null) {
+            idQuery.setParameter("profile", profileId);
+        }
+        if (afterOutboxItemId != null) {
+            idQuery.setParameter("afterOutboxItemId", afterOutboxItemId);
+        }
+        if (maxResults != null) {
+            idQuery.setMaxResults(maxResults);
+        }
+        return idQuery.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#completeSyncOutboxItems(String, Collection)
+     */
+    public int completeSyncOutboxItems(String leaseOwner, Collection<Integer> outboxItemIds) {
+        if (outboxItemIds.isEmpty()) {
+            return 0;
+        }
+        SQLQuery sqlQuery = getSession().createSQLQuery("delete from sync_outbox where outbox_item_id in (:outboxItemIds) and lease_owner = :leaseOwner");
+        sqlQuery.setParameterList("outboxItemIds", outboxItemIds);
+        sqlQuery.setParameter("leaseOwner", leaseOwner);
+        return sqlQuery.executeUpdate();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#releaseSyncOutboxItems(String, Collection, boolean)
+     */
+    public int releaseSyncOutboxItems(String leaseOwner, Collection<Integer> outboxItemIds, boolean attempted) {
+        if (outboxItemIds.isEmpty()) {
+            return 0;
+        }
+        SQLQuery sqlQuery = getSession().createSQLQuery("update sync_outbox set status = :pending, lease_owner = null, lease_expiry = null"
+                + (attempted ? ", attempts = attempts + 1" : "") + " where outbox_item_id in (:outboxItemIds) and lease_owner = :leaseOwner");
+        sqlQuery.setParameter("pending", SyncOutboxItem.STATUS_PENDING);
+        sqlQuery.setParameterList("outboxItemIds", outboxItemIds);
+        sqlQuery.setParameter("leaseOwner", leaseOwner);
+        return sqlQuery.executeUpdate();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#rescheduleSyncOutboxItems(String, Collection)
+     */
+    public int rescheduleSyncOutboxItems(String leaseOwner, Collection<SyncOutboxItem> syncOutboxItems) {
+        int rescheduled = 0;
+        for (SyncOutboxItem syncOutboxItem : syncOutboxItems) {
+            SQLQuery sqlQuery = getSession().createSQLQuery("update sync_outbox set status = :pending, lease_owner = null, lease_expiry = null, attempts = :attempts,"
+                    + " last_error_class = :lastErrorClass, next_attempt_at = :nextAttemptAt where outbox_item_id = :outboxItemId and lease_owner = :leaseOwner");
+            sqlQuery.setParameter("pending", SyncOutboxItem.STATUS_PENDING);
+            sqlQuery.setParameter("attempts", syncOutboxItem.getAttempts());
+            sqlQuery.setParameter("lastErrorClass", syncOutboxItem.getLastErrorClass(), StringType.INSTANCE);
+            sqlQuery.setParameter("nextAttemptAt", syncOutboxItem.getNextAttemptAt());
+            sqlQuery.setParameter("outboxItemId", syncOutboxItem.getOutboxItemId());
+            sqlQuery.setParameter("leaseOwner", leaseOwner);
+            rescheduled += sqlQuery.executeUpdate();
+        }
+        return rescheduled;
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getPatientsWithEarlierUnsentResources(SyncFhirProfile, Integer, Collection)
+     */
+    public List<Integer> getPatientsWithEarlierUnsentResources(SyncFhirProfile syncFhirProfile, Integer beforeOutboxItemId, Collection<Integer> patientIds) {
+        if (patientIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        SQLQuery sqlQuery = getSession().createSQLQuery("select distinct sfr.patient_id from sync_outbox so inner join sync_fhir_resource sfr on sfr.resource_id = so.item_id"
+                + " where so.item_type = :itemType and so.profile = :profile and so.outbox_item_id < :beforeOutboxItemId and sfr.patient_id in (:patientIds)");
+        sqlQuery.addScalar("patient_id", IntegerType.INSTANCE);
+        sqlQuery.setParameter("itemType", SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE);
+        sqlQuery.setParameter("profile", syncFhirProfile.getSyncFhirProfileId());
+        sqlQuery.setParameter("beforeOutboxItemId", beforeOutboxItemId);
+        sqlQuery.setParameterList("patientIds", patientIds);
+        return sqlQuery.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirResourcesByIds(Collection)
+     */
+    public List<SyncFhirResource> getSyncFhirResourcesByIds(Collection<Integer> resourceIds) {
+        if (resourceIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Criteria criteria = getSession().createCriteria(SyncFhirResource.class);
+        criteria.add(Restrictions.in("resourceId", resourceIds));
+        criteria.addOrder(Order.asc("resourceId"));
+        return criteria.list();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirGenerationCursor(SyncFhirProfile, String)
+     */
+    public SyncFhirGenerationCursor getSyncFhirGenerationCursor(SyncFhirProfile syncFhirProfile, String resourceType) {
+        Criteria criteria = getSession().createCriteria(SyncFhirGenerationCursor.class);
+        criteria.add(Restrictions.eq("profile", syncFhirProfile));
+        criteria.add(Restrictions.eq("resourceType", resourceType));
+        return (SyncFhirGenerationCursor) criteria.uniqueResult();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResourcesAndCursor(Collection, SyncFhirGenerationCursor)
+     */
+    public SyncFhirGenerationCursor saveSyncFhirGenerationCursor(SyncFhirGenerationCursor syncFhirGenerationCursor) {
+        getSession().saveOrUpdate(syncFhirGenerationCursor);
+        return syncFhirGenerationCursor;
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getEncountersAfterCursor(SyncFhirGenerationCursor, Date, Collection, int)
+     */
+    public List<Object[]> getEncountersAfterCursor(SyncFhirGenerationCursor syncFhirGenerationCursor, Date changedUntil, Collection<EncounterType> encounterTypes, int maxResults) {
+        List<Integer> encounterTypeIds = new ArrayList<>();
+        if (encounterTypes != null) {
+            for (EncounterType encounterType : encounterTypes) {
+                if (encounterType != null) {
+                    encounterTypeIds.add(encounterType.getEncounterTypeId());
+                }
+            }
+        }
+
+        // encounters last changed on date_changed and encounters never changed are read as two range scans of their
+        // own date column, so that each scan can use its index, and merged in the order of the date last changed. The
+        // indexes are added to encounter by the ugandaemrsync-2024-10-31-1000 and -1001 changesets
+        List<Object[]> changed = getEncountersAfterCursor("e.date_changed is not null", "e.date_changed", syncFhirGenerationCursor, changedUntil, encounterTypeIds, maxResults);
+        List<Object[]> created = getEncountersAfterCursor("e.date_changed is null", "e.date_created", syncFhirGenerationCursor, changedUntil, encounterTypeIds, maxResults);
+        List<Object[]> encounters = new ArrayList<>();
+        int changedIndex = 0;
+        int createdIndex = 0;
+        while (encounters.size() < maxResults && (changedIndex < changed.size() || createdIndex < created.size())) {
+            if (createdIndex >= created.size() || (changedIndex < changed.size() && compareLastChanged(changed.get(changedIndex), created.get(createdIndex)) < 0)) {
+                encounters.add(changed.get(changedIndex++));
+            } else {
+                encounters.add(created.get(createdIndex++));
+            }
+        }
+        return encounters;
+    }
+
+    private List<Object[]> getEncountersAfterCursor(String restriction, String lastChanged, SyncFhirGenerationCursor syncFhirGenerationCursor, Date changedUntil, List<Integer> encounterTypeIds, int maxResults) {
+        StringBuilder query = new StringBuilder("select e.encounter_id as encounter_id, ").append(lastChanged).append(" as last_changed from encounter e where e.voided = 0 and ")
+                .append(restriction).append(" and ").append(lastChanged).append(" <= :changedUntil and ").append(lastChanged).append(" >= :lastDateChanged and (")
+                .append(lastChanged).append(" > :lastDateChanged or e.encounter_id > :lastId)");
+        if (!encounterTypeIds.isEmpty()) {
+            query.append(" and e.encounter_type in (:encounterTypes)");
+        }
+        query.append(" order by ").append(lastChanged).append(", e.encounter_id");
+
+        SQLQuery sqlQuery = getSession().createSQLQuery(query.toString());
+        sqlQuery.setParameter("changedUntil", changedUntil);
+        sqlQuery.setParameter("lastDateChanged", syncFhirGenerationCursor.getLastDateChanged());
+        sqlQuery.setParameter("lastId", syncFhirGenerationCursor.getLastId());
+        if (!encounterTypeIds.isEmpty()) {
+            sqlQuery.setParameterList("encounterTypes", encounterTypeIds);
+        }
+        sqlQuery.addScalar("encounter_id", IntegerType.INSTANCE);
+        sqlQuery.addScalar("last_changed", TimestampType.INSTANCE);
+        sqlQuery.setMaxResults(maxResults);
+        return sqlQuery.list();
+    }
+
+    private int compareLastChanged(Object[] encounter, Object[] otherEncounter) {
+        int compared = ((Date) encounter[1]).compareTo((Date) otherEncounter[1]);
+        return compared != 0 ? compared : ((Integer) encounter[0]).compareTo((Integer) otherEncounter[0]);
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirProfileByName(java.lang.String)
      */
@@ -446,7 +1116,7 @@ public class UgandaEMRSyncDao {
 
     public List<SyncFhirResource> getSyncResourceBySyncFhirProfile(SyncFhirProfile syncFhirProfile, String from, String to) {
         to =to +" 23:59:59";
-        String query ="select resource_id, synced, date_synced, expiry_date, generator_profile, NULL as resource, sfr.creator, sfr.date_created, sfr.changed_by, sfr.date_changed, sfr.voided, sfr.date_voided, sfr.voided_by, sfr.void_reason, sfr.uuid, sfr.statusCode, status_code_detail, patient_id from sync_fhir_resource sfr inner join sync_fhir_profile sfp on sfr.generator_profile = sfp.sync_fhir_profile_id where sfp.uuid='" + syncFhirProfile.getUuid()
+        String query ="select resource_id, synced, date_synced, expiry_date, generator_profile, NULL as resource, NULL as compressed_resource, sfr.creator, sfr.date_created, sfr.changed_by, sfr.date_changed, sfr.voided, sfr.date_voided, sfr.voided_by, sfr.void_reason, sfr.uuid, sfr.statusCode, status_code_detail, patient_id from sync_fhir_resource sfr inner join sync_fhir_profile sfp on sfr.generator_profile = sfp.sync_fhir_profile_id where sfp.uuid='" + syncFhirProfile.getUuid()
                 + "' and sfr.date_created >='"+from +"'"+"and sfr.date_created <='"+to +"';" ;
         SQLQuery sqlQuery = getSession()
                 .createSQLQuery(query);
@@ -34,13 +34,18 @@ import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.fhir2.api.FhirConceptSourceService;
 import org.openmrs.module.idgen.IdentifierSource;
 import org.openmrs.module.idgen.service.IdentifierSourceService;
+import org.openmrs.module.ugandaemrsync.api.ExpiredFhirResourcePurger;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.api.dao.UgandaEMRSyncDao;
 import org.openmrs.module.ugandaemrsync.mapper.Identifier;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResourceArchive;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfileLog;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirCase;
+import org.openmrs.module.ugandaemrsync.model.SyncChangeEvent;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirGenerationCursor;
+import org.openmrs.module.ugandaemrsync.model.SyncOutboxItem;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
@@ -62,6 +67,7 @@ import java.text.SimpleDateFormat;
 import java.util.stream.Collectors;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Date;
 import java.util.Collection;
 import java.util.ArrayList;
@@ -131,6 +137,22 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
         return dao.getSyncTasks(syncTaskId);
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncTasksBySyncTaskIdAndType(String, SyncTaskType)
+     */
+    @Override
+    public List<SyncTask> getSyncTasksBySyncTaskIdAndType(String syncTaskId, SyncTaskType syncTaskType) throws APIException {
+        return dao.getSyncTasks(syncTaskId, syncTaskType);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncTasksBySyncTaskIds(Collection, Collection)
+     */
+    @Override
+    public List<SyncTask> getSyncTasksBySyncTaskIds(Collection<String> syncTaskIds, Collection<SyncTaskType> syncTaskTypes) throws APIException {
+        return dao.getSyncTasks(syncTaskIds, syncTaskTypes);
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getAllSyncTask()
      */
@@ -511,9 +533,28 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
      */
     @Override
     public SyncFhirResource saveFHIRResource(SyncFhirResource syncFHIRResource) {
+        compressResourceIfRequired(syncFHIRResource);
         return dao.saveSyncFHIRResource(syncFHIRResource);
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResources(Collection)
+     */
+    @Override
+    public List<SyncFhirResource> saveFHIRResources(Collection<SyncFhirResource> syncFhirResources) {
+        for (SyncFhirResource syncFhirResource : syncFhirResources) {
+            compressResourceIfRequired(syncFhirResource);
+        }
+        return dao.saveSyncFHIRResources(syncFhirResources);
+    }
+
+    private void compressResourceIfRequired(SyncFhirResource syncFhirResource) {
+        SyncFhirProfile syncFhirProfile = syncFhirResource.getGeneratorProfile();
+        if (syncFhirProfile != null && Boolean.TRUE.equals(syncFhirProfile.getCompressResources())) {
+            syncFhirResource.compressResource();
+        }
+    }
+
 
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResource(SyncFhirResource)
@@ -523,6 +564,14 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
         return dao.getSyncResourceBySyncFhirProfile(syncFhirProfile, includeSynced);
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFHIRResourceBySyncFhirProfile(SyncFhirProfile, boolean, Integer, Integer)
+     */
+    @Override
+    public List<SyncFhirResource> getSyncFHIRResourceBySyncFhirProfile(SyncFhirProfile syncFhirProfile, boolean includeSynced, Integer startIndex, Integer maxResults) {
+        return dao.getSyncResourceBySyncFhirProfile(syncFhirProfile, includeSynced, startIndex, maxResults);
+    }
+
 
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFHIRResourceById(java.lang.Integer)
@@ -547,6 +596,7 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getExpiredSyncFHIRResources(java.util.Date)
      */
+    @Deprecated
     @Override
     public List<SyncFhirResource> getExpiredSyncFHIRResources(Date date) {
         return dao.getExpiredSyncFHIRResources(date);
@@ -561,15 +611,57 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
         return dao.getUnSyncedFHirResources(syncFhirProfile);
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getUncompressedSyncFhirResources(SyncFhirProfile, Integer, Integer)
+     */
+    @Override
+    public List<SyncFhirResource> getUncompressedSyncFhirResources(SyncFhirProfile syncFhirProfile, Integer afterResourceId, Integer maxResults) {
+        return dao.getUncompressedSyncFhirResources(syncFhirProfile, afterResourceId, maxResults);
+    }
+
 
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#purgeExpiredFHIRResource(java.util.Date)
      */
     @Override
     public void purgeExpiredFHIRResource(Date date) {
-        for (SyncFhirResource syncFHIRResource : getExpiredSyncFHIRResources(date)) {
-            dao.purgeExpiredFHIRResource(syncFHIRResource);
-        }
+        // the batches are committed together with this call, ExpiredFhirResourcePurger commits each batch on its own
+        int purged;
+        do {
+            purged = dao.purgeExpiredSyncFhirResources(date, ExpiredFhirResourcePurger.DEFAULT_BATCH_SIZE);
+        } while (purged >= ExpiredFhirResourcePurger.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#purgeExpiredSyncFhirResources(Date, Integer)
+     */
+    @Override
+    public int purgeExpiredSyncFhirResources(Date date, Integer maxResults) {
+        return dao.purgeExpiredSyncFhirResources(date, maxResults);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#archiveSyncedFhirResources(Date, Integer, boolean)
+     */
+    @Override
+    public int archiveSyncedFhirResources(Date syncedBefore, Integer maxResults, boolean keepResource) {
+        return dao.archiveSyncedFhirResources(syncedBefore, maxResults, keepResource);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirResourceArchives(SyncFhirProfile, Date, Date)
+     */
+    @Override
+    public List<SyncFhirResourceArchive> getSyncFhirResourceArchives(SyncFhirProfile syncFhirProfile, Date dateCreatedFrom, Date dateCreatedTo) {
+        return dao.getSyncFhirResourceArchives(syncFhirProfile, dateCreatedFrom, dateCreatedTo);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncedFhirResourceCountsByStatusCode(SyncFhirProfile, Date, Date)
+     */
+    @Override
+    public Map<Integer, Integer> getSyncedFhirResourceCountsByStatusCode(SyncFhirProfile syncFhirProfile, Date dateSyncedFrom, Date dateSyncedTo) {
+        return dao.getSyncedFhirResourceCountsByStatusCode(syncFhirProfile, dateSyncedFrom, dateSyncedTo);
     }
 
 
@@ -596,13 +688,10 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
      */
     @Override
     public SyncFhirProfileLog getLatestSyncFhirProfileLogByProfileAndResourceName(SyncFhirProfile syncFhirProfile, String resourceType) {
-
-        List<SyncFhirProfileLog> syncFhirProfileLogs = getSyncFhirProfileLogByProfileAndResourceName(syncFhirProfile, resourceType);
-
-        if (syncFhirProfileLogs.size() > 0)
-            return syncFhirProfileLogs.get(0);
-        else
+        if (syncFhirProfile == null || resourceType == null) {
             return null;
+        }
+        return dao.getLatestSyncFhirProfileLogByProfileAndResourceName(syncFhirProfile, resourceType);
     }
 
 
@@ -622,6 +711,22 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
         return dao.saveSyncFHIRCase(syncFHIRCase);
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveSyncFHIRCases(Collection)
+     */
+    @Override
+    public List<SyncFhirCase> saveSyncFHIRCases(Collection<SyncFhirCase> syncFhirCases) {
+        return dao.saveSyncFHIRCases(syncFhirCases);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getNewSyncFhirCaseCandidates(SyncFhirProfile, String, Date)
+     */
+    @Override
+    public List<Object[]> getNewSyncFhirCaseCandidates(SyncFhirProfile syncFhirProfile, String candidateQuery, Date changedSince) {
+        return dao.getNewSyncFhirCaseCandidates(syncFhirProfile, candidateQuery, changedSince);
+    }
+
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getAllSyncFhirProfile()
      */
@@ -639,6 +744,122 @@ public class UgandaEMRSyncServiceImpl extends BaseOpenmrsService implements Ugan
         return dao.getSyncFhirCasesByProfile(syncFhirProfile);
     }
 
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getChangedSyncFhirCasesByProfile(org.openmrs.module.ugandaemrsync.model.SyncFhirProfile)
+     */
+    @Override
+    public List<SyncFhirCase> getChangedSyncFhirCasesByProfile(SyncFhirProfile syncFhirProfile) {
+        return dao.getChangedSyncFhirCasesByProfile(syncFhirProfile);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getChangedSyncFhirCaseIdsByProfile(org.openmrs.module.ugandaemrsync.model.SyncFhirProfile)
+     */
+    @Override
+    public List<Integer> getChangedSyncFhirCaseIdsByProfile(SyncFhirProfile syncFhirProfile) {
+        return dao.getChangedSyncFhirCaseIdsByProfile(syncFhirProfile);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveSyncChangeEvent(SyncChangeEvent)
+     */
+    @Override
+    public SyncChangeEvent saveSyncChangeEvent(SyncChangeEvent syncChangeEvent) {
+        return dao.saveSyncChangeEvent(syncChangeEvent);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getOldestSyncChangeEventDate()
+     */
+    @Override
+    public Date getOldestSyncChangeEventDate() {
+        return dao.getOldestSyncChangeEventDate();
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirGenerationCursor(SyncFhirProfile, String)
+     */
+    @Override
+    public SyncFhirGenerationCursor getSyncFhirGenerationCursor(SyncFhirProfile syncFhirProfile, String resourceType) {
+        return dao.getSyncFhirGenerationCursor(syncFhirProfile, resourceType);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#saveFHIRResourcesAndCursor(Collection, SyncFhirGenerationCursor)
+     */
+    @Override
+    public SyncFhirGenerationCursor saveFHIRResourcesAndCursor(Collection<SyncFhirResource> syncFhirResources, SyncFhirGenerationCursor syncFhirGenerationCursor) {
+        if (!syncFhirResources.isEmpty()) {
+            saveFHIRResources(syncFhirResources);
+        }
+        return dao.saveSyncFhirGenerationCursor(syncFhirGenerationCursor);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getEncountersAfterCursor(SyncFhirGenerationCursor, Date, Collection, int)
+     */
+    @Override
+    public List<Object[]> getEncountersAfterCursor(SyncFhirGenerationCursor syncFhirGenerationCursor, Date changedUntil, Collection<EncounterType> encounterTypes, int maxResults) {
+        return dao.getEncountersAfterCursor(syncFhirGenerationCursor, changedUntil, encounterTypes, maxResults);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#purgeSyncChangeEvents(Date)
+     */
+    @Override
+    public int purgeSyncChangeEvents(Date before) {
+        return dao.purgeSyncChangeEvents(before);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#claimSyncOutboxItems(String, Integer, Integer, String, int, Integer)
+     */
+    @Override
+    public List<SyncOutboxItem> claimSyncOutboxItems(String itemType, Integer profileId, Integer afterOutboxItemId, String leaseOwner, int leaseDuration, Integer maxResults) {
+        Date now = new Date();
+        return dao.claimSyncOutboxItems(itemType, profileId, afterOutboxItemId, leaseOwner, now, new Date(now.getTime() + leaseDuration * 1000L), maxResults);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#completeSyncOutboxItems(String, Collection)
+     */
+    @Override
+    public int completeSyncOutboxItems(String leaseOwner, Collection<Integer> outboxItemIds) {
+        return dao.completeSyncOutboxItems(leaseOwner, outboxItemIds);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#releaseSyncOutboxItems(String, Collection, boolean)
+     */
+    @Override
+    public int releaseSyncOutboxItems(String leaseOwner, Collection<Integer> outboxItemIds, boolean attempted) {
+        return dao.releaseSyncOutboxItems(leaseOwner, outboxItemIds, attempted);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#rescheduleSyncOutboxItems(String, Collection)
+     */
+    @Override
+    public int rescheduleSyncOutboxItems(String leaseOwner, Collection<SyncOutboxItem> syncOutboxItems) {
+        return dao.rescheduleSyncOutboxItems(leaseOwner, syncOutboxItems);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getPatientsWithEarlierUnsentResources(SyncFhirProfile, Integer, Collection)
+     */
+    @Override
+    public List<Integer> getPatientsWithEarlierUnsentResources(SyncFhirProfile syncFhirProfile, Integer beforeOutboxItemId, Collection<Integer> patientIds) {
+        return dao.getPatientsWithEarlierUnsentResources(syncFhirProfile, beforeOutboxItemId, patientIds);
+    }
+
+    /**
+     * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#getSyncFhirResourcesByIds(Collection)
+     */
+    @Override
+    public List<SyncFhirResource> getSyncFhirResourcesByIds(Collection<Integer> resourceIds) {
+        return dao.getSyncFhirResourcesByIds(resourceIds);
+    }
+
 
     /**
      * @see org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService#testOrderHasResults(org.openmrs.Order)
@@ -0,0 +1,95 @@
+package org.openmrs.module.ugandaemrsync.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A change to a clinical record captured when it is saved, so that resources can be generated for the patients that
+ * changed instead of scanning the clinical tables. Events only hold ids so that capturing them stays cheap.
+ */
+@Entity(name = "ugandaemrsync.SyncChangeEvent")
+@Table(name = "sync_change_event")
+public class SyncChangeEvent implements Serializable {
+
+    public static final String ENTITY_TYPE_ENCOUNTER = "Encounter";
+
+    public static final String ENTITY_TYPE_OBS = "Obs";
+
+    public static final String ENTITY_TYPE_ORDER = "Order";
+
+    public static final String ENTITY_TYPE_PATIENT = "Patient";
+
+    public static final String ENTITY_TYPE_PATIENT_PROGRAM = "PatientProgram";
+
+    @Id
+    @GeneratedValue
+    @Column(name = "change_event_id", length = 11)
+    private Integer changeEventId;
+
+    @Column(name = "entity_type", length = 50, nullable = false)
+    private String entityType;
+
+    @Column(name = "entity_id", length = 11, nullable = false)
+    private Integer entityId;
+
+    @Column(name = "patient", length = 11)
+    private Integer patientId;
+
+    @Column(name = "date_created", nullable = false)
+    private Date dateCreated;
+
+    public SyncChangeEvent() {
+    }
+
+    public SyncChangeEvent(String entityType, Integer entityId, Integer patientId, Date dateCreated) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.patientId = patientId;
+        this.dateCreated = dateCreated;
+    }
+
+    public Integer getChangeEventId() {
+        return changeEventId;
+    }
+
+    public void setChangeEventId(Integer changeEventId) {
+        this.changeEventId = changeEventId;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public Integer getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(Integer entityId) {
+        this.entityId = entityId;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+}
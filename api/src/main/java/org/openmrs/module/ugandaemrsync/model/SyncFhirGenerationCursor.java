@@ -0,0 +1,90 @@
+package org.openmrs.module.ugandaemrsync.model;
+
+import org.openmrs.BaseOpenmrsData;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The position a profile has generated resources of a resource type up to, as the change date and id of the last
+ * record generated. The next generation continues with the records changed after this position.
+ */
+@Entity(name = "ugandaemrsync.SyncFhirGenerationCursor")
+@Table(name = "sync_fhir_generation_cursor")
+public class SyncFhirGenerationCursor extends BaseOpenmrsData implements Serializable {
+
+    @Id
+    @GeneratedValue
+    @Column(name = "cursor_id", length = 11)
+    private Integer cursorId;
+
+    @ManyToOne
+    @JoinColumn(name = "profile")
+    private SyncFhirProfile profile;
+
+    @Column(name = "resource_type", length = 255)
+    private String resourceType;
+
+    @Column(name = "last_date_changed", nullable = false)
+    private Date lastDateChanged;
+
+    @Column(name = "last_id", length = 11, nullable = false)
+    private Integer lastId;
+
+    public Integer getCursorId() {
+        return cursorId;
+    }
+
+    public void setCursorId(Integer cursorId) {
+        this.cursorId = cursorId;
+    }
+
+    public SyncFhirProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(SyncFhirProfile profile) {
+        this.profile = profile;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public void setResourceType(String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+    public Date getLastDateChanged() {
+        return lastDateChanged;
+    }
+
+    public void setLastDateChanged(Date lastDateChanged) {
+        this.lastDateChanged = lastDateChanged;
+    }
+
+    public Integer getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Integer lastId) {
+        this.lastId = lastId;
+    }
+
+    @Override
+    public Integer getId() {
+        return getCursorId();
+    }
+
+    @Override
+    public void setId(Integer id) {
+        this.cursorId = id;
+    }
+}
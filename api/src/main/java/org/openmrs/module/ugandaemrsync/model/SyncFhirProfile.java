@@ -89,6 +89,18 @@ public class SyncFhirProfile extends BaseOpenmrsData implements Serializable {
     @Column(name = "sync_limit")
     private Integer syncLimit;
 
+    @Column(name = "max_concurrent_requests")
+    private Integer maxConcurrentRequests;
+
+    @Column(name = "compress_resources")
+    private Boolean compressResources;
+
+    @Column(name = "gzip_requests")
+    private Boolean gzipRequests;
+
+    @Column(name = "address_key_mapping", length = 1000)
+    private String addressKeyMapping;
+
     @Getter
     @Column(name = "token_expiry_date")
     private Date tokenExpiryDate;
@@ -277,6 +289,38 @@ public class SyncFhirProfile extends BaseOpenmrsData implements Serializable {
         this.syncLimit = syncLimit;
     }
 
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public Boolean getCompressResources() {
+        return compressResources;
+    }
+
+    public void setCompressResources(Boolean compressResources) {
+        this.compressResources = compressResources;
+    }
+
+    public Boolean getGzipRequests() {
+        return gzipRequests;
+    }
+
+    public void setGzipRequests(Boolean gzipRequests) {
+        this.gzipRequests = gzipRequests;
+    }
+
+    public String getAddressKeyMapping() {
+        return addressKeyMapping;
+    }
+
+    public void setAddressKeyMapping(String addressKeyMapping) {
+        this.addressKeyMapping = addressKeyMapping;
+    }
+
     public Boolean getKeepProfileIdentifierOnly() {
         return keepProfileIdentifierOnly;
     }
@@ -4,6 +4,7 @@ package org.openmrs.module.ugandaemrsync.model;
 import org.hibernate.annotations.Type;
 import org.openmrs.BaseOpenmrsData;
 import org.openmrs.Patient;
+import org.openmrs.module.ugandaemrsync.util.UgandaEMRSyncUtil;
 
 import javax.persistence.Entity;
 import javax.persistence.Table;
@@ -12,6 +13,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Column;
 import javax.persistence.ManyToOne;
 import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -51,6 +53,10 @@ public class SyncFhirResource extends BaseOpenmrsData implements Serializable {
     @Type(type="text")
     private String resource;
 
+    @Lob
+    @Column(name = "compressed_resource")
+    private byte[] compressedResource;
+
 
     public int getResourceId() {
         return resourceId;
@@ -93,12 +99,36 @@ public class SyncFhirResource extends BaseOpenmrsData implements Serializable {
         this.generatorProfile = generatorProfile;
     }
 
+    /**
+     * Gets the resource, decompressing it when it is stored compressed
+     *
+     * @return the resource
+     */
     public String getResource() {
+        if (compressedResource != null) {
+            return UgandaEMRSyncUtil.decompress(compressedResource);
+        }
         return resource;
     }
 
     public void setResource(String resource) {
         this.resource = resource;
+        this.compressedResource = null;
+    }
+
+    /**
+     * Moves the resource into the compressed column. Used when the profile that generated the resource stores its
+     * resources compressed.
+     */
+    public void compressResource() {
+        if (resource != null) {
+            compressedResource = UgandaEMRSyncUtil.compress(resource);
+            resource = null;
+        }
+    }
+
+    public boolean isResourceCompressed() {
+        return compressedResource != null;
     }
 
     @Override
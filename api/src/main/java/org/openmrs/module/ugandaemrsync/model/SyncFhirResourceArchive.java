@@ -0,0 +1,152 @@
+package org.openmrs.module.ugandaemrsync.model;
+
+import org.openmrs.Patient;
+import org.openmrs.module.ugandaemrsync.util.UgandaEMRSyncUtil;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A synced resource moved out of sync_fhir_resource once it is older than the archive age, so that the table only
+ * holds the resources still being worked on. The archive keeps the metadata of the resource under its original id and,
+ * when the profile is set to keep it, the compressed resource. Archived resources are purged when they expire.
+ */
+@Entity(name = "ugandaemrsync.SyncFhirResourceArchive")
+@Table(name = "sync_fhir_resource_archive")
+public class SyncFhirResourceArchive implements Serializable {
+
+    @Id
+    @Column(name = "resource_id", length = 11)
+    private Integer resourceId;
+
+    @Column(name = "uuid", length = 38)
+    private String uuid;
+
+    @ManyToOne
+    @JoinColumn(name = "generator_profile")
+    private SyncFhirProfile generatorProfile;
+
+    @ManyToOne
+    @JoinColumn(name = "patient_id")
+    private Patient patient;
+
+    @Column(name = "statusCode")
+    private Integer statusCode;
+
+    @Column(name = "status_code_detail")
+    private String statusCodeDetail;
+
+    @Column(name = "date_created")
+    private Date dateCreated;
+
+    @Column(name = "date_synced")
+    private Date dateSynced;
+
+    @Column(name = "expiry_date")
+    private Date expiryDate;
+
+    @Column(name = "date_archived", nullable = false)
+    private Date dateArchived;
+
+    @Lob
+    @Column(name = "compressed_resource")
+    private byte[] compressedResource;
+
+    public Integer getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(Integer resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    public SyncFhirProfile getGeneratorProfile() {
+        return generatorProfile;
+    }
+
+    public void setGeneratorProfile(SyncFhirProfile generatorProfile) {
+        this.generatorProfile = generatorProfile;
+    }
+
+    public Patient getPatient() {
+        return patient;
+    }
+
+    public void setPatient(Patient patient) {
+        this.patient = patient;
+    }
+
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(Integer statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getStatusCodeDetail() {
+        return statusCodeDetail;
+    }
+
+    public void setStatusCodeDetail(String statusCodeDetail) {
+        this.statusCodeDetail = statusCodeDetail;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getDateSynced() {
+        return dateSynced;
+    }
+
+    public void setDateSynced(Date dateSynced) {
+        this.dateSynced = dateSynced;
+    }
+
+    public Date getExpiryDate() {
+        return expiryDate;
+    }
+
+    public void setExpiryDate(Date expiryDate) {
+        this.expiryDate = expiryDate;
+    }
+
+    public Date getDateArchived() {
+        return dateArchived;
+    }
+
+    public void setDateArchived(Date dateArchived) {
+        this.dateArchived = dateArchived;
+    }
+
+    /**
+     * @return the resource, null when only the metadata of the resource was archived
+     */
+    public String getResource() {
+        return compressedResource == null ? null : UgandaEMRSyncUtil.decompress(compressedResource);
+    }
+
+    public boolean isResourceArchived() {
+        return compressedResource != null;
+    }
+}
@@ -0,0 +1,166 @@
+package org.openmrs.module.ugandaemrsync.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A unit of work waiting to be sent, such as a generated resource, or the viral load result of a sent sample waiting to
+ * be fetched. A sender claims items by taking a lease on them, so
+ * that senders on other threads or nodes sharing the database skip them until the lease is released or expires. Items
+ * only hold the id of the work so that the outbox stays small, and are removed once the work is done. Items whose work
+ * failed keep the number of attempts and the class of the last error, and are not claimed again before their next
+ * attempt date.
+ */
+@Entity(name = "ugandaemrsync.SyncOutboxItem")
+@Table(name = "sync_outbox")
+public class SyncOutboxItem implements Serializable {
+
+    public static final String ITEM_TYPE_FHIR_RESOURCE = "SyncFhirResource";
+
+    public static final String ITEM_TYPE_VIRAL_LOAD_RESULT = "ViralLoadResult";
+
+    public static final String STATUS_PENDING = "PENDING";
+
+    public static final String STATUS_LEASED = "LEASED";
+
+    @Id
+    @GeneratedValue
+    @Column(name = "outbox_item_id", length = 11)
+    private Integer outboxItemId;
+
+    @Column(name = "item_type", length = 50, nullable = false)
+    private String itemType;
+
+    @Column(name = "item_id", length = 11, nullable = false)
+    private Integer itemId;
+
+    @Column(name = "profile", length = 11)
+    private Integer profileId;
+
+    @Column(name = "status", length = 20, nullable = false)
+    private String status;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Date nextAttemptAt;
+
+    @Column(name = "last_error_class", length = 20)
+    private String lastErrorClass;
+
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    @Column(name = "lease_expiry")
+    private Date leaseExpiry;
+
+    @Column(name = "date_created", nullable = false)
+    private Date dateCreated;
+
+    public SyncOutboxItem() {
+    }
+
+    public SyncOutboxItem(String itemType, Integer itemId, Integer profileId, Date dateCreated) {
+        this.itemType = itemType;
+        this.itemId = itemId;
+        this.profileId = profileId;
+        this.status = STATUS_PENDING;
+        this.attempts = 0;
+        this.nextAttemptAt = dateCreated;
+        this.dateCreated = dateCreated;
+    }
+
+    public Integer getOutboxItemId() {
+        return outboxItemId;
+    }
+
+    public void setOutboxItemId(Integer outboxItemId) {
+        this.outboxItemId = outboxItemId;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public void setItemType(String itemType) {
+        this.itemType = itemType;
+    }
+
+    public Integer getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(Integer itemId) {
+        this.itemId = itemId;
+    }
+
+    public Integer getProfileId() {
+        return profileId;
+    }
+
+    public void setProfileId(Integer profileId) {
+        this.profileId = profileId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastErrorClass() {
+        return lastErrorClass;
+    }
+
+    public void setLastErrorClass(String lastErrorClass) {
+        this.lastErrorClass = lastErrorClass;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Date getLeaseExpiry() {
+        return leaseExpiry;
+    }
+
+    public void setLeaseExpiry(Date leaseExpiry) {
+        this.leaseExpiry = leaseExpiry;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+}
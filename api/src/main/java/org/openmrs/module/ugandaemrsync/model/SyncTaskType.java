@@ -52,6 +52,9 @@ public class SyncTaskType extends BaseOpenmrsData {
 	@Column(name = "token_refresh_key", length = 255)
 	private String tokenRefreshKey;
 
+	@Column(name = "gzip_requests")
+	private Boolean gzipRequests;
+
 
 	public int getSyncTaskTypeId() {
 		return syncTaskTypeId;
@@ -150,4 +153,12 @@ public class SyncTaskType extends BaseOpenmrsData {
 	public void setTokenRefreshKey(String tokenRefreshKey) {
 		this.tokenRefreshKey = tokenRefreshKey;
 	}
+
+	public Boolean getGzipRequests() {
+		return gzipRequests;
+	}
+
+	public void setGzipRequests(Boolean gzipRequests) {
+		this.gzipRequests = gzipRequests;
+	}
 }
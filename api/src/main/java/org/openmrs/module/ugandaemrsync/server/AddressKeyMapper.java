@@ -0,0 +1,106 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.apache.commons.lang.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renames the keys of the addresses of a Patient or Practitioner to the names expected by the receiving server. A key
+ * is either a field of the address, like state, or an OpenMRS address extension, like address5 in
+ * http://fhir.openmrs.org/ext/address#address5. Only the addresses are visited, the rest of the resource is left
+ * untouched.
+ * <p>
+ * The mapping is written as comma separated from=to pairs, for example address5=village,state=city
+ */
+public class AddressKeyMapper implements FhirResourceTransformStep {
+
+    public static final String DEFAULT_ADDRESS_KEY_MAPPING = "address5=village,address4=parish,address3=subcounty,state=city";
+
+    private final Map<String, String> mapping;
+
+    public AddressKeyMapper(Map<String, String> mapping) {
+        this.mapping = Collections.unmodifiableMap(new LinkedHashMap<>(mapping));
+    }
+
+    /**
+     * Creates a mapper from a mapping string
+     *
+     * @param mapping comma separated from=to pairs, the default mapping is used when blank
+     * @return the mapper
+     */
+    public static AddressKeyMapper fromMapping(String mapping) {
+        return new AddressKeyMapper(parseMapping(StringUtils.isBlank(mapping) ? DEFAULT_ADDRESS_KEY_MAPPING : mapping));
+    }
+
+    /**
+     * Parses comma separated from=to pairs, pairs without a target are ignored
+     *
+     * @param mapping the mapping string
+     * @return the keys to rename mapped to their new names
+     */
+    public static Map<String, String> parseMapping(String mapping) {
+        Map<String, String> keys = new LinkedHashMap<>();
+        if (mapping == null) {
+            return keys;
+        }
+        for (String pair : mapping.split(",")) {
+            String[] fromTo = pair.split("=");
+            if (fromTo.length == 2 && StringUtils.isNotBlank(fromTo[0]) && StringUtils.isNotBlank(fromTo[1])) {
+                keys.put(fromTo[0].trim(), fromTo[1].trim());
+            }
+        }
+        return keys;
+    }
+
+    public Map<String, String> getMapping() {
+        return mapping;
+    }
+
+    @Override
+    public void transform(JSONObject resource) {
+        JSONArray addresses = resource.optJSONArray("address");
+        if (addresses == null) {
+            return;
+        }
+        for (int i = 0; i < addresses.length(); i++) {
+            JSONObject address = addresses.optJSONObject(i);
+            if (address != null) {
+                renameFields(address);
+                renameExtensions(address.optJSONArray("extension"));
+            }
+        }
+    }
+
+    private void renameFields(JSONObject address) {
+        for (Map.Entry<String, String> key : mapping.entrySet()) {
+            if (address.has(key.getKey())) {
+                address.put(key.getValue(), address.remove(key.getKey()));
+            }
+        }
+    }
+
+    private void renameExtensions(JSONArray extensions) {
+        if (extensions == null) {
+            return;
+        }
+        for (int i = 0; i < extensions.length(); i++) {
+            JSONObject extension = extensions.optJSONObject(i);
+            if (extension == null) {
+                continue;
+            }
+            String url = extension.optString("url");
+            int keyIndex = url.lastIndexOf('#');
+            if (keyIndex >= 0) {
+                String newKey = mapping.get(url.substring(keyIndex + 1));
+                if (newKey != null) {
+                    extension.put("url", url.substring(0, keyIndex + 1) + newKey);
+                }
+            }
+            renameExtensions(extension.optJSONArray("extension"));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.function.Consumer;
+
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_BUNDLE_RESOURCE_TRANSACTION;
+
+/**
+ * Groups encoded FHIR resources into transaction bundles as they are written. A bundle is handed to the consumer as
+ * soon as it holds the number of resources a bundle may have, so only the bundle being filled is kept in memory.
+ * {@link #close()} hands over the last bundle.
+ */
+public class FhirResourceBundleWriter {
+
+    private final int numberOfResourcesInBundle;
+
+    private final Consumer<String> bundleConsumer;
+
+    private final StringBuilder currentBundle = new StringBuilder();
+
+    private int resourcesInCurrentBundle = 0;
+
+    private int numberOfResources = 0;
+
+    private int numberOfBundles = 0;
+
+    /**
+     * @param numberOfResourcesInBundle the most resources a bundle may have
+     * @param bundleConsumer receives each bundle when it is complete
+     */
+    public FhirResourceBundleWriter(int numberOfResourcesInBundle, Consumer<String> bundleConsumer) {
+        this.numberOfResourcesInBundle = Math.max(numberOfResourcesInBundle, 1);
+        this.bundleConsumer = bundleConsumer;
+    }
+
+    /**
+     * Adds an encoded resource to the current bundle, handing the bundle over when it is full. Blank resources, left by
+     * resources that failed to encode, are skipped.
+     *
+     * @param encodedResource the encoded bundle entry of the resource
+     */
+    public void write(String encodedResource) {
+        if (StringUtils.isBlank(encodedResource)) {
+            return;
+        }
+        if (resourcesInCurrentBundle > 0) {
+            currentBundle.append(", ");
+        }
+        currentBundle.append(encodedResource);
+        resourcesInCurrentBundle++;
+        numberOfResources++;
+        if (resourcesInCurrentBundle >= numberOfResourcesInBundle) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands over the last bundle if it has any resources
+     */
+    public void close() {
+        flush();
+    }
+
+    public int getNumberOfResources() {
+        return numberOfResources;
+    }
+
+    public int getNumberOfBundles() {
+        return numberOfBundles;
+    }
+
+    private void flush() {
+        if (resourcesInCurrentBundle == 0) {
+            return;
+        }
+        String bundle = String.format(FHIR_BUNDLE_RESOURCE_TRANSACTION, "[" + currentBundle + "]");
+        currentBundle.setLength(0);
+        resourcesInCurrentBundle = 0;
+        numberOfBundles++;
+        bundleConsumer.accept(bundle);
+    }
+}
@@ -0,0 +1,120 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Iterates over FHIR resources one page at a time, so that only the current page is held in memory. A page is loaded
+ * when the previous one has been consumed, either from the results of a FHIR search or by fetching the next page of
+ * uuids from a FHIR service.
+ */
+public class FhirResourcePager implements Iterable<IBaseResource> {
+
+    private final int pageSize;
+
+    /**
+     * Loads the page starting at the given position, returns null when there are no more pages. A page may be empty
+     * when none of its resources could be found.
+     */
+    private final Function<Integer, List<IBaseResource>> pageLoader;
+
+    private FhirResourcePager(int pageSize, Function<Integer, List<IBaseResource>> pageLoader) {
+        this.pageSize = pageSize;
+        this.pageLoader = pageLoader;
+    }
+
+    /**
+     * Pages over the results of a FHIR search
+     *
+     * @param bundleProvider the search results, may be null
+     * @param pageSize the number of resources to load at a time
+     * @return the pager
+     */
+    public static FhirResourcePager fromBundleProvider(IBundleProvider bundleProvider, int pageSize) {
+        if (bundleProvider == null) {
+            return empty();
+        }
+        int resourcesPerPage = Math.max(pageSize, 1);
+        return new FhirResourcePager(resourcesPerPage, from -> {
+            Integer size = bundleProvider.size();
+            if (size != null && from >= size) {
+                return null;
+            }
+            int to = size == null ? from + resourcesPerPage : Math.min(from + resourcesPerPage, size);
+            List<IBaseResource> resources = bundleProvider.getResources(from, to);
+            return resources == null || resources.isEmpty() ? null : resources;
+        });
+    }
+
+    /**
+     * Pages over resources fetched by uuid
+     *
+     * @param uuids the uuids of the resources
+     * @param pageSize the number of resources to fetch at a time
+     * @param loader fetches the resources of a page of uuids
+     * @return the pager
+     */
+    public static FhirResourcePager fromUuids(Collection<String> uuids, int pageSize, Function<Collection<String>, Collection<? extends IBaseResource>> loader) {
+        if (uuids == null || uuids.isEmpty()) {
+            return empty();
+        }
+        List<String> uuidList = new ArrayList<>(uuids);
+        int resourcesPerPage = Math.max(pageSize, 1);
+        return new FhirResourcePager(resourcesPerPage, from -> {
+            if (from >= uuidList.size()) {
+                return null;
+            }
+            List<String> page = uuidList.subList(from, Math.min(from + resourcesPerPage, uuidList.size()));
+            return new ArrayList<>(loader.apply(new ArrayList<>(page)));
+        });
+    }
+
+    /**
+     * @return a pager without resources
+     */
+    public static FhirResourcePager empty() {
+        return new FhirResourcePager(1, from -> null);
+    }
+
+    @Override
+    public Iterator<IBaseResource> iterator() {
+        return new Iterator<IBaseResource>() {
+
+            private int nextPageStart = 0;
+
+            private Iterator<IBaseResource> page = Collections.emptyIterator();
+
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !exhausted) {
+                    List<IBaseResource> resources = pageLoader.apply(nextPageStart);
+                    if (resources == null) {
+                        exhausted = true;
+                    } else {
+                        nextPageStart += pageSize;
+                        page = resources.iterator();
+                    }
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public IBaseResource next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered list of {@link FhirResourceTransformStep}s applied to an encoded FHIR resource. The resource is parsed once,
+ * every step modifies the same json tree and the tree is serialized once at the end, rather than each step parsing
+ * and serializing the resource again.
+ */
+public class FhirResourceTransformPipeline {
+
+    private final List<FhirResourceTransformStep> steps = new ArrayList<>();
+
+    /**
+     * Appends a step to the end of the pipeline
+     *
+     * @param step the step to append
+     * @return this pipeline
+     */
+    public FhirResourceTransformPipeline addStep(FhirResourceTransformStep step) {
+        steps.add(step);
+        return this;
+    }
+
+    /**
+     * Inserts a step at the given position of the pipeline
+     *
+     * @param position the position of the step, 0 to run it first
+     * @param step the step to insert
+     * @return this pipeline
+     */
+    public FhirResourceTransformPipeline addStep(int position, FhirResourceTransformStep step) {
+        steps.add(position, step);
+        return this;
+    }
+
+    public List<FhirResourceTransformStep> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Applies all steps in order to the resource
+     *
+     * @param resource the json tree of the resource, modified in place
+     * @return the same json tree
+     */
+    public JSONObject transform(JSONObject resource) {
+        for (FhirResourceTransformStep step : steps) {
+            step.transform(resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Parses the resource, applies all steps in order and serializes the result
+     *
+     * @param resource the json of the resource
+     * @return the json of the transformed resource
+     */
+    public String transform(String resource) {
+        return transform(new JSONObject(resource)).toString();
+    }
+}
@@ -0,0 +1,16 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.json.JSONObject;
+
+/**
+ * A single post processing step applied to an encoded FHIR resource by a {@link FhirResourceTransformPipeline}
+ */
+public interface FhirResourceTransformStep {
+
+    /**
+     * Modifies the resource in place
+     *
+     * @param resource the json tree of the resource
+     */
+    void transform(JSONObject resource);
+}
@@ -508,5 +508,14 @@ public class SyncConstant {
 			"         INNER JOIN drug_order d_o ON o.order_id = d_o.order_id\n" +
 			"where ot.uuid='131168f4-15f5-102d-96e4-000c29c2a5d7' and o.voided=0 and patient_id=%s and DATE(date_activated) <='%s'" +
 			" and o.concept_id in (SELECT answer_concept from concept_answer where concept_id=90315) ORDER BY date_activated DESC LIMIT 1\n";
+	public static final String VL_PROGRAM_DATA_OBS_QUERY = "SELECT person_id, concept_id, obs_id, obs_datetime, value_coded, value_datetime FROM obs WHERE voided = 0 AND concept_id IN (%s) AND person_id IN (%s) ORDER BY person_id, concept_id, obs_datetime, obs_id";
+	public static final String VL_PROGRAM_DATA_DRUG_ORDER_QUERY = "SELECT o.patient_id, o.concept_id, o.date_activated FROM orders o\n" +
+			"         INNER JOIN order_type ot ON o.order_type_id = ot.order_type_id\n" +
+			"         INNER JOIN drug_order d_o ON o.order_id = d_o.order_id\n" +
+			"where ot.uuid='131168f4-15f5-102d-96e4-000c29c2a5d7' and o.voided=0 and o.patient_id IN (%s) ORDER BY o.patient_id, o.date_activated";
+	public static final String VL_PROGRAM_DATA_REGIMEN_CONCEPTS_QUERY = "SELECT answer_concept from concept_answer where concept_id=90315";
+	public static final String VL_PROGRAM_DATA_IDENTIFIER_QUERY = "SELECT pi.patient_id, pit.uuid, pi.identifier FROM patient_identifier pi INNER JOIN patient_identifier_type pit ON pi.identifier_type = pit.patient_identifier_type_id WHERE pit.uuid IN (%s) AND pi.patient_id IN (%s) ORDER BY pi.patient_identifier_id";
+	public static final String VL_PROGRAM_DATA_REGIMEN_LINE_QUERY = "Select pp.patient_id, pws.uuid from patient_state ps inner join patient_program pp on ps.patient_program_id = pp.patient_program_id inner join program p\n" +
+			"    on pp.program_id = p.program_id inner join program_workflow_state pws on ps.state = pws.program_workflow_state_id where ps.end_date is null and p.uuid='18c6d4aa-0a36-11e7-8dbb-507b9dc4c741' and pws.uuid IN (%s) and pp.patient_id IN (%s)";
 	public static final String ALIS_SYNC_TASK_TYPE_UUID = "d4a3ebbb-e793-4e56-867c-0cf998e51f56";
 }
\ No newline at end of file
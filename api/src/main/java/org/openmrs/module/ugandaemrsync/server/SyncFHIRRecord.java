@@ -1,10 +1,10 @@
 package org.openmrs.module.ugandaemrsync.server;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
+import org.apache.commons.lang.time.DateUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.SQLQuery;
@@ -28,13 +28,10 @@ import org.openmrs.ProgramWorkflowState;
 import org.openmrs.OrderType;
 import org.openmrs.Order;
 import org.openmrs.Concept;
-import org.openmrs.ConceptMap;
-import org.openmrs.PatientState;
-import org.openmrs.api.ConceptService;
 import org.openmrs.api.OrderService;
 import org.openmrs.api.PatientService;
-import org.openmrs.api.ProgramWorkflowService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
 import org.openmrs.api.context.ServiceContext;
 import org.openmrs.module.fhir2.api.FhirPersonService;
 import org.openmrs.module.fhir2.api.FhirPatientService;
@@ -42,6 +39,15 @@ import org.openmrs.module.fhir2.api.FhirPractitionerService;
 import org.openmrs.module.fhir2.api.FhirObservationService;
 import org.openmrs.module.fhir2.api.FhirEncounterService;
 import org.openmrs.module.fhir2.api.FhirServiceRequestService;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreaker;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreakerRegistry;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
+import org.openmrs.module.ugandaemrsync.api.ConceptCodingCache;
+import org.openmrs.module.ugandaemrsync.api.SendRetryPolicy;
+import org.openmrs.module.ugandaemrsync.api.SyncOutboxLease;
+import org.openmrs.module.ugandaemrsync.api.FhirSerializer;
+import org.openmrs.module.ugandaemrsync.api.TransferStatistics;
+import org.openmrs.module.ugandaemrsync.api.TransferStatisticsRegistry;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
@@ -49,6 +55,8 @@ import org.openmrs.module.ugandaemrsync.model.SyncFhirCase;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfileLog;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirGenerationCursor;
+import org.openmrs.module.ugandaemrsync.model.SyncOutboxItem;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.util.UgandaEMRSyncUtil;
 import org.openmrs.parameter.EncounterSearchCriteria;
@@ -61,15 +69,24 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.FSHR_SYNC_FHIR_PROFILE_UUID;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CASE_GENERATION_THREADS;
 import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.CROSS_BORDER_CR_SYNC_FHIR_PROFILE_UUID;
 import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.PATIENT_ID_TYPE_CROSS_BORDER_UUID;
 import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.PATIENT_ID_TYPE_CROSS_BORDER_NAME;
@@ -82,12 +99,10 @@ import static org.openmrs.module.ugandaemrsync.server.SyncConstant.ENCOUNTER_UUI
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.OBSERVATION_UUID_QUERY;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIRSERVER_SYNC_TASK_TYPE_UUID;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.GP_DHIS2;
-import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_BUNDLE_RESOURCE_TRANSACTION;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_BUNDLE_CASE_RESOURCE_TRANSACTION;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_BUNDLE_RESOURCE_METHOD_POST;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_BUNDLE_RESOURCE_METHOD_PUT;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.ENCOUNTER_ROLE;
-import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_CODING_DATATYPE;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.PASSPORT_IDENTIFIER_SYSTEM_URL_GP;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.NATIONAL_ID_IDENTIFIER_SYSTEM_URL_GP;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.NHPI_IDENTIFIER_SYSTEM_URL_GP;
@@ -98,6 +113,28 @@ import static org.openmrs.module.ugandaemrsync.server.SyncConstant.OPENMRS_IDENT
  */
 public class SyncFHIRRecord {
 
+    private static final int SYNC_STATUS_UPDATE_BATCH_SIZE = 50;
+
+    private static final int SYNC_FHIR_RESOURCE_CHUNK_SIZE = 100;
+
+    private static final int CASE_RESOURCE_SAVE_BATCH_SIZE = 100;
+
+    private static final int BUNDLE_SAVE_BATCH_SIZE = 50;
+
+    private static final int RESOURCE_PAGE_SIZE = 100;
+
+    /**
+     * Minutes before the last generation that case detection looks for captured changes, so that changes committed
+     * after a generation started are not missed. Candidates that already have a case are skipped, so the overlap is
+     * cheap.
+     */
+    private static final int CASE_DETECTION_CHANGE_OVERLAP_MINUTES = 10;
+
+    /**
+     * Seconds before the start of a generation that records must have been changed to be generated with a cursor
+     */
+    private static final int GENERATION_CURSOR_SETTLE_SECONDS = 60;
+
     UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
 
     Log log = LogFactory.getLog(SyncFHIRRecord.class);
@@ -113,6 +150,14 @@ public class SyncFHIRRecord {
 
     Map<String, Object> anyOtherObject = new HashMap<>();
 
+    private final Map<String, FhirResourceTransformPipeline> personTransformPipelines = new HashMap<>();
+
+    private AddressKeyMapper addressKeyMapper;
+
+    private String addressKeyMapping;
+
+    private int caseResourceBatchSize = CASE_RESOURCE_SAVE_BATCH_SIZE;
+
 
     public SyncFHIRRecord() {
         healthCenterIdentifier = Context.getAdministrationService().getGlobalProperty(GP_DHIS2);
@@ -149,6 +194,7 @@ public class SyncFHIRRecord {
     public List<Map> processFHIRData(List<String> dataToProcess, String dataType, boolean addOrganizationToRecord) {
         List<Map> maps = new ArrayList<>();
         SyncTaskType syncTaskType = Context.getService(UgandaEMRSyncService.class).getSyncTaskTypeByUUID(FHIRSERVER_SYNC_TASK_TYPE_UUID);
+        IParser parser = FhirSerializer.getInstance().getJsonParser();
 
         FhirPersonService fhirPersonService;
         FhirPatientService fhirPatientService;
@@ -178,39 +224,43 @@ public class SyncFHIRRecord {
             throw new RuntimeException(e);
         }
 
-        for (String data : dataToProcess) {
-            try {
-
-                IParser parser = FhirContext.forR4().newJsonParser();
-                String jsonData = "";
-
-                if (dataType == "Patient") {
-                    jsonData = parser.encodeResourceToString(fhirPatientService.get(data));
-                } else if (dataType.equals("Person")) {
-                    jsonData = parser.encodeResourceToString(fhirPersonService.get(data));
-                } else if (dataType.equals("Encounter")) {
-                    jsonData = parser.encodeResourceToString(fhirEncounterService.get(data));
-                } else if (dataType.equals("Observation")) {
-                    jsonData = parser.encodeResourceToString(fhirObservationService.get(data));
-                } else if (dataType.equals("Practitioner")) {
-                    jsonData = parser.encodeResourceToString(fhirPractitionerService.get(data));
-                }
+        TransferStatistics transferStatistics = TransferStatisticsRegistry.getInstance().startRun(syncTaskType.getUrl());
+        try {
+            for (String data : dataToProcess) {
+                try {
+
+                    String jsonData = "";
+
+                    if (dataType == "Patient") {
+                        jsonData = parser.encodeResourceToString(fhirPatientService.get(data));
+                    } else if (dataType.equals("Person")) {
+                        jsonData = parser.encodeResourceToString(fhirPersonService.get(data));
+                    } else if (dataType.equals("Encounter")) {
+                        jsonData = parser.encodeResourceToString(fhirEncounterService.get(data));
+                    } else if (dataType.equals("Observation")) {
+                        jsonData = parser.encodeResourceToString(fhirObservationService.get(data));
+                    } else if (dataType.equals("Practitioner")) {
+                        jsonData = parser.encodeResourceToString(fhirPractitionerService.get(data));
+                    }
 
-                if (!jsonData.equals("")) {
-                    if (addOrganizationToRecord) {
-                        jsonData = addOrganizationToRecord(jsonData, "managingOrganization");
+                    if (!jsonData.equals("")) {
+                        if (addOrganizationToRecord) {
+                            jsonData = addOrganizationToRecord(jsonData, "managingOrganization");
+                        }
+                        Map map = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl() + dataType, syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", jsonData, false, Boolean.TRUE.equals(syncTaskType.getGzipRequests()), transferStatistics);
+                        map.put("DataType", dataType);
+                        map.put("uuid", data);
+                        maps.add(map);
                     }
-                    Map map = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl() + dataType, syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", jsonData, false);
-                    map.put("DataType", dataType);
-                    map.put("uuid", data);
-                    maps.add(map);
-                }
 
-            } catch (Exception e) {
-                log.error(e);
-            }
+                } catch (Exception e) {
+                    log.error(e);
+                }
 
 
+            }
+        } finally {
+            TransferStatisticsRegistry.getInstance().completeRun(transferStatistics);
         }
         return maps;
     }
@@ -220,14 +270,16 @@ public class SyncFHIRRecord {
             return "";
         }
 
-        String organizationString = String.format("{\"reference\":\"Organization/%s\",\"type\":\"Organization\",\"identifier\":{\"use\":\"official\",\"value\":\"%s\",\"system\":\"https://hmis.health.go.ug/\"},\"display\":\"%s\"}", healthCenterIdentifier, healthCenterIdentifier, healthCenterName);
         JSONObject finalPayLoadJson = new JSONObject(payload);
-        JSONObject organization = new JSONObject(organizationString);
-
-        finalPayLoadJson.put(attributeName, organization);
+        addOrganizationToRecord(finalPayLoadJson, attributeName);
         return finalPayLoadJson.toString();
     }
 
+    private void addOrganizationToRecord(JSONObject jsonObject, String attributeName) {
+        String organizationString = String.format("{\"reference\":\"Organization/%s\",\"type\":\"Organization\",\"identifier\":{\"use\":\"official\",\"value\":\"%s\",\"system\":\"https://hmis.health.go.ug/\"},\"display\":\"%s\"}", healthCenterIdentifier, healthCenterIdentifier, healthCenterName);
+        jsonObject.put(attributeName, new JSONObject(organizationString));
+    }
+
     public String addServiceType(String payload, String attributeName) {
         if (payload.isEmpty()) {
             return "";
@@ -302,26 +354,28 @@ public class SyncFHIRRecord {
 
         Collection<SyncFhirResource> syncFhirResources = new ArrayList<>();
 
-
-        List<Integer> savedResourcesIds = new ArrayList<>();
-
         Date currentDate = new Date();
 
         identifyNewCases(syncFhirProfile, currentDate);
 
 
-        List<SyncFhirCase> syncFhirCases = ugandaEMRSyncService.getSyncFhirCasesByProfile(syncFhirProfile);
-
-        for (SyncFhirCase syncFhirCase : syncFhirCases) {
-            SyncFhirResource syncFhirResource = saveCaseResources(syncFhirProfile, syncFhirCase);
-            if (syncFhirResource != null) {
-                savedResourcesIds.add(syncFhirResource.getId());
+        int caseGenerationThreads = getCaseGenerationThreads();
+        int numberOfSavedResources;
+        if (caseGenerationThreads > 1) {
+            // the workers load their own cases, so only the ids are loaded here
+            List<Integer> caseIds = ugandaEMRSyncService.getChangedSyncFhirCaseIdsByProfile(syncFhirProfile);
+            if (caseIds.size() > caseResourceBatchSize) {
+                numberOfSavedResources = generateCaseResourcesInParallel(syncFhirProfile, caseIds, currentDate, caseGenerationThreads);
+            } else {
+                numberOfSavedResources = generateCaseResources(syncFhirProfile, getSyncFhirCases(caseIds), currentDate);
             }
+        } else {
+            numberOfSavedResources = generateCaseResources(syncFhirProfile, ugandaEMRSyncService.getChangedSyncFhirCasesByProfile(syncFhirProfile), currentDate);
         }
 
-        if (savedResourcesIds.size() > 0) {
+        if (numberOfSavedResources > 0) {
             SyncFhirProfileLog syncFhirProfileLog = new SyncFhirProfileLog();
-            syncFhirProfileLog.setNumberOfResources(savedResourcesIds.size());
+            syncFhirProfileLog.setNumberOfResources(numberOfSavedResources);
             syncFhirProfileLog.setProfile(syncFhirProfile);
             assert syncFhirProfile != null;
             syncFhirProfileLog.setResourceType(syncFhirProfile.getCaseBasedPrimaryResourceType());
@@ -334,119 +388,240 @@ public class SyncFHIRRecord {
 
 
     /**
-     * Create and Identify new cases based on a given Sync Fhir Profile
+     * Generates and saves the resources of the given cases one after the other
      *
-     * @param syncFhirProfile the profile for which the cases belong to
-     * @param currentDate     Date when this task is being executed,
+     * @param syncFhirProfile the profile the cases belong to
+     * @param syncFhirCases the cases to generate resources for
+     * @param currentDate the date the generation started
+     * @return the number of resources saved
      */
-    public void identifyNewCases(SyncFhirProfile syncFhirProfile, Date currentDate) {
-
-        List<org.openmrs.PatientProgram> patientProgramList;
-
-        if (syncFhirProfile.getCaseBasedPrimaryResourceType().equals("EpisodeOfCare")) {
-            Collection<Program> programs = new ArrayList<>();
-            Program program = Context.getProgramWorkflowService().getProgramByUuid(syncFhirProfile.getCaseBasedPrimaryResourceTypeId());
-            patientProgramList = Context.getProgramWorkflowService().getPatientPrograms(null, program, null, null, null, null, false);
-
-
-            for (org.openmrs.PatientProgram patientProgram : patientProgramList) {
-                org.openmrs.Patient patient = patientProgram.getPatient();
-                if (!patient.getVoided()) {
-                    String caseIdentifier = patientProgram.getUuid();
-                    saveSyncFHIRCase(syncFhirProfile, currentDate, patient, caseIdentifier);
+    private int generateCaseResources(SyncFhirProfile syncFhirProfile, List<SyncFhirCase> syncFhirCases, Date currentDate) {
+        int numberOfSavedResources = 0;
+        List<SyncFhirResource> caseResources = new ArrayList<>();
+        List<SyncFhirCase> casesOfResources = new ArrayList<>();
+        List<SyncFhirCase> casesWithoutResources = new ArrayList<>();
+        for (SyncFhirCase syncFhirCase : syncFhirCases) {
+            try {
+                SyncFhirResource syncFhirResource = createCaseResource(syncFhirProfile, syncFhirCase);
+                if (syncFhirResource != null) {
+                    caseResources.add(syncFhirResource);
+                    casesOfResources.add(syncFhirCase);
+                } else {
+                    // the changes of the case are not part of the profile, do not pick it up again until it changes
+                    syncFhirCase.setLastUpdateDate(currentDate);
+                    casesWithoutResources.add(syncFhirCase);
                 }
+            } catch (Exception e) {
+                log.error("Failed to generate resources for case " + syncFhirCase.getCaseIdentifier() + " of profile: " + syncFhirProfile.getName(), e);
             }
-        } else if (syncFhirProfile.getCaseBasedPrimaryResourceType().equals("Encounter")) {
-            List<org.openmrs.EncounterType> encounterTypes = new ArrayList<>();
-
-            encounterTypes.add(Context.getEncounterService().getEncounterTypeByUuid(syncFhirProfile.getCaseBasedPrimaryResourceTypeId()));
-
-            EncounterSearchCriteria encounterSearchCriteria = new EncounterSearchCriteria(null, null, null, null, null, null, encounterTypes, null, null, null, false);
-
-
-            for (Encounter encounter : Context.getEncounterService().getEncounters(encounterSearchCriteria)) {
-
-                PatientIdentifier patientIdentifier = getPatientIdentifierByType(encounter.getPatient(), syncFhirProfile.getPatientIdentifierType());
-
-                if (patientIdentifier != null) {
-                    saveSyncFHIRCase(syncFhirProfile, currentDate, encounter.getPatient(), patientIdentifier.getIdentifier());
-                }
-
+            if (caseResources.size() >= caseResourceBatchSize) {
+                numberOfSavedResources += saveCaseResources(syncFhirProfile, caseResources, casesOfResources).size();
             }
-        } else if (syncFhirProfile.getCaseBasedPrimaryResourceType().equals("ProgramWorkFlowState")) {
-            ProgramWorkflowService programWorkflowService = Context.getProgramWorkflowService();
+        }
+        numberOfSavedResources += saveCaseResources(syncFhirProfile, caseResources, casesOfResources).size();
 
-            ProgramWorkflowState programWorkflowState = programWorkflowService.getStateByUuid(syncFhirProfile.getCaseBasedPrimaryResourceTypeId());
+        if (!casesWithoutResources.isEmpty()) {
+            Context.getService(UgandaEMRSyncService.class).saveSyncFHIRCases(casesWithoutResources);
+        }
+        return numberOfSavedResources;
+    }
 
-            List<PatientProgram> patientPrograms = programWorkflowService.getPatientPrograms(null, programWorkflowState.getProgramWorkflow().getProgram(), null, null, null, null, false);
+    /**
+     * Splits the cases into chunks generated on a pool of worker threads. Each chunk is generated by its own
+     * SyncFHIRRecord in its own session, so no per case state is shared between threads, and the number of resources
+     * saved by all chunks is returned for a single profile log.
+     *
+     * @param syncFhirProfile the profile the cases belong to
+     * @param caseIds the ids of the cases to generate resources for
+     * @param currentDate the date the generation started
+     * @param threads the number of worker threads
+     * @return the number of resources saved
+     */
+    private int generateCaseResourcesInParallel(SyncFhirProfile syncFhirProfile, List<Integer> caseIds, Date currentDate, int threads) {
+        Integer profileId = syncFhirProfile.getId();
+        UserContext userContext = Context.getUserContext();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executorService);
+
+        int numberOfChunks = 0;
+        for (int i = 0; i < caseIds.size(); i += caseResourceBatchSize) {
+            List<Integer> chunk = new ArrayList<>(caseIds.subList(i, Math.min(i + caseResourceBatchSize, caseIds.size())));
+            SyncFHIRRecord worker = createCaseGenerationWorker();
+            worker.caseResourceBatchSize = caseResourceBatchSize;
+            completionService.submit(() -> worker.generateCaseResources(profileId, chunk, currentDate, userContext));
+            numberOfChunks++;
+        }
 
-            for (PatientProgram patientProgram : patientPrograms) {
-                PatientState patientState = patientProgram.getCurrentState(programWorkflowState.getProgramWorkflow());
-                if (patientState != null && patientState.getState().equals(programWorkflowState)) {
-                    org.openmrs.Patient patient = patientProgram.getPatient();
-                    String caseIdentifier = patientProgram.getUuid();
-                    saveSyncFHIRCase(syncFhirProfile, currentDate, patient, caseIdentifier);
+        int numberOfSavedResources = 0;
+        try {
+            for (int i = 0; i < numberOfChunks; i++) {
+                try {
+                    numberOfSavedResources += completionService.take().get();
+                } catch (ExecutionException e) {
+                    log.error("Failed to generate case resources for profile: " + syncFhirProfile.getName(), e);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Generation of case resources for profile: " + syncFhirProfile.getName() + " was interrupted", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+        return numberOfSavedResources;
+    }
 
-        } else if (syncFhirProfile.getCaseBasedPrimaryResourceType().equals("Order")) {
-            OrderService orderService = Context.getOrderService();
-            OrderType orderType = orderService.getOrderTypeByUuid(syncFhirProfile.getCaseBasedPrimaryResourceTypeId());
+    /**
+     * Generates the resources of a chunk of cases on a worker thread, in a session of its own
+     *
+     * @param profileId the id of the profile the cases belong to
+     * @param caseIds the ids of the cases
+     * @param currentDate the date the generation started
+     * @param userContext the user context of the task that started the generation
+     * @return the number of resources saved
+     */
+    private int generateCaseResources(Integer profileId, List<Integer> caseIds, Date currentDate, UserContext userContext) {
+        Context.openSession();
+        try {
+            Context.setUserContext(userContext);
+            UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+            SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileById(profileId);
+            this.profile = syncFhirProfile;
+            this.syncFhirProfile = syncFhirProfile;
+            return generateCaseResources(syncFhirProfile, getSyncFhirCases(caseIds), currentDate);
+        } finally {
+            Context.closeSession();
+        }
+    }
 
-            if (orderType != null) {
+    private List<SyncFhirCase> getSyncFhirCases(List<Integer> caseIds) {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        List<SyncFhirCase> syncFhirCases = new ArrayList<>();
+        for (Integer caseId : caseIds) {
+            SyncFhirCase syncFhirCase = ugandaEMRSyncService.getSyncFhirCaseById(caseId);
+            if (syncFhirCase != null) {
+                syncFhirCases.add(syncFhirCase);
+            }
+        }
+        return syncFhirCases;
+    }
 
-                SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-                String formattedDate = formatter.format(new Date());
+    /**
+     * Creates the record that generates a chunk of cases on a worker thread
+     *
+     * @return a new record
+     */
+    protected SyncFHIRRecord createCaseGenerationWorker() {
+        return new SyncFHIRRecord();
+    }
 
-                List list = Context.getAdministrationService().executeSQL("select Distinct patient_id from  orders where order_type_id = " + orderType.getId() + "  AND date_activated >= \"" + formattedDate + "\" and date_stopped is NULL ;", true);
-                List<Patient> patientList = new ArrayList<>();
+    /**
+     * Sets the number of cases whose resources are saved together, which is also the number of cases generated by each
+     * worker thread
+     *
+     * @param caseResourceBatchSize the number of cases
+     */
+    void setCaseResourceBatchSize(int caseResourceBatchSize) {
+        this.caseResourceBatchSize = Math.max(caseResourceBatchSize, 1);
+    }
 
-                if (list.size() > 0) {
-                    for (Object o : list) {
-                        patientList.add(Context.getPatientService().getPatient(Integer.parseUnsignedInt(((ArrayList) o).get(0).toString())));
-                    }
-                }
-                for (Patient patient : patientList) {
-                    String patientIdentifier = patient.getPatientId().toString();
-                    saveSyncFHIRCase(syncFhirProfile, currentDate, patient, patientIdentifier);
-                }
-            }
-        } else if (syncFhirProfile.getCaseBasedPrimaryResourceType().equals("PatientIdentifierType")) {
-            PatientService patientService = Context.getPatientService();
-            PatientIdentifierType patientIdentifierType = patientService.getPatientIdentifierTypeByUuid(syncFhirProfile.getCaseBasedPrimaryResourceTypeId());
+    private int getCaseGenerationThreads() {
+        return Math.max(SyncGlobalProperties.getIntegerGlobalProperty(GP_CASE_GENERATION_THREADS, 1), 1);
+    }
 
-            if (patientIdentifierType != null) {
+    /**
+     * Create and Identify new cases based on a given Sync Fhir Profile. The candidates of the profile's primary resource
+     * type are joined against the existing cases in a single query, so only candidates without a case are loaded and
+     * the new cases are saved in batches.
+     *
+     * @param syncFhirProfile the profile for which the cases belong to
+     * @param currentDate     Date when this task is being executed,
+     */
+    public void identifyNewCases(SyncFhirProfile syncFhirProfile, Date currentDate) {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 
-                SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-                String formattedDate = formatter.format(new Date());
-                List<Patient> patients = new ArrayList<>();
+        String candidateQuery = getCaseCandidateQuery(syncFhirProfile);
+        if (candidateQuery == null) {
+            return;
+        }
 
+        // cohort membership and program states that start later change without a save, so their candidates are not
+        // narrowed down to the patients with captured changes
+        Date changedSince = null;
+        String primaryResourceType = syncFhirProfile.getCaseBasedPrimaryResourceType();
+        if (!"CohortType".equals(primaryResourceType) && !"ProgramWorkFlowState".equals(primaryResourceType)) {
+            changedSince = DateUtils.addMinutes(getLastSyncDate(syncFhirProfile, primaryResourceType), -CASE_DETECTION_CHANGE_OVERLAP_MINUTES);
+        }
 
-                List list = Context.getAdministrationService().executeSQL("select patient_id from patient_identifier where identifier_type=" + patientIdentifierType.getId() + " and patient_id not  in (select patient from sync_fhir_case where profile=" + syncFhirProfile.getId() + ");", true);
+        PatientService patientService = Context.getPatientService();
+        List<SyncFhirCase> newCases = new ArrayList<>();
+        for (Object[] candidate : ugandaEMRSyncService.getNewSyncFhirCaseCandidates(syncFhirProfile, candidateQuery, changedSince)) {
+            SyncFhirCase syncFhirCase = new SyncFhirCase();
+            syncFhirCase.setCaseIdentifier((String) candidate[1]);
+            syncFhirCase.setPatient(patientService.getPatient((Integer) candidate[0]));
+            syncFhirCase.setProfile(syncFhirProfile);
+            syncFhirCase.setDateCreated(currentDate);
+            newCases.add(syncFhirCase);
+        }
 
-                List<Patient> patientList = new ArrayList<>();
+        if (!newCases.isEmpty()) {
+            ugandaEMRSyncService.saveSyncFHIRCases(newCases);
+        }
+    }
 
-                if (list.size() > 0) {
-                    for (Object o : list) {
-                        patientList.add(patientService.getPatient(Integer.parseUnsignedInt(((ArrayList) o).get(0).toString())));
-                    }
+    /**
+     * Builds the sql selecting the patient_id and case_identifier of every candidate case of the profile's primary
+     * resource type
+     *
+     * @param syncFhirProfile the profile for which the cases belong to
+     * @return the sql, null when the primary resource type or its id is not known
+     */
+    private String getCaseCandidateQuery(SyncFhirProfile syncFhirProfile) {
+        String primaryResourceTypeId = syncFhirProfile.getCaseBasedPrimaryResourceTypeId();
+
+        switch (syncFhirProfile.getCaseBasedPrimaryResourceType()) {
+            case "EpisodeOfCare":
+                Program program = Context.getProgramWorkflowService().getProgramByUuid(primaryResourceTypeId);
+                if (program == null) {
+                    return null;
                 }
-                for (Patient patient : patientList.stream().filter(patient -> !patient.getVoided()).collect(Collectors.toList())) {
-                    String patientIdentifier = patient.getPatientId().toString();
-                    saveSyncFHIRCase(syncFhirProfile, currentDate, patient, patientIdentifier);
+                return "select pp.patient_id as patient_id, pp.uuid as case_identifier from patient_program pp inner join patient p on p.patient_id = pp.patient_id "
+                        + "where pp.program_id = " + program.getProgramId() + " and pp.voided = 0 and p.voided = 0";
+            case "Encounter":
+                org.openmrs.EncounterType encounterType = Context.getEncounterService().getEncounterTypeByUuid(primaryResourceTypeId);
+                if (encounterType == null || syncFhirProfile.getPatientIdentifierType() == null) {
+                    return null;
                 }
-            }
-        } else if (syncFhirProfile.getCaseBasedPrimaryResourceType().equals("CohortType")) {
-            String uuid = syncFhirProfile.getCaseBasedPrimaryResourceTypeId();
-
-            List<Patient> patientList = getPatientByCohortType(uuid);
-            if (patientList.size() > 0) {
-                for (Patient patient : patientList) {
-                    String patientIdentifier = patient.getPatientId().toString();
-                    saveSyncFHIRCase(syncFhirProfile, currentDate, patient, patientIdentifier);
+                return "select e.patient_id as patient_id, (select pi.identifier from patient_identifier pi where pi.patient_id = e.patient_id and pi.identifier_type = "
+                        + syncFhirProfile.getPatientIdentifierType().getPatientIdentifierTypeId() + " and pi.voided = 0 order by pi.preferred desc, pi.patient_identifier_id limit 1) as case_identifier "
+                        + "from encounter e where e.encounter_type = " + encounterType.getEncounterTypeId() + " and e.voided = 0";
+            case "ProgramWorkFlowState":
+                ProgramWorkflowState programWorkflowState = Context.getProgramWorkflowService().getStateByUuid(primaryResourceTypeId);
+                if (programWorkflowState == null) {
+                    return null;
                 }
-            }
-
+                return "select pp.patient_id as patient_id, pp.uuid as case_identifier from patient_program pp inner join patient_state ps on ps.patient_program_id = pp.patient_program_id "
+                        + "where ps.state = " + programWorkflowState.getProgramWorkflowStateId() + " and ps.voided = 0 and (ps.start_date is null or ps.start_date <= now()) "
+                        + "and (ps.end_date is null or ps.end_date > now()) and pp.voided = 0";
+            case "Order":
+                OrderType orderType = Context.getOrderService().getOrderTypeByUuid(primaryResourceTypeId);
+                if (orderType == null) {
+                    return null;
+                }
+                String formattedDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+                return "select o.patient_id as patient_id, concat(o.patient_id, '') as case_identifier from orders o where o.order_type_id = " + orderType.getId()
+                        + " and o.date_activated >= '" + formattedDate + "' and o.date_stopped is null";
+            case "PatientIdentifierType":
+                PatientIdentifierType patientIdentifierType = Context.getPatientService().getPatientIdentifierTypeByUuid(primaryResourceTypeId);
+                if (patientIdentifierType == null) {
+                    return null;
+                }
+                return "select pi.patient_id as patient_id, concat(pi.patient_id, '') as case_identifier from patient_identifier pi inner join patient p on p.patient_id = pi.patient_id "
+                        + "where pi.identifier_type = " + patientIdentifierType.getId() + " and p.voided = 0";
+            case "CohortType":
+                return "select cm.patient_id as patient_id, concat(cm.patient_id, '') as case_identifier from cohort_member cm inner join cohort c on cm.cohort_id = c.cohort_id "
+                        + "inner join cohort_type ct on c.cohort_type_id = ct.cohort_type_id where ct.uuid = '" + primaryResourceTypeId.replace("'", "''") + "' and c.voided = 0 and cm.voided = 0";
+            default:
+                return null;
         }
     }
 
@@ -466,30 +641,58 @@ public class SyncFHIRRecord {
 
     }
 
-    public SyncFhirResource saveCaseResources(SyncFhirProfile syncFhirProfile, SyncFhirCase syncFhirCase) {
-        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+    /**
+     * Saves the resources generated for a batch of cases in one call and marks each case as updated at the time its
+     * resource was created. Both lists are cleared once saved.
+     *
+     * @param syncFhirProfile the profile the cases belong to
+     * @param caseResources the unsaved resources
+     * @param casesOfResources the case of each resource, in the same order
+     * @return the ids of the saved resources
+     */
+    private List<Integer> saveCaseResources(SyncFhirProfile syncFhirProfile, List<SyncFhirResource> caseResources, List<SyncFhirCase> casesOfResources) {
+        List<Integer> savedResourcesIds = new ArrayList<>();
+        if (caseResources.isEmpty()) {
+            return savedResourcesIds;
+        }
         try {
-            String resource = generateFHIRCaseResource(syncFhirProfile, syncFhirCase);
-
-            if (resource != null && !resource.isEmpty()) {
-                SyncFhirResource syncFHIRResource = new SyncFhirResource();
-                syncFHIRResource.setGeneratorProfile(syncFhirProfile);
-                syncFHIRResource.setResource(resource);
-                syncFHIRResource.setSynced(false);
-                syncFHIRResource.setPatient(syncFhirCase.getPatient());
-                ugandaEMRSyncService.saveFHIRResource(syncFHIRResource);
-                syncFhirCase.setLastUpdateDate(syncFHIRResource.getDateCreated());
-
-                return syncFHIRResource;
+            UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+            ugandaEMRSyncService.saveFHIRResources(caseResources);
+            for (int i = 0; i < caseResources.size(); i++) {
+                casesOfResources.get(i).setLastUpdateDate(caseResources.get(i).getDateCreated());
+                savedResourcesIds.add(caseResources.get(i).getId());
             }
+            ugandaEMRSyncService.saveSyncFHIRCases(casesOfResources);
         } catch (Exception e) {
-            log.error(e);
+            log.error("Failed to save case resources for profile: " + syncFhirProfile.getName(), e);
+        } finally {
+            caseResources.clear();
+            casesOfResources.clear();
+        }
+        return savedResourcesIds;
+    }
+
+    /**
+     * Generates the resource of a case
+     *
+     * @return the unsaved resource, null when there is nothing to send for the case
+     */
+    private SyncFhirResource createCaseResource(SyncFhirProfile syncFhirProfile, SyncFhirCase syncFhirCase) {
+        String resource = generateFHIRCaseResource(syncFhirProfile, syncFhirCase);
+
+        if (resource != null && !resource.isEmpty()) {
+            SyncFhirResource syncFHIRResource = new SyncFhirResource();
+            syncFHIRResource.setGeneratorProfile(syncFhirProfile);
+            syncFHIRResource.setResource(resource);
+            syncFHIRResource.setSynced(false);
+            syncFHIRResource.setPatient(syncFhirCase.getPatient());
+            return syncFHIRResource;
         }
         return null;
     }
 
 
-    private String generateFHIRCaseResource(SyncFhirProfile syncFhirProfile, SyncFhirCase syncFHIRCase) {
+    protected String generateFHIRCaseResource(SyncFhirProfile syncFhirProfile, SyncFhirCase syncFHIRCase) {
 
         Collection<String> resources = new ArrayList<>();
         List<org.openmrs.Encounter> encounters = new ArrayList<>();
@@ -600,7 +803,7 @@ public class SyncFHIRRecord {
 
     public Collection<String> generateFHIRResourceBundles(SyncFhirProfile syncFhirProfile) {
         Collection<String> stringCollection = new ArrayList<>();
-        List<org.openmrs.Encounter> encounters = new ArrayList<>();
+        List<Integer> encounterIds = new ArrayList<>();
 
         this.syncFhirProfile = syncFhirProfile;
 
@@ -611,45 +814,42 @@ public class SyncFHIRRecord {
             switch (resource) {
                 case "Encounter":
                     List<org.openmrs.EncounterType> encounterTypes = new ArrayList<>();
-                    DateRangeParam encounterLastUpdated = new DateRangeParam().setUpperBoundInclusive(currentDate).setLowerBoundInclusive(getLastSyncDate(syncFhirProfile, "Encounter"));
                     JSONArray jsonArray = getSearchParametersInJsonObject("Encounter", syncFhirProfile.getResourceSearchParameter()).getJSONArray("type");
 
                     for (Object jsonObject : jsonArray) {
                         encounterTypes.add(Context.getEncounterService().getEncounterTypeByUuid(jsonObject.toString()));
                     }
 
-                    EncounterSearchCriteria encounterSearchCriteria = new EncounterSearchCriteria(null, null, encounterLastUpdated.getLowerBoundAsInstant(), encounterLastUpdated.getUpperBoundAsInstant(), null, null, encounterTypes, null, null, null, false);
-                    encounters = Context.getEncounterService().getEncounters(encounterSearchCriteria);
-
-                    saveSyncFHIRResources(groupInBundles("Encounter", getEncounterResourceBundle(encounters), syncFhirProfile.getNumberOfResourcesInBundle(), null), resource, syncFhirProfile, currentDate);
+                    encounterIds = saveEncounterResourceBundlesFromCursor(syncFhirProfile, encounterTypes, currentDate);
 
                     break;
                 case "Observation":
-                    if (encounters.size() > 0) {
-                        saveSyncFHIRResources(groupInBundles("Observation", getObservationResourceBundle(syncFhirProfile, encounters, getPersonsFromEncounterList(encounters)), syncFhirProfile.getNumberOfResourcesInBundle(), null), "Observation", syncFhirProfile, currentDate);
+                    if (encounterIds.size() > 0) {
+                        List<org.openmrs.Encounter> observationEncounters = getEncounters(encounterIds);
+                        saveSyncFHIRResourceBundles("Observation", getObservationResourceBundle(syncFhirProfile, observationEncounters, getPersonsFromEncounterList(observationEncounters)), null, syncFhirProfile, currentDate);
                     } else {
-                        saveSyncFHIRResources(groupInBundles("Observation", getObservationResourceBundle(syncFhirProfile, null, null), syncFhirProfile.getNumberOfResourcesInBundle(), null), "Observation", syncFhirProfile, currentDate);
+                        saveSyncFHIRResourceBundles("Observation", getObservationResourceBundle(syncFhirProfile, null, null), null, syncFhirProfile, currentDate);
                     }
                     break;
                 case "Patient":
-                    if (encounters.size() > 0) {
-                        saveSyncFHIRResources(groupInBundles("Patient", getPatientResourceBundle(syncFhirProfile, getPatientIdentifierFromEncounter(encounters, syncFhirProfile.getPatientIdentifierType()), null), syncFhirProfile.getNumberOfResourcesInBundle(), syncFhirProfile.getPatientIdentifierType().getName()), "Patient", syncFhirProfile, currentDate);
+                    if (encounterIds.size() > 0) {
+                        saveSyncFHIRResourceBundles("Patient", getPatientResourceBundle(syncFhirProfile, getPatientIdentifierFromEncounter(getEncounters(encounterIds), syncFhirProfile.getPatientIdentifierType()), null), syncFhirProfile.getPatientIdentifierType().getName(), syncFhirProfile, currentDate);
                     } else {
-                        saveSyncFHIRResources(groupInBundles("Patient", getPatientResourceBundle(syncFhirProfile, null, null), syncFhirProfile.getNumberOfResourcesInBundle(), syncFhirProfile.getPatientIdentifierType().getName()), "Patient", syncFhirProfile, currentDate);
+                        saveSyncFHIRResourceBundles("Patient", getPatientResourceBundle(syncFhirProfile, null, null), syncFhirProfile.getPatientIdentifierType().getName(), syncFhirProfile, currentDate);
                     }
                     break;
                 case "Practitioner":
-                    if (encounters.size() > 0) {
-                        saveSyncFHIRResources(groupInBundles("Practitioner", getPractitionerResourceBundle(syncFhirProfile, encounters, null), syncFhirProfile.getNumberOfResourcesInBundle(), null), "Practitioner", syncFhirProfile, currentDate);
+                    if (encounterIds.size() > 0) {
+                        saveSyncFHIRResourceBundles("Practitioner", getPractitionerResourceBundle(syncFhirProfile, getEncounters(encounterIds), null), null, syncFhirProfile, currentDate);
                     } else {
-                        saveSyncFHIRResources(groupInBundles("Practitioner", getPractitionerResourceBundle(syncFhirProfile, null, null), syncFhirProfile.getNumberOfResourcesInBundle(), null), "Practitioner", syncFhirProfile, currentDate);
+                        saveSyncFHIRResourceBundles("Practitioner", getPractitionerResourceBundle(syncFhirProfile, null, null), null, syncFhirProfile, currentDate);
                     }
                     break;
                 case "Person":
-                    if (encounters.size() > 0) {
-                        saveSyncFHIRResources(groupInBundles("Person", getPersonResourceBundle(syncFhirProfile, getPersonsFromEncounterList(encounters), null), syncFhirProfile.getNumberOfResourcesInBundle(), null), "Person", syncFhirProfile, currentDate);
+                    if (encounterIds.size() > 0) {
+                        saveSyncFHIRResourceBundles("Person", getPersonResourceBundle(syncFhirProfile, getPersonsFromEncounterList(getEncounters(encounterIds)), null), null, syncFhirProfile, currentDate);
                     } else {
-                        saveSyncFHIRResources(groupInBundles("Person", getPersonResourceBundle(syncFhirProfile, null, null), syncFhirProfile.getNumberOfResourcesInBundle(), null), "Person", syncFhirProfile, currentDate);
+                        saveSyncFHIRResourceBundles("Person", getPersonResourceBundle(syncFhirProfile, null, null), null, syncFhirProfile, currentDate);
                     }
                     break;
             }
@@ -659,31 +859,175 @@ public class SyncFHIRRecord {
     }
 
     public List<SyncFhirResource> saveSyncFHIRResources(@NotNull Collection<String> resources, @NotNull String resourceType, @NotNull SyncFhirProfile syncFhirProfile, Date currentDate) {
-        List<SyncFhirResource> syncFhirResources = new ArrayList<>();
-        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        List<SyncFhirResource> syncFhirResources = saveResourceBundles(resources, syncFhirProfile);
+        saveSyncFhirProfileLog(resourceType, syncFhirResources.size(), syncFhirProfile, currentDate);
+        return syncFhirResources;
+    }
 
-        for (String resource : resources) {
+    /**
+     * Saves bundles as unsynced resources of a profile in one call
+     *
+     * @param bundles the encoded bundles
+     * @param syncFhirProfile the profile the bundles were generated for
+     * @return the saved resources, no longer held in the session
+     */
+    private List<SyncFhirResource> saveResourceBundles(Collection<String> bundles, SyncFhirProfile syncFhirProfile) {
+        List<SyncFhirResource> syncFhirResources = new ArrayList<>();
+        for (String bundle : bundles) {
             SyncFhirResource syncFHIRResource = new SyncFhirResource();
             syncFHIRResource.setGeneratorProfile(syncFhirProfile);
-            syncFHIRResource.setResource(resource);
+            syncFHIRResource.setResource(bundle);
             syncFHIRResource.setSynced(false);
-            syncFhirResources.add(ugandaEMRSyncService.saveFHIRResource(syncFHIRResource));
+            syncFhirResources.add(syncFHIRResource);
         }
 
+        if (!syncFhirResources.isEmpty()) {
+            syncFhirResources = Context.getService(UgandaEMRSyncService.class).saveFHIRResources(syncFhirResources);
+        }
+        return syncFhirResources;
+    }
 
-        if (syncFhirResources.size() > 0) {
+    private void saveSyncFhirProfileLog(String resourceType, int numberOfResources, SyncFhirProfile syncFhirProfile, Date currentDate) {
+        if (numberOfResources > 0) {
             SyncFhirProfileLog syncFhirProfileLog = new SyncFhirProfileLog();
-            syncFhirProfileLog.setNumberOfResources(syncFhirResources.size());
+            syncFhirProfileLog.setNumberOfResources(numberOfResources);
             syncFhirProfileLog.setProfile(syncFhirProfile);
             syncFhirProfileLog.setResourceType(resourceType);
             syncFhirProfileLog.setLastGenerationDate(currentDate);
-            ugandaEMRSyncService.saveSyncFhirProfileLog(syncFhirProfileLog);
+            Context.getService(UgandaEMRSyncService.class).saveSyncFhirProfileLog(syncFhirProfileLog);
         }
+    }
 
 
-        return syncFhirResources;
+    /**
+     * Encodes the resources one at a time and saves the bundles {@link #BUNDLE_SAVE_BATCH_SIZE} at a time as they fill
+     * up, so that neither all the resources nor all the bundles are held in memory at once
+     *
+     * @param resourceType the type of the resources
+     * @param iBaseResources the resources, loaded page by page
+     * @param identifierTypeName the name of the patient identifier type of Patient resources
+     * @param syncFhirProfile the profile the bundles are generated for
+     * @param currentDate the date the generation started
+     * @return the number of bundles saved
+     */
+    private int saveSyncFHIRResourceBundles(String resourceType, Iterable<IBaseResource> iBaseResources, String identifierTypeName, SyncFhirProfile syncFhirProfile, Date currentDate) {
+        List<String> bundles = new ArrayList<>();
+        FhirResourceBundleWriter fhirResourceBundleWriter = new FhirResourceBundleWriter(syncFhirProfile.getNumberOfResourcesInBundle(), bundle -> {
+            bundles.add(bundle);
+            if (bundles.size() >= BUNDLE_SAVE_BATCH_SIZE) {
+                saveResourceBundles(bundles, syncFhirProfile);
+                bundles.clear();
+            }
+        });
+
+        for (IBaseResource iBaseResource : iBaseResources) {
+            fhirResourceBundleWriter.write(encodeResourceToString(resourceType, identifierTypeName, iBaseResource));
+        }
+        fhirResourceBundleWriter.close();
+        saveResourceBundles(bundles, syncFhirProfile);
+
+        saveSyncFhirProfileLog(resourceType, fhirResourceBundleWriter.getNumberOfBundles(), syncFhirProfile, currentDate);
+        return fhirResourceBundleWriter.getNumberOfBundles();
+    }
+
+    /**
+     * Generates Encounter bundles for the encounters changed after the profile's encounter cursor. Encounters are read
+     * a page at a time ordered by the date they were last changed and their id, and the bundles of each page are saved
+     * in the same transaction as the cursor moved to the last encounter of the page. A run that stops part way
+     * continues after the last saved page, and each encounter change is generated once. Encounters changed in the last
+     * {@link #GENERATION_CURSOR_SETTLE_SECONDS} seconds are left for the next run, so that changes still being committed
+     * are not skipped.
+     *
+     * @param syncFhirProfile the profile the bundles are generated for
+     * @param encounterTypes the types of encounters to generate, all types when empty
+     * @param currentDate the date the generation started
+     * @return the ids of the encounters generated, the encounters themselves are evicted once their page is saved so
+     * that neither the session nor the heap grows with the backlog
+     */
+    private List<Integer> saveEncounterResourceBundlesFromCursor(SyncFhirProfile syncFhirProfile, List<org.openmrs.EncounterType> encounterTypes, Date currentDate) {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+
+        SyncFhirGenerationCursor syncFhirGenerationCursor = ugandaEMRSyncService.getSyncFhirGenerationCursor(syncFhirProfile, "Encounter");
+        if (syncFhirGenerationCursor == null) {
+            syncFhirGenerationCursor = new SyncFhirGenerationCursor();
+            syncFhirGenerationCursor.setProfile(syncFhirProfile);
+            syncFhirGenerationCursor.setResourceType("Encounter");
+            syncFhirGenerationCursor.setLastDateChanged(getLastSyncDate(syncFhirProfile, "Encounter"));
+            syncFhirGenerationCursor.setLastId(0);
+        }
+
+        // pages hold whole bundles, so that every bundle but the last is full
+        int numberOfResourcesInBundle = syncFhirProfile.getNumberOfResourcesInBundle() == null ? RESOURCE_PAGE_SIZE : Math.max(syncFhirProfile.getNumberOfResourcesInBundle(), 1);
+        int pageSize = numberOfResourcesInBundle * Math.max(RESOURCE_PAGE_SIZE / numberOfResourcesInBundle, 1);
+        Date changedUntil = DateUtils.addSeconds(currentDate, -GENERATION_CURSOR_SETTLE_SECONDS);
+
+        List<Integer> encounterIds = new ArrayList<>();
+        int numberOfBundles = 0;
+        List<Object[]> page;
+        do {
+            page = ugandaEMRSyncService.getEncountersAfterCursor(syncFhirGenerationCursor, changedUntil, encounterTypes, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            List<org.openmrs.Encounter> pageEncounters = new ArrayList<>();
+            for (Object[] encounterIdAndLastChanged : page) {
+                org.openmrs.Encounter encounter = Context.getEncounterService().getEncounter((Integer) encounterIdAndLastChanged[0]);
+                if (encounter != null) {
+                    pageEncounters.add(encounter);
+                }
+            }
+
+            List<SyncFhirResource> bundles = new ArrayList<>();
+            FhirResourceBundleWriter fhirResourceBundleWriter = new FhirResourceBundleWriter(numberOfResourcesInBundle, bundle -> {
+                SyncFhirResource syncFHIRResource = new SyncFhirResource();
+                syncFHIRResource.setGeneratorProfile(syncFhirProfile);
+                syncFHIRResource.setResource(bundle);
+                syncFHIRResource.setSynced(false);
+                bundles.add(syncFHIRResource);
+            });
+            for (IBaseResource iBaseResource : getEncounterResourceBundle(pageEncounters)) {
+                fhirResourceBundleWriter.write(encodeResourceToString("Encounter", null, iBaseResource));
+            }
+            fhirResourceBundleWriter.close();
+
+            Object[] lastEncounter = page.get(page.size() - 1);
+            syncFhirGenerationCursor.setLastId((Integer) lastEncounter[0]);
+            syncFhirGenerationCursor.setLastDateChanged((Date) lastEncounter[1]);
+            ugandaEMRSyncService.saveFHIRResourcesAndCursor(bundles, syncFhirGenerationCursor);
+            for (SyncFhirResource bundle : bundles) {
+                Context.evictFromSession(bundle);
+            }
+            for (org.openmrs.Encounter encounter : pageEncounters) {
+                encounterIds.add(encounter.getEncounterId());
+                Context.evictFromSession(encounter);
+            }
+
+            numberOfBundles += bundles.size();
+        } while (page.size() == pageSize);
+
+        if (numberOfBundles > 0) {
+            SyncFhirProfileLog syncFhirProfileLog = new SyncFhirProfileLog();
+            syncFhirProfileLog.setNumberOfResources(numberOfBundles);
+            syncFhirProfileLog.setProfile(syncFhirProfile);
+            syncFhirProfileLog.setResourceType("Encounter");
+            syncFhirProfileLog.setLastGenerationDate(currentDate);
+            ugandaEMRSyncService.saveSyncFhirProfileLog(syncFhirProfileLog);
+        }
+
+        return encounterIds;
     }
 
+    private List<org.openmrs.Encounter> getEncounters(List<Integer> encounterIds) {
+        List<org.openmrs.Encounter> encounters = new ArrayList<>();
+        for (Integer encounterId : encounterIds) {
+            org.openmrs.Encounter encounter = Context.getEncounterService().getEncounter(encounterId);
+            if (encounter != null) {
+                encounters.add(encounter);
+            }
+        }
+        return encounters;
+    }
 
     private List<org.openmrs.PatientIdentifier> getPatientIdentifierFromEncounter(List<org.openmrs.Encounter> encounters, org.openmrs.PatientIdentifierType patientIdentifierType) {
         List<org.openmrs.PatientIdentifier> patientIdentifiers = new ArrayList<>();
@@ -704,32 +1048,7 @@ public class SyncFHIRRecord {
         return personList;
     }
 
-    private Collection<String> groupInBundles(String resourceType, Collection<IBaseResource> iBaseResources, Integer interval, String identifierTypeName) {
-        List<String> resourceBundles = new ArrayList<>();
-        List<String> currentBundleList = new ArrayList<>();
-
-        for (IBaseResource iBaseResource : iBaseResources) {
-            String jsonString = encodeResourceToString(resourceType, identifierTypeName, iBaseResource);
-
-            if (currentBundleList.size() < interval) {
-                currentBundleList.add(jsonString);
-            } else {
-                if (!currentBundleList.toString().equals("")) {
-                    resourceBundles.add(String.format(FHIR_BUNDLE_RESOURCE_TRANSACTION, currentBundleList.toString()));
-                }
-                currentBundleList = new ArrayList<>();
-                currentBundleList.add(jsonString);
-            }
-        }
-
-        if (iBaseResources.size() > 0 && currentBundleList.size() < interval) {
-            resourceBundles.add(String.format(FHIR_BUNDLE_RESOURCE_TRANSACTION, currentBundleList.toString()));
-        }
-
-        return resourceBundles;
-    }
-
-    private Collection<String> groupInCaseBundle(String resourceType, Collection<IBaseResource> iBaseResources, String identifierTypeName) {
+    private Collection<String> groupInCaseBundle(String resourceType, Iterable<IBaseResource> iBaseResources, String identifierTypeName) {
 
         Collection<String> resourceBundles = new ArrayList<>();
 
@@ -745,31 +1064,16 @@ public class SyncFHIRRecord {
     }
 
     private String encodeResourceToString(String resourceType, String identifierTypeName, IBaseResource iBaseResource) {
-        IParser iParser = FhirContext.forR4().newJsonParser();
-
         String jsonString = "";
         try {
-            jsonString = iParser.encodeResourceToString(iBaseResource);
+            jsonString = FhirSerializer.getInstance().encodeResourceToString(iBaseResource);
 
             if (resourceType.equals("Patient") || resourceType.equals("Practitioner")) {
-
-                if (resourceType.equals("Patient") && profile.getKeepProfileIdentifierOnly()) {
-                    try {
-                        jsonString = removeIdentifierExceptProfileId(jsonString, "identifier");
-                    } catch (Exception exception) {
-                        log.error(exception);
-                    }
-                }
-                jsonString = addCodingToIdentifier(jsonString, "identifier");
-                jsonString = addCodingToSystemToPrimaryIdentifier(jsonString, "identifier");
-                jsonString = addAttributeToObject(jsonString, "telecom", "system", "phone");
-                jsonString = addOrganizationToRecord(jsonString, "managingOrganization");
-                jsonString = addUseOfficialToName(jsonString, "name");
-                jsonString = removeAttribute(jsonString, "contained");
-                jsonString = jsonString.replace("address5", "village").replace("address4", "parish").replace("address3", "subcounty").replace("state", "city");
-            }
-
-            if (resourceType.equals("Patient") || resourceType.equals("Practitioner") || resourceType.equals("Person")) {
+                JSONObject jsonObject = getPersonTransformPipeline(resourceType).transform(new JSONObject(jsonString));
+                String resourceIdentifier = jsonObject.get("id").toString();
+                jsonString = jsonObject.toString();
+                jsonString = wrapResourceInPUTRequest(jsonString, resourceType, resourceIdentifier);
+            } else if (resourceType.equals("Person")) {
                 JSONObject jsonObject = new JSONObject(jsonString);
                 String resourceIdentifier = "";
                 resourceIdentifier = jsonObject.get("id").toString();
@@ -793,88 +1097,119 @@ public class SyncFHIRRecord {
         return jsonString;
     }
 
-    private String addUseOfficialToName(String payload, String attributeName) {
-        JSONObject jsonObject = new JSONObject(payload);
-        int objectCount = 0;
-        for (Object jsonObject1 : jsonObject.getJSONArray(attributeName)) {
-            jsonObject.getJSONArray(attributeName).getJSONObject(objectCount).put("use", "official");
-            objectCount++;
+    /**
+     * Gets the steps applied to an encoded Patient or Practitioner before it is wrapped in a bundle entry. The steps
+     * read the current profile when they run, so the pipeline is built once and reused for every resource.
+     *
+     * @param resourceType Patient or Practitioner
+     * @return the pipeline of the resource type
+     */
+    private FhirResourceTransformPipeline getPersonTransformPipeline(String resourceType) {
+        return personTransformPipelines.computeIfAbsent(resourceType, type -> {
+            FhirResourceTransformPipeline pipeline = new FhirResourceTransformPipeline();
+            if (type.equals("Patient")) {
+                pipeline.addStep(resource -> {
+                    if (profile.getKeepProfileIdentifierOnly()) {
+                        try {
+                            removeIdentifierExceptProfileId(resource, "identifier");
+                        } catch (Exception exception) {
+                            log.error(exception);
+                        }
+                    }
+                });
+            }
+            return pipeline
+                    .addStep(resource -> addCodingToIdentifier(resource, "identifier"))
+                    .addStep(resource -> addCodingToSystemToPrimaryIdentifier(resource, "identifier"))
+                    .addStep(resource -> addAttributeToObject(resource, "telecom", "system", "phone"))
+                    .addStep(resource -> addOrganizationToRecord(resource, "managingOrganization"))
+                    .addStep(resource -> addUseOfficialToName(resource, "name"))
+                    .addStep(resource -> resource.remove("contained"))
+                    .addStep(resource -> getAddressKeyMapper().transform(resource));
+        });
+    }
+
+    private AddressKeyMapper getAddressKeyMapper() {
+        String addressKeyMapping = profile != null ? profile.getAddressKeyMapping() : null;
+        if (addressKeyMapper == null || !Objects.equals(addressKeyMapping, this.addressKeyMapping)) {
+            addressKeyMapper = AddressKeyMapper.fromMapping(addressKeyMapping);
+            this.addressKeyMapping = addressKeyMapping;
         }
-        return jsonObject.toString();
+        return addressKeyMapper;
     }
 
-    private String removeIdentifierExceptProfileId(String payload, String attributeName) {
-        JSONObject jsonObject = new JSONObject(payload);
-        int objectCount = 0;
+    private void addUseOfficialToName(JSONObject jsonObject, String attributeName) {
+        JSONArray names = jsonObject.getJSONArray(attributeName);
+        for (int i = 0; i < names.length(); i++) {
+            names.getJSONObject(i).put("use", "official");
+        }
+    }
+
+    private void removeIdentifierExceptProfileId(JSONObject jsonObject, String attributeName) {
         for (int i = 0; i < jsonObject.getJSONArray(attributeName).length(); i++) {
             if (!jsonObject.getJSONArray("identifier").getJSONObject(i).getJSONObject("type").getJSONArray("coding").getJSONObject(0).get("code").toString().equals(profile.getPatientIdentifierType().getUuid())) {
                 jsonObject.getJSONArray("identifier").remove(i);
             }
         }
-        return jsonObject.toString();
     }
 
-    private String removeAttribute(String payload, String attributeName) {
+    public String addCodingToIdentifier(String payload, String attributeName) {
         JSONObject jsonObject = new JSONObject(payload);
-        if (jsonObject.has(attributeName)) {
-            jsonObject.remove(attributeName);
-        }
+        addCodingToIdentifier(jsonObject, attributeName);
         return jsonObject.toString();
     }
 
-    public String addCodingToIdentifier(String payload, String attributeName) {
-        JSONObject jsonObject = new JSONObject(payload);
-        int identifierCount = 0;
+    private void addCodingToIdentifier(JSONObject jsonObject, String attributeName) {
         if (jsonObject.has(attributeName)) {
-            for (Object jsonObject1 : jsonObject.getJSONArray(attributeName)) {
-                JSONObject jsonObject2 = new JSONObject(jsonObject1.toString());
-                PatientIdentifier patientIdentifier = Context.getPatientService().getPatientIdentifierByUuid(jsonObject2.get("id").toString());
+            JSONArray identifiers = jsonObject.getJSONArray(attributeName);
+            for (int i = 0; i < identifiers.length(); i++) {
+                JSONObject identifier = identifiers.getJSONObject(i);
+                PatientIdentifier patientIdentifier = Context.getPatientService().getPatientIdentifierByUuid(identifier.get("id").toString());
                 if (patientIdentifier.getPatient().getBirthdateEstimated()) {
                     jsonObject.put("birthDate", patientIdentifier.getPatient().getBirthdate().toString().replace(" 00:00:00.0", ""));
                 }
-                jsonObject.getJSONArray(attributeName).getJSONObject(identifierCount).getJSONObject("type").put("coding", new JSONArray().put(new JSONObject().put("system", "UgandaEMR").put("code", patientIdentifier.getIdentifierType().getUuid())));
-                identifierCount++;
+                identifier.getJSONObject("type").put("coding", new JSONArray().put(new JSONObject().put("system", "UgandaEMR").put("code", patientIdentifier.getIdentifierType().getUuid())));
             }
         }
-        return jsonObject.toString();
     }
 
-    private String addAttributeToObject(String payload, String targetObject, String attributeName, String attributeValue) {
-        JSONObject jsonObject = new JSONObject(payload);
+    private void addAttributeToObject(JSONObject jsonObject, String targetObject, String attributeName, String attributeValue) {
         if (jsonObject.has(targetObject) && jsonObject.getJSONArray(targetObject).length() > 0) {
             for (int i = 0; i < jsonObject.getJSONArray(targetObject).length(); i++) {
                 jsonObject.getJSONArray(targetObject).getJSONObject(i).put(attributeName, attributeValue);
                 i++;
             }
         }
-        return jsonObject.toString();
     }
 
     public String addCodingToSystemToPrimaryIdentifier(String payload, String attributeName) {
         JSONObject jsonObject = new JSONObject(payload);
-        int identifierCount = 0;
+        addCodingToSystemToPrimaryIdentifier(jsonObject, attributeName);
+        return jsonObject.toString();
+    }
+
+    private void addCodingToSystemToPrimaryIdentifier(JSONObject jsonObject, String attributeName) {
         if (jsonObject.has(attributeName)) {
-            for (Object jsonObject1 : jsonObject.getJSONArray(attributeName)) {
-                JSONObject jsonObject2 = new JSONObject(jsonObject1.toString());
-                PatientIdentifier patientIdentifier = Context.getPatientService().getPatientIdentifierByUuid(jsonObject2.get("id").toString());
+            JSONArray identifiers = jsonObject.getJSONArray(attributeName);
+            for (int i = 0; i < identifiers.length(); i++) {
+                JSONObject identifier = identifiers.getJSONObject(i);
+                PatientIdentifier patientIdentifier = Context.getPatientService().getPatientIdentifierByUuid(identifier.get("id").toString());
                 switch (patientIdentifier.getIdentifierType().getUuid()) {
                     case SyncConstant.OPENMRS_IDENTIFIER_TYPE_UUID:
-                        jsonObject.getJSONArray(attributeName).getJSONObject(identifierCount).put("system", getIdentifierSystemURL(OPENMRS_IDENTIFIER_SYSTEM_URL_GP));
+                        identifier.put("system", getIdentifierSystemURL(OPENMRS_IDENTIFIER_SYSTEM_URL_GP));
                         break;
                     case SyncConstant.NATIONAL_ID_IDENTIFIER_TYPE_UUID:
-                        jsonObject.getJSONArray(attributeName).getJSONObject(identifierCount).put("system", getIdentifierSystemURL(NATIONAL_ID_IDENTIFIER_SYSTEM_URL_GP));
+                        identifier.put("system", getIdentifierSystemURL(NATIONAL_ID_IDENTIFIER_SYSTEM_URL_GP));
                         break;
                     case SyncConstant.PASSPORT_IDENTIFIER_TYPE_UUID:
-                        jsonObject.getJSONArray(attributeName).getJSONObject(identifierCount).put("system", getIdentifierSystemURL(PASSPORT_IDENTIFIER_SYSTEM_URL_GP));
+                        identifier.put("system", getIdentifierSystemURL(PASSPORT_IDENTIFIER_SYSTEM_URL_GP));
                         break;
                     case SyncConstant.NHPI_IDENTIFIER_TYPE_TYPE_UUID:
-                        jsonObject.getJSONArray(attributeName).getJSONObject(identifierCount).put("system", getIdentifierSystemURL(NHPI_IDENTIFIER_SYSTEM_URL_GP));
+                        identifier.put("system", getIdentifierSystemURL(NHPI_IDENTIFIER_SYSTEM_URL_GP));
                         break;
                 }
-                identifierCount++;
             }
         }
-        return jsonObject.toString();
     }
 
     private String getIdentifierSystemURL(String propertyName) {
@@ -962,7 +1297,7 @@ public class SyncFHIRRecord {
     }
 
 
-    private Collection<IBaseResource> getPatientResourceBundle(SyncFhirProfile syncFhirProfile, List<PatientIdentifier> patientIdentifiers, SyncFhirCase syncFhirCase) {
+    private Iterable<IBaseResource> getPatientResourceBundle(SyncFhirProfile syncFhirProfile, List<PatientIdentifier> patientIdentifiers, SyncFhirCase syncFhirCase) {
 
         DateRangeParam lastUpdated = new DateRangeParam();
 
@@ -988,10 +1323,10 @@ public class SyncFHIRRecord {
         PatientSearchParams patientSearchParams = new PatientSearchParams(null, null, null, patientReference, null, null,
                 null, null, null, null, null, null, null, lastUpdated, null, null);
 
-        return getApplicationContext().getBean(FhirPatientService.class).searchForPatients(patientSearchParams).getResources(0, Integer.MAX_VALUE);
+        return FhirResourcePager.fromBundleProvider(getApplicationContext().getBean(FhirPatientService.class).searchForPatients(patientSearchParams), RESOURCE_PAGE_SIZE);
     }
 
-    private Collection<IBaseResource> getPractitionerResourceBundle(SyncFhirProfile syncFhirProfile, List<org.openmrs.Encounter> encounterList, List<Order> orders) {
+    private Iterable<IBaseResource> getPractitionerResourceBundle(SyncFhirProfile syncFhirProfile, List<org.openmrs.Encounter> encounterList, List<Order> orders) {
 
         Collection<String> providerUUIDs = new ArrayList<>();
         for (org.openmrs.Encounter encounter : encounterList) {
@@ -1004,22 +1339,20 @@ public class SyncFHIRRecord {
             providerUUIDs.add(order.getOrderer().getUuid());
         }
 
-        Collection<IBaseResource> iBaseResources = new ArrayList<>();
+        FhirPractitionerService fhirPractitionerService = getApplicationContext().getBean(FhirPractitionerService.class);
         if (providerUUIDs.isEmpty() && !syncFhirProfile.getIsCaseBasedProfile()) {
             DateRangeParam lastUpdated = new DateRangeParam().setUpperBoundInclusive(new Date()).setLowerBoundInclusive(getLastSyncDate(syncFhirProfile, "Practitioner"));
 
-            iBaseResources = getApplicationContext().getBean(FhirPractitionerService.class).searchForPractitioners(null, null, null, null, null,
-                    null, null, null, null, lastUpdated, null).getResources(0, Integer.MAX_VALUE);
-        } else {
-            iBaseResources.addAll(getApplicationContext().getBean(FhirPractitionerService.class).get(providerUUIDs));
+            return FhirResourcePager.fromBundleProvider(fhirPractitionerService.searchForPractitioners(null, null, null, null, null,
+                    null, null, null, null, lastUpdated, null), RESOURCE_PAGE_SIZE);
         }
 
 
-        return iBaseResources;
+        return FhirResourcePager.fromUuids(providerUUIDs, RESOURCE_PAGE_SIZE, fhirPractitionerService::get);
 
     }
 
-    private Collection<IBaseResource> getPersonResourceBundle(SyncFhirProfile syncFhirProfile, List<org.openmrs.Person> personList, SyncFhirCase syncFhirCase) {
+    private Iterable<IBaseResource> getPersonResourceBundle(SyncFhirProfile syncFhirProfile, List<org.openmrs.Person> personList, SyncFhirCase syncFhirCase) {
 
 
         DateRangeParam lastUpdated = new DateRangeParam();
@@ -1035,42 +1368,35 @@ public class SyncFHIRRecord {
 
         }
 
-        Collection<IBaseResource> iBaseResources = new ArrayList<>();
+        FhirPersonService fhirPersonService = getApplicationContext().getBean(FhirPersonService.class);
 
         if (personList.size() > 0) {
             Collection<String> personListUUID = personList.stream().map(org.openmrs.Person::getUuid).collect(Collectors.toCollection(ArrayList::new));
-            iBaseResources.addAll(getApplicationContext().getBean(FhirPersonService.class).get(personListUUID));
+            return FhirResourcePager.fromUuids(personListUUID, RESOURCE_PAGE_SIZE, fhirPersonService::get);
 
         } else if (!syncFhirProfile.getIsCaseBasedProfile()) {
-            iBaseResources = getApplicationContext().getBean(FhirPersonService.class).searchForPeople(null, null, null, null,
-                    null, null, null, null, lastUpdated, null, null).getResources(0, Integer.MAX_VALUE);
+            return FhirResourcePager.fromBundleProvider(fhirPersonService.searchForPeople(null, null, null, null,
+                    null, null, null, null, lastUpdated, null, null), RESOURCE_PAGE_SIZE);
         }
 
-        return iBaseResources;
+        return FhirResourcePager.empty();
     }
 
 
-    private Collection<IBaseResource> getEncounterResourceBundle(List<org.openmrs.Encounter> encounters) {
+    private Iterable<IBaseResource> getEncounterResourceBundle(List<org.openmrs.Encounter> encounters) {
 
 
         Collection<String> encounterUUIDS = new ArrayList<>();
-        Collection<IBaseResource> iBaseResources = new ArrayList<>();
-        TokenAndListParam encounterReference = new TokenAndListParam();
 
         for (org.openmrs.Encounter encounter : encounters) {
             encounterUUIDS.add(encounter.getUuid());
         }
 
 
-        if (encounterUUIDS.size() > 0) {
-            iBaseResources.addAll(getApplicationContext().getBean(FhirEncounterService.class).get(encounterUUIDS));
-        }
-
-
-        return iBaseResources;
+        return FhirResourcePager.fromUuids(encounterUUIDS, RESOURCE_PAGE_SIZE, getApplicationContext().getBean(FhirEncounterService.class)::get);
     }
 
-    private Collection<IBaseResource> getObservationResourceBundle(SyncFhirProfile syncFhirProfile, List<org.openmrs.Encounter> encounterList, List<Person> personList) {
+    private Iterable<IBaseResource> getObservationResourceBundle(SyncFhirProfile syncFhirProfile, List<org.openmrs.Encounter> encounterList, List<Person> personList) {
 
         JSONObject searchParams = getSearchParametersInJsonObject("Observation", syncFhirProfile.getResourceSearchParameter());
 
@@ -1097,37 +1423,24 @@ public class SyncFHIRRecord {
         Collection<String> obsListUUID = observationList.stream().map(Obs::getUuid).collect(Collectors.toCollection(ArrayList::new));
 
 
-        Collection<IBaseResource> iBaseResources = new ArrayList<>();
-
-        if (obsListUUID.size() > 0) {
-            iBaseResources.addAll(getApplicationContext().getBean(FhirObservationService.class).get(obsListUUID));
-        }
-
-
-        return iBaseResources;
+        return FhirResourcePager.fromUuids(obsListUUID, RESOURCE_PAGE_SIZE, getApplicationContext().getBean(FhirObservationService.class)::get);
 
     }
 
 
-    private Collection<IBaseResource> getServiceRequestResourceBundle(List<org.openmrs.Order> testOrders) {
+    private Iterable<IBaseResource> getServiceRequestResourceBundle(List<org.openmrs.Order> testOrders) {
 
         Collection<String> testOrdersUUIDS = new ArrayList<>();
-        Collection<IBaseResource> iBaseResources = new ArrayList<>();
 
         for (org.openmrs.Order testOrder : testOrders) {
             testOrdersUUIDS.add(testOrder.getUuid());
         }
 
 
-        if (testOrdersUUIDS.size() > 0) {
-            iBaseResources.addAll(getApplicationContext().getBean(FhirServiceRequestService.class).get(testOrdersUUIDS));
-        }
-
-
-        return iBaseResources;
+        return FhirResourcePager.fromUuids(testOrdersUUIDS, RESOURCE_PAGE_SIZE, getApplicationContext().getBean(FhirServiceRequestService.class)::get);
     }
 
-    private Collection<IBaseResource> getEpisodeOfCareResourceBundle(List<org.openmrs.PatientProgram> patientPrograms) {
+    private Iterable<IBaseResource> getEpisodeOfCareResourceBundle(List<org.openmrs.PatientProgram> patientPrograms) {
         this.patientPrograms = patientPrograms;
         Collection<IBaseResource> iBaseResources = new ArrayList<>();
 
@@ -1174,74 +1487,339 @@ public class SyncFHIRRecord {
 
     public List<Map> sendFhirResourcesTo(SyncFhirProfile syncFhirProfile) {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
-        UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
         List<Map> maps = new ArrayList<>();
-        List<SyncFhirResource> syncFhirResources = ugandaEMRSyncService.getUnSyncedFHirResources(syncFhirProfile);
 
-        for (SyncFhirResource syncFhirResource : syncFhirResources) {
-            Date date = new Date();
-            try {
-                boolean connectionStatus = ugandaEMRHttpURLConnection.isConnectionAvailable();
+        ConnectivityMonitor connectivityMonitor = ConnectivityMonitor.getInstance();
+        if (!connectivityMonitor.isConnectionAvailable()) {
+            log.info("Connection to internet was not Successful, skipping sending of profile: " + syncFhirProfile.getName());
+            return maps;
+        }
+        if (!connectivityMonitor.isHostUp(syncFhirProfile.getUrl())) {
+            log.info(syncFhirProfile.getUrl() + " is marked down after failed requests, skipping sending of profile: " + syncFhirProfile.getName());
+            return maps;
+        }
 
-                if (connectionStatus) {
-                    Map map = ugandaEMRHttpURLConnection.sendPostBy(syncFhirProfile.getUrl(), syncFhirProfile.getUrlUserName(), syncFhirProfile.getUrlPassword(), syncFhirProfile.getUrlToken(), syncFhirResource.getResource(), false);
-                    if (map.get("responseCode").equals(SyncConstant.CONNECTION_SUCCESS_200) || map.get("responseCode").equals(SyncConstant.CONNECTION_SUCCESS_201)) {
-                        maps.add(map);
-                        syncFhirResource.setDateSynced(date);
-                        syncFhirResource.setSynced(true);
-                        syncFhirResource.setResource(null);
-                        syncFhirResource.setStatusCode(Integer.parseInt(map.get("responseCode").toString()));
-                        syncFhirResource.setStatusCodeDetail(map.get("responseMessage").toString());
-                        syncFhirResource.setExpiryDate(UgandaEMRSyncUtil.addDaysToDate(date, syncFhirProfile.getDurationToKeepSyncedResources()));
-                        if (syncFhirProfile.getUuid().equals(FSHR_SYNC_FHIR_PROFILE_UUID) || syncFhirProfile.getUuid().equals(CROSS_BORDER_CR_SYNC_FHIR_PROFILE_UUID)) {
-                            ugandaEMRSyncService.updatePatientsFromFHIR(new JSONObject((String) map.get("result")), PATIENT_ID_TYPE_CROSS_BORDER_UUID, PATIENT_ID_TYPE_CROSS_BORDER_NAME);
+        CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreaker(syncFhirProfile.getUrl());
+        if (circuitBreaker.isOpen()) {
+            log.info("Requests to " + syncFhirProfile.getUrl() + " are paused until " + circuitBreaker.getOpenUntil() + ", skipping sending of profile: " + syncFhirProfile.getName());
+            return maps;
+        }
+
+        int remaining = syncFhirProfile.getSyncLimit() != null ? syncFhirProfile.getSyncLimit() : Integer.MAX_VALUE;
+        Integer lastOutboxItemId = null;
+        Set<Integer> patientsWithUnsentResources = new HashSet<>();
+        boolean isCaseBasedProfile = Boolean.TRUE.equals(syncFhirProfile.getIsCaseBasedProfile());
+        SyncOutboxLease syncOutboxLease = SyncOutboxLease.fromGlobalProperties();
+        String leaseOwner = syncOutboxLease.getOwner();
+        int leaseDuration = syncOutboxLease.getDuration();
+        SendRetryPolicy sendRetryPolicy = SendRetryPolicy.fromGlobalProperties();
+
+        TransferStatistics transferStatistics = TransferStatisticsRegistry.getInstance().startRun(syncFhirProfile.getUrl());
+        ExecutorService executorService = Executors.newFixedThreadPool(getMaxConcurrentRequests(syncFhirProfile));
+        try {
+            while (remaining > 0 && !circuitBreaker.isOpen() && connectivityMonitor.isHostUp(syncFhirProfile.getUrl()) && !Thread.currentThread().isInterrupted()) {
+                // resources are claimed with a lease so that other threads or nodes sending the profile skip them
+                List<SyncOutboxItem> syncOutboxItems = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirProfile.getSyncFhirProfileId(), lastOutboxItemId, leaseOwner, leaseDuration, Math.min(remaining, SYNC_FHIR_RESOURCE_CHUNK_SIZE));
+                if (syncOutboxItems.isEmpty()) {
+                    break;
+                }
+                lastOutboxItemId = syncOutboxItems.get(syncOutboxItems.size() - 1).getOutboxItemId();
+                remaining -= syncOutboxItems.size();
+
+                List<SyncFhirResource> syncFhirResources = null;
+                Map<Integer, Map> responses = new HashMap<>();
+                try {
+                    syncFhirResources = ugandaEMRSyncService.getSyncFhirResourcesByIds(syncOutboxItems.stream().map(SyncOutboxItem::getItemId).collect(Collectors.toList()));
+                    List<SyncFhirResource> syncFhirResourcesToSend = new ArrayList<>(syncFhirResources);
+                    syncFhirResourcesToSend.removeIf(syncFhirResource -> Boolean.TRUE.equals(syncFhirResource.getSynced()));
+
+                    if (isCaseBasedProfile) {
+                        // earlier resources of a patient may be waiting for a retry or be sent by another sender
+                        Set<Integer> patientIds = syncFhirResourcesToSend.stream().filter(syncFhirResource -> syncFhirResource.getPatient() != null).map(syncFhirResource -> syncFhirResource.getPatient().getPatientId()).collect(Collectors.toSet());
+                        patientsWithUnsentResources.addAll(ugandaEMRSyncService.getPatientsWithEarlierUnsentResources(syncFhirProfile, syncOutboxItems.get(0).getOutboxItemId(), patientIds));
+                        // a patient whose earlier resource was not sent must not have later ones received ahead of it
+                        syncFhirResourcesToSend.removeIf(syncFhirResource -> syncFhirResource.getPatient() != null && patientsWithUnsentResources.contains(syncFhirResource.getPatient().getPatientId()));
+                    }
+
+                    maps.addAll(sendFhirResources(syncFhirProfile, syncFhirResourcesToSend, executorService, connectivityMonitor, circuitBreaker, transferStatistics, responses));
+
+                    for (SyncFhirResource syncFhirResource : syncFhirResources) {
+                        if (!Boolean.TRUE.equals(syncFhirResource.getSynced()) && syncFhirResource.getPatient() != null) {
+                            patientsWithUnsentResources.add(syncFhirResource.getPatient().getPatientId());
+                        }
+                    }
+                } finally {
+                    settleSyncOutboxItems(syncOutboxItems, syncFhirResources, responses, leaseOwner, sendRetryPolicy);
+                    // release the chunk so that the heap does not grow with the size of the backlog, objects the caller
+                    // loaded such as the profile stay in the session
+                    Context.flushSession();
+                    for (SyncOutboxItem syncOutboxItem : syncOutboxItems) {
+                        Context.evictFromSession(syncOutboxItem);
+                    }
+                    if (syncFhirResources != null) {
+                        for (SyncFhirResource syncFhirResource : syncFhirResources) {
+                            Context.evictFromSession(syncFhirResource);
                         }
-                        ugandaEMRSyncService.saveFHIRResource(syncFhirResource);
-                    } else {
-                        syncFhirResource.setStatusCode(Integer.parseInt(map.get("responseCode").toString()));
-                        syncFhirResource.setStatusCodeDetail(map.get("responseMessage").toString());
-                        ugandaEMRSyncService.saveFHIRResource(syncFhirResource);
                     }
-                } else {
-                    log.info("Connection to internet was not Successful. Code: " + connectionStatus);
                 }
+            }
+        } finally {
+            executorService.shutdownNow();
+            TransferStatisticsRegistry.getInstance().completeRun(transferStatistics);
+        }
 
-            } catch (Exception e) {
-                log.error("Failed to Sync Fhir Resource: " + syncFhirResource.getUuid(), e);
+        return maps;
+    }
+
+    /**
+     * Removes the outbox items of the resources that are synced or no longer exist, and releases the lease on the rest.
+     * Items of resources that failed are rescheduled with the backoff of their error, the other items can be claimed
+     * again straight away.
+     *
+     * @param syncOutboxItems the items claimed for the chunk
+     * @param syncFhirResources the resources of the items that still exist, null when they could not be loaded
+     * @param responses the server response of each resource that was sent by resource id
+     * @param leaseOwner the owner of the lease on the items
+     * @param sendRetryPolicy the policy deciding when failed resources are sent again
+     */
+    private void settleSyncOutboxItems(List<SyncOutboxItem> syncOutboxItems, List<SyncFhirResource> syncFhirResources, Map<Integer, Map> responses, String leaseOwner, SendRetryPolicy sendRetryPolicy) {
+        Map<Integer, SyncFhirResource> syncFhirResourcesById = new HashMap<>();
+        if (syncFhirResources != null) {
+            for (SyncFhirResource syncFhirResource : syncFhirResources) {
+                syncFhirResourcesById.put(syncFhirResource.getResourceId(), syncFhirResource);
             }
+        }
 
+        List<Integer> completed = new ArrayList<>();
+        List<SyncOutboxItem> failed = new ArrayList<>();
+        List<Integer> notAttempted = new ArrayList<>();
+        for (SyncOutboxItem syncOutboxItem : syncOutboxItems) {
+            SyncFhirResource syncFhirResource = syncFhirResourcesById.get(syncOutboxItem.getItemId());
+            if (syncFhirResources == null) {
+                notAttempted.add(syncOutboxItem.getOutboxItemId());
+            } else if (syncFhirResource == null || Boolean.TRUE.equals(syncFhirResource.getSynced())) {
+                completed.add(syncOutboxItem.getOutboxItemId());
+            } else if (responses.containsKey(syncFhirResource.getResourceId())) {
+                SendRetryPolicy.ErrorClass errorClass = SendRetryPolicy.classify(responses.get(syncFhirResource.getResourceId()));
+                // the item is saved by rescheduling, a flush of the session must not write it back with the lease
+                Context.evictFromSession(syncOutboxItem);
+                syncOutboxItem.setAttempts(syncOutboxItem.getAttempts() + 1);
+                syncOutboxItem.setLastErrorClass(errorClass.name());
+                syncOutboxItem.setNextAttemptAt(sendRetryPolicy.getNextAttemptDate(errorClass, syncOutboxItem.getAttempts()));
+                failed.add(syncOutboxItem);
+            } else {
+                notAttempted.add(syncOutboxItem.getOutboxItemId());
+            }
+        }
+
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        ugandaEMRSyncService.completeSyncOutboxItems(leaseOwner, completed);
+        ugandaEMRSyncService.rescheduleSyncOutboxItems(leaseOwner, failed);
+        ugandaEMRSyncService.releaseSyncOutboxItems(leaseOwner, notAttempted, false);
+    }
+
+    /**
+     * Sends a chunk of resources on the given executor and writes their sync status back in batches
+     *
+     * @param syncFhirProfile the profile the resources were generated for
+     * @param syncFhirResources the resources ordered by resource id
+     * @param executorService the executor running the sender threads
+     * @param connectivityMonitor the monitor tracking the destination
+     * @param circuitBreaker the circuit breaker of the destination
+     * @param transferStatistics the statistics of the run
+     * @param sentResponses collects the response of each resource that was sent by resource id
+     * @return the responses of the resources that were accepted by the server
+     */
+    private List<Map> sendFhirResources(SyncFhirProfile syncFhirProfile, List<SyncFhirResource> syncFhirResources, ExecutorService executorService, ConnectivityMonitor connectivityMonitor, CircuitBreaker circuitBreaker, TransferStatistics transferStatistics, Map<Integer, Map> sentResponses) {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        List<Map> maps = new ArrayList<>();
+        Collection<List<SyncFhirResource>> sendQueues = groupInSendQueues(syncFhirProfile, syncFhirResources);
+        UserContext userContext = Context.getUserContext();
+
+        CompletionService<Map<SyncFhirResource, Map>> completionService = new ExecutorCompletionService<>(executorService);
+        for (List<SyncFhirResource> sendQueue : sendQueues) {
+            completionService.submit(() -> sendSyncFhirResources(syncFhirProfile, sendQueue, userContext, connectivityMonitor, circuitBreaker, transferStatistics));
+        }
+
+        List<SyncFhirResource> syncFhirResourcesToUpdate = new ArrayList<>();
+        try {
+            for (int i = 0; i < sendQueues.size(); i++) {
+                Map<SyncFhirResource, Map> responses;
+                try {
+                    responses = completionService.take().get();
+                } catch (ExecutionException e) {
+                    log.error("Failed to Sync Fhir Resources for profile: " + syncFhirProfile.getName(), e);
+                    continue;
+                }
+
+                for (Map.Entry<SyncFhirResource, Map> response : responses.entrySet()) {
+                    sentResponses.put(response.getKey().getResourceId(), response.getValue());
+                    try {
+                        if (updateSyncFhirResourceStatus(syncFhirProfile, response.getKey(), response.getValue())) {
+                            maps.add(response.getValue());
+                        }
+                        syncFhirResourcesToUpdate.add(response.getKey());
+                    } catch (Exception e) {
+                        log.error("Failed to Sync Fhir Resource: " + response.getKey().getUuid(), e);
+                    }
+                }
+
+                if (syncFhirResourcesToUpdate.size() >= SYNC_STATUS_UPDATE_BATCH_SIZE) {
+                    ugandaEMRSyncService.saveFHIRResources(syncFhirResourcesToUpdate);
+                    syncFhirResourcesToUpdate.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Sending of Fhir Resources for profile: " + syncFhirProfile.getName() + " was interrupted", e);
+        } finally {
+            if (!syncFhirResourcesToUpdate.isEmpty()) {
+                ugandaEMRSyncService.saveFHIRResources(syncFhirResourcesToUpdate);
+            }
         }
 
         return maps;
     }
 
+    /**
+     * Splits the resources into queues that can be sent in parallel. Resources of a case based profile are queued per
+     * patient so that they reach the server in the order they were generated, otherwise each resource is its own queue.
+     *
+     * @param syncFhirProfile the profile the resources were generated for
+     * @param syncFhirResources the resources ordered by resource id
+     * @return the queues to send
+     */
+    private Collection<List<SyncFhirResource>> groupInSendQueues(SyncFhirProfile syncFhirProfile, List<SyncFhirResource> syncFhirResources) {
+        Map<String, List<SyncFhirResource>> sendQueues = new LinkedHashMap<>();
+        boolean isCaseBasedProfile = Boolean.TRUE.equals(syncFhirProfile.getIsCaseBasedProfile());
 
-    private String addReferencesMappingToObservation(String observation) {
-        ConceptService conceptService = Context.getConceptService();
-        JSONObject jsonObject = new JSONObject(observation);
-        JSONObject observationResource = jsonObject.getJSONObject("resource");
-        String conceptUUid = observationResource.getJSONObject("code").getJSONArray("coding").getJSONObject(0).getString("code");
+        for (SyncFhirResource syncFhirResource : syncFhirResources) {
+            String queueKey = "resource:" + syncFhirResource.getResourceId();
+            if (isCaseBasedProfile && syncFhirResource.getPatient() != null) {
+                queueKey = "patient:" + syncFhirResource.getPatient().getPatientId();
+            }
+            sendQueues.computeIfAbsent(queueKey, key -> new ArrayList<>()).add(syncFhirResource);
+        }
+        return sendQueues.values();
+    }
 
+    private int getMaxConcurrentRequests(SyncFhirProfile syncFhirProfile) {
+        Integer maxConcurrentRequests = syncFhirProfile.getMaxConcurrentRequests();
+        if (maxConcurrentRequests == null || maxConcurrentRequests < 1) {
+            maxConcurrentRequests = 1;
+        }
+        return Math.min(maxConcurrentRequests, SYNC_FHIR_RESOURCE_CHUNK_SIZE);
+    }
 
-        Concept concept = conceptService.getConceptByUuid(conceptUUid);
+    /**
+     * Posts a queue of resources one after the other. Runs on a sender thread so it only talks to the remote server,
+     * the sync status is written back by the calling thread. Sending stops at the first failure so that later resources
+     * of the same queue are not received ahead of it, and is skipped once the circuit of the destination opens or the
+     * connectivity monitor marks the destination down.
+     *
+     * @param syncFhirProfile the profile holding the destination
+     * @param syncFhirResources the queue of resources to send
+     * @param userContext the user context of the task that started the send
+     * @param connectivityMonitor the monitor tracking the destination
+     * @param circuitBreaker the circuit breaker of the destination
+     * @param transferStatistics the statistics of the run
+     * @return the server response of each resource that was sent, without a status code when the server was not reached
+     */
+    private Map<SyncFhirResource, Map> sendSyncFhirResources(SyncFhirProfile syncFhirProfile, List<SyncFhirResource> syncFhirResources, UserContext userContext, ConnectivityMonitor connectivityMonitor, CircuitBreaker circuitBreaker, TransferStatistics transferStatistics) {
+        Map<SyncFhirResource, Map> responses = new LinkedHashMap<>();
+        Context.openSession();
+        try {
+            Context.setUserContext(userContext);
+            UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
+            for (SyncFhirResource syncFhirResource : syncFhirResources) {
+                try {
+                    if (!circuitBreaker.allowRequest()) {
+                        log.info("Requests to " + syncFhirProfile.getUrl() + " are paused until " + circuitBreaker.getOpenUntil());
+                        break;
+                    }
+                    if (!connectivityMonitor.isHostUp(syncFhirProfile.getUrl())) {
+                        log.info(syncFhirProfile.getUrl() + " is marked down after failed requests");
+                        break;
+                    }
 
-        JSONArray newQuestionJson = observationResource.getJSONObject("code").getJSONArray("coding");
+                    Map map = ugandaEMRHttpURLConnection.sendPostBy(syncFhirProfile.getUrl(), syncFhirProfile.getUrlUserName(), syncFhirProfile.getUrlPassword(), syncFhirProfile.getUrlToken(), syncFhirResource.getResource(), false, Boolean.TRUE.equals(syncFhirProfile.getGzipRequests()), transferStatistics);
+                    circuitBreaker.recordResponse(map);
+                    if (CircuitBreaker.isFailure(map)) {
+                        connectivityMonitor.recordFailure(syncFhirProfile.getUrl());
+                    } else {
+                        connectivityMonitor.recordSuccess(syncFhirProfile.getUrl());
+                    }
+                    responses.put(syncFhirResource, map);
+                    if (!isSuccessfulResponse(map)) {
+                        break;
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to Sync Fhir Resource: " + syncFhirResource.getUuid(), e);
+                    circuitBreaker.recordFailure();
+                    connectivityMonitor.recordFailure(syncFhirProfile.getUrl());
+                    // a response without a status code marks the server as not reached
+                    responses.put(syncFhirResource, new HashMap());
+                    break;
+                }
+            }
+        } finally {
+            Context.closeSession();
+        }
+        return responses;
+    }
 
-        newQuestionJson.put(new JSONObject(String.format(FHIR_CODING_DATATYPE, "UgandaEMR", concept.getConceptId(), concept.getName().getName())));
+    private boolean isSuccessfulResponse(Map map) {
+        return map.get("responseCode") != null && (map.get("responseCode").equals(SyncConstant.CONNECTION_SUCCESS_200) || map.get("responseCode").equals(SyncConstant.CONNECTION_SUCCESS_201));
+    }
 
-        if (concept.getConceptMappings().size() > 0) {
-            for (ConceptMap conceptQuestionMap : concept.getConceptMappings()) {
-                newQuestionJson.put(new JSONObject(String.format(FHIR_CODING_DATATYPE, conceptQuestionMap.getConceptReferenceTerm().getConceptSource().getName(), conceptQuestionMap.getConceptReferenceTerm().getCode(), conceptQuestionMap.getConceptReferenceTerm().getName())));
+    /**
+     * Applies the server response to the resource without saving it
+     *
+     * @param syncFhirProfile the profile the resource belongs to
+     * @param syncFhirResource the resource that was sent
+     * @param map the server response
+     * @return true when the resource was accepted by the server
+     */
+    private boolean updateSyncFhirResourceStatus(SyncFhirProfile syncFhirProfile, SyncFhirResource syncFhirResource, Map map) {
+        if (isSuccessfulResponse(map)) {
+            Date date = new Date();
+            syncFhirResource.setDateSynced(date);
+            syncFhirResource.setSynced(true);
+            syncFhirResource.setResource(null);
+            syncFhirResource.setStatusCode(Integer.parseInt(map.get("responseCode").toString()));
+            syncFhirResource.setStatusCodeDetail(map.get("responseMessage").toString());
+            syncFhirResource.setExpiryDate(UgandaEMRSyncUtil.addDaysToDate(date, syncFhirProfile.getDurationToKeepSyncedResources()));
+            if (syncFhirProfile.getUuid().equals(FSHR_SYNC_FHIR_PROFILE_UUID) || syncFhirProfile.getUuid().equals(CROSS_BORDER_CR_SYNC_FHIR_PROFILE_UUID)) {
+                Context.getService(UgandaEMRSyncService.class).updatePatientsFromFHIR(new JSONObject((String) map.get("result")), PATIENT_ID_TYPE_CROSS_BORDER_UUID, PATIENT_ID_TYPE_CROSS_BORDER_NAME);
             }
+            return true;
+        } else if (map.get("responseCode") != null) {
+            syncFhirResource.setStatusCode(Integer.parseInt(map.get("responseCode").toString()));
+            syncFhirResource.setStatusCodeDetail(String.valueOf(map.get("responseMessage")));
         }
+        return false;
+    }
 
-        if (concept.getDatatype().equals(conceptService.getConceptDatatypeByUuid("8d4a48b6-c2cc-11de-8d13-0010c6dffd0f")) && !observationResource.isNull("valueCodeableConcept")) {
+
+    private String addReferencesMappingToObservation(String observation) {
+        ConceptCodingCache conceptCodingCache = ConceptCodingCache.getInstance();
+        JSONObject jsonObject = new JSONObject(observation);
+        JSONObject observationResource = jsonObject.getJSONObject("resource");
+        JSONArray newQuestionJson = observationResource.getJSONObject("code").getJSONArray("coding");
+        String conceptUUid = newQuestionJson.getJSONObject(0).getString("code");
+
+        ConceptCodingCache.ConceptCodings questionCodings = conceptCodingCache.getConceptCodings(conceptUUid);
+        if (questionCodings == null) {
+            return jsonObject.toString();
+        }
+        questionCodings.appendCodings(newQuestionJson);
+
+        if (questionCodings.isCoded() && !observationResource.isNull("valueCodeableConcept")) {
             JSONArray newValueCodeableJson = observationResource.getJSONObject("valueCodeableConcept").getJSONArray("coding");
-            String valueCodedConceptUUid = observationResource.getJSONObject("valueCodeableConcept").getJSONArray("coding").getJSONObject(0).getString("code");
-            Concept valueCodedConcept = conceptService.getConceptByUuid(valueCodedConceptUUid);
-            newValueCodeableJson.put(new JSONObject(String.format(FHIR_CODING_DATATYPE, "UgandaEMR", valueCodedConcept.getConceptId(), valueCodedConcept.getName().getName())));
-            for (ConceptMap conceptMap : valueCodedConcept.getConceptMappings()) {
-                newValueCodeableJson.put(new JSONObject(String.format(FHIR_CODING_DATATYPE, conceptMap.getConceptReferenceTerm().getConceptSource().getName(), conceptMap.getConceptReferenceTerm().getCode(), conceptMap.getConceptReferenceTerm().getName())));
+            String valueCodedConceptUUid = newValueCodeableJson.getJSONObject(0).getString("code");
+            ConceptCodingCache.ConceptCodings answerCodings = conceptCodingCache.getConceptCodings(valueCodedConceptUUid);
+            if (answerCodings != null) {
+                answerCodings.appendCodings(newValueCodeableJson);
             }
         }
 
@@ -1321,17 +1899,4 @@ public class SyncFHIRRecord {
 
         }
     }
-
-    private List<Patient> getPatientByCohortType(String cohortTypeUuid) {
-        List list = Context.getAdministrationService().executeSQL("SELECT patient_id from cohort_member cm inner join cohort c on cm.cohort_id = c.cohort_id inner join cohort_type ct on c.cohort_type_id = ct.cohort_type_id where ct.uuid='" + cohortTypeUuid + "' and c.voided=0 and cm.voided=0;", true);
-        PatientService patientService = Context.getPatientService();
-        List<Patient> patientList = new ArrayList<>();
-
-        if (list.size() > 0) {
-            for (Object o : list) {
-                patientList.add(patientService.getPatient(Integer.parseUnsignedInt(((ArrayList) o).get(0).toString())));
-            }
-        }
-        return patientList;
-    }
 }
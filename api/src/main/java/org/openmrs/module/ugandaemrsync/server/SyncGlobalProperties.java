@@ -78,4 +78,25 @@ public class SyncGlobalProperties {
 		return Context.getAdministrationService().getGlobalProperty(property);
 	}
 	
+	/**
+	 * Reads a global property holding a whole number
+	 *
+	 * @param property the name of the global property
+	 * @param defaultValue the value returned when the property is not set or is not a whole number
+	 * @return the value of the global property
+	 */
+	public static int getIntegerGlobalProperty(String property, int defaultValue) {
+		String value = null;
+		try {
+			value = Context.getAdministrationService().getGlobalProperty(property);
+			if (value != null && !value.trim().isEmpty()) {
+				return Integer.parseInt(value.trim());
+			}
+		}
+		catch (Exception e) {
+			LogFactory.getLog(SyncGlobalProperties.class).warn("Unable to read value " + value + " of global property " + property + ", using " + defaultValue);
+		}
+		return defaultValue;
+	}
+	
 }
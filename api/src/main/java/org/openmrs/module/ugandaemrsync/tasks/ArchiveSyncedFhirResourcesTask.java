@@ -0,0 +1,51 @@
+package org.openmrs.module.ugandaemrsync.tasks;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.Date;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_FHIR_RESOURCE_ARCHIVE_AGE;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_FHIR_RESOURCE_ARCHIVE_KEEP_RESOURCE;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
+/**
+ * Moves resources synced longer ago than the archive age into sync_fhir_resource_archive, so that sync_fhir_resource
+ * only holds recent resources and those still to be sent. Resources are archived in chunks, each in its own transaction.
+ */
+public class ArchiveSyncedFhirResourcesTask extends AbstractTask {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final int DEFAULT_ARCHIVE_AGE = 7;
+
+    Log log = LogFactory.getLog(ArchiveSyncedFhirResourcesTask.class);
+
+    @Override
+    public void execute() {
+        int archiveAge = getArchiveAge();
+        if (archiveAge <= 0) {
+            return;
+        }
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        boolean keepResource = Boolean.parseBoolean(Context.getAdministrationService().getGlobalProperty(GP_FHIR_RESOURCE_ARCHIVE_KEEP_RESOURCE));
+        Date syncedBefore = DateUtils.addDays(new Date(), -archiveAge);
+
+        int archived = 0;
+        int chunk;
+        do {
+            chunk = ugandaEMRSyncService.archiveSyncedFhirResources(syncedBefore, CHUNK_SIZE, keepResource);
+            archived += chunk;
+            Context.clearSession();
+        } while (chunk >= CHUNK_SIZE);
+        log.info("Archived " + archived + " synced resources");
+    }
+
+    private int getArchiveAge() {
+        return getIntegerGlobalProperty(GP_FHIR_RESOURCE_ARCHIVE_AGE, DEFAULT_ARCHIVE_AGE);
+    }
+}
@@ -0,0 +1,44 @@
+package org.openmrs.module.ugandaemrsync.tasks;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compresses the resources that were stored before compression was enabled on their profile. Resources are walked in
+ * chunks and the session is cleared after each chunk so that large tables can be migrated without running out of memory.
+ */
+public class CompressSyncFhirResourcesTask extends AbstractTask {
+
+    private static final int CHUNK_SIZE = 100;
+
+    Log log = LogFactory.getLog(CompressSyncFhirResourcesTask.class);
+
+    @Override
+    public void execute() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        List<SyncFhirProfile> syncFhirProfiles = ugandaEMRSyncService.getAllSyncFhirProfile().stream().filter(syncFhirProfile -> Boolean.TRUE.equals(syncFhirProfile.getCompressResources())).collect(Collectors.toList());
+
+        for (SyncFhirProfile syncFhirProfile : syncFhirProfiles) {
+            int compressed = 0;
+            Integer lastResourceId = null;
+            List<SyncFhirResource> syncFhirResources = ugandaEMRSyncService.getUncompressedSyncFhirResources(syncFhirProfile, lastResourceId, CHUNK_SIZE);
+            while (!syncFhirResources.isEmpty()) {
+                lastResourceId = syncFhirResources.get(syncFhirResources.size() - 1).getResourceId();
+                ugandaEMRSyncService.saveFHIRResources(syncFhirResources);
+                compressed += syncFhirResources.size();
+                Context.flushSession();
+                Context.clearSession();
+                syncFhirResources = ugandaEMRSyncService.getUncompressedSyncFhirResources(syncFhirProfile, lastResourceId, CHUNK_SIZE);
+            }
+            log.info("Compressed " + compressed + " resources for Profile " + syncFhirProfile.getName());
+        }
+    }
+}
@@ -5,7 +5,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ibatis.jdbc.ScriptRunner;
 import org.openmrs.api.context.Context;
-import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
+import org.openmrs.module.ugandaemrsync.api.ExpiredFhirResourcePurger;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
 import java.io.BufferedReader;
@@ -30,8 +30,7 @@ public class ComputeAndSaveAuditToolDataTask extends AbstractTask {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
-        ugandaEMRSyncService.purgeExpiredFHIRResource(new Date());
+        ExpiredFhirResourcePurger.fromGlobalProperties().purge(new Date());
     }
 
     public void executeSqlScript(File file) throws Exception {
@@ -1,8 +1,10 @@
 package org.openmrs.module.ugandaemrsync.tasks;
 
+import org.apache.commons.lang.time.DateUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.api.ExpiredFhirResourcePurger;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.server.SyncFHIRRecord;
@@ -10,11 +12,24 @@ import org.openmrs.scheduler.tasks.AbstractTask;
 
 import java.util.Date;
 
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CHANGE_EVENT_RETENTION_DAYS;
+import static org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties.getIntegerGlobalProperty;
+
 public class DeleteSyncedFhirResourceTask extends AbstractTask {
+    private static final int DEFAULT_CHANGE_EVENT_RETENTION_DAYS = 30;
+
     Log log = LogFactory.getLog(DeleteSyncedFhirResourceTask.class);
     @Override
     public void execute() {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
-        ugandaEMRSyncService.purgeExpiredFHIRResource(new Date());
+        ExpiredFhirResourcePurger.fromGlobalProperties().purge(new Date());
+
+        int purgedChangeEvents = ugandaEMRSyncService.purgeSyncChangeEvents(DateUtils.addDays(new Date(), -getChangeEventRetentionDays()));
+        log.info("Purged " + purgedChangeEvents + " captured changes");
+    }
+
+    private int getChangeEventRetentionDays() {
+        int retentionDays = getIntegerGlobalProperty(GP_CHANGE_EVENT_RETENTION_DAYS, DEFAULT_CHANGE_EVENT_RETENTION_DAYS);
+        return retentionDays > 0 ? retentionDays : DEFAULT_CHANGE_EVENT_RETENTION_DAYS;
     }
-}
\ No newline at end of file
+}
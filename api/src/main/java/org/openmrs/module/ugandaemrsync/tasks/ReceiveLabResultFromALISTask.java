@@ -6,7 +6,7 @@ import org.json.JSONObject;
 import org.openmrs.Order;
 import org.openmrs.api.OrderService;
 import org.openmrs.api.context.Context;
-import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.scheduler.tasks.AbstractTask;
@@ -25,11 +25,9 @@ public class ReceiveLabResultFromALISTask extends AbstractTask {
 
     @Override
     public void execute() {
-        UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
-
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             return;
         }
 
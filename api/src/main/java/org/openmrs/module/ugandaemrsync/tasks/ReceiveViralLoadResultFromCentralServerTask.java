@@ -6,8 +6,16 @@ import org.openmrs.Order;
 import org.openmrs.api.OrderService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
+import org.openmrs.module.ugandaemrsync.model.SyncOutboxItem;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreaker;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreakerRegistry;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
+import org.openmrs.module.ugandaemrsync.api.SendRetryPolicy;
+import org.openmrs.module.ugandaemrsync.api.SyncOutboxLease;
+import org.openmrs.module.ugandaemrsync.api.TransferStatistics;
+import org.openmrs.module.ugandaemrsync.api.TransferStatisticsRegistry;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
@@ -16,96 +24,174 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.stream.Collectors;
 
 
-import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VIRAL_LOAD_SYNC_TASK_TYPE_UUID;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VIRAL_LOAD_RESULT_PULL_TYPE_UUID;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VL_RECEIVE_RESULT_FHIR_JSON_STRING;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VIRAL_LOAD_ORDER_QUERY;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.PATIENT_IDENTIFIER_TYPE;
 
 public class ReceiveViralLoadResultFromCentralServerTask extends AbstractTask {
+    private static final int CHUNK_SIZE = 100;
+
     protected final Log log = LogFactory.getLog(ReceiveViralLoadResultFromCentralServerTask.class);
 
     @Override
     public void execute() {
-        UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
-
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             return;
         }
 
-        for (SyncTask syncTask : ugandaEMRSyncService.getIncompleteActionSyncTask(VIRAL_LOAD_SYNC_TASK_TYPE_UUID)) {
-            Order order = getOrder(syncTask.getSyncTask());
+        SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_RESULT_PULL_TYPE_UUID);
+        CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreaker(syncTaskType.getUrl());
+        SyncOutboxLease syncOutboxLease = SyncOutboxLease.fromGlobalProperties();
+        SendRetryPolicy sendRetryPolicy = SendRetryPolicy.fromGlobalProperties();
+        TransferStatistics transferStatistics = TransferStatisticsRegistry.getInstance().startRun(syncTaskType.getUrl());
+        try {
+            Integer lastOutboxItemId = null;
+            List<SyncOutboxItem> syncOutboxItems;
+            do {
+                // samples are claimed with a lease so that another node fetching results skips them
+                syncOutboxItems = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_VIRAL_LOAD_RESULT, null, lastOutboxItemId, syncOutboxLease.getOwner(), syncOutboxLease.getDuration(), CHUNK_SIZE);
+                if (syncOutboxItems.isEmpty()) {
+                    break;
+                }
+                lastOutboxItemId = syncOutboxItems.get(syncOutboxItems.size() - 1).getOutboxItemId();
+
+                List<Integer> completed = new ArrayList<>();
+                List<SyncOutboxItem> failed = new ArrayList<>();
+                List<Integer> notCompleted = new ArrayList<>();
+                try {
+                    for (SyncOutboxItem syncOutboxItem : syncOutboxItems) {
+                        SyncTask syncTask = ugandaEMRSyncService.getSyncTaskById(syncOutboxItem.getItemId());
+                        if (syncTask == null || Boolean.TRUE.equals(syncTask.getActionCompleted())) {
+                            completed.add(syncOutboxItem.getOutboxItemId());
+                            continue;
+                        }
+                        if (!circuitBreaker.allowRequest()) {
+                            log.info("Requests to " + syncTaskType.getUrl() + " are paused until " + circuitBreaker.getOpenUntil() + ", remaining results will be fetched in the next run");
+                            break;
+                        }
 
-            String dataOutput = generateVLFHIRResultRequestBody(VL_RECEIVE_RESULT_FHIR_JSON_STRING, ugandaEMRSyncService.getHealthCenterCode(), ugandaEMRSyncService.getPatientIdentifier(order.getEncounter().getPatient(), PATIENT_IDENTIFIER_TYPE), String.valueOf(syncTask.getSyncTask())).get("json");
+                        Map results = receiveResult(syncTask, syncTaskType, circuitBreaker, transferStatistics);
+                        if (Boolean.TRUE.equals(syncTask.getActionCompleted())) {
+                            completed.add(syncOutboxItem.getOutboxItemId());
+                        } else if (results.isEmpty() || !isSuccessfulResponse(results)) {
+                            SendRetryPolicy.ErrorClass errorClass = SendRetryPolicy.classify(results.isEmpty() ? null : results);
+                            // the item is saved by rescheduling, a flush of the session must not write it back with the lease
+                            Context.evictFromSession(syncOutboxItem);
+                            syncOutboxItem.setAttempts(syncOutboxItem.getAttempts() + 1);
+                            syncOutboxItem.setLastErrorClass(errorClass.name());
+                            syncOutboxItem.setNextAttemptAt(sendRetryPolicy.getNextAttemptDate(errorClass, syncOutboxItem.getAttempts()));
+                            failed.add(syncOutboxItem);
+                        } else {
+                            // the result is still pending at the central server
+                            notCompleted.add(syncOutboxItem.getOutboxItemId());
+                        }
+                    }
+                } finally {
+                    // items not reached before the circuit breaker opened or an error stopped the run are claimed again next run
+                    for (SyncOutboxItem syncOutboxItem : syncOutboxItems) {
+                        if (!completed.contains(syncOutboxItem.getOutboxItemId()) && !failed.contains(syncOutboxItem) && !notCompleted.contains(syncOutboxItem.getOutboxItemId())) {
+                            notCompleted.add(syncOutboxItem.getOutboxItemId());
+                        }
+                    }
+                    ugandaEMRSyncService.completeSyncOutboxItems(syncOutboxLease.getOwner(), completed);
+                    ugandaEMRSyncService.rescheduleSyncOutboxItems(syncOutboxLease.getOwner(), failed);
+                    ugandaEMRSyncService.releaseSyncOutboxItems(syncOutboxLease.getOwner(), notCompleted, false);
+                }
+            } while (syncOutboxItems.size() == CHUNK_SIZE && !circuitBreaker.isOpen());
+        } finally {
+            TransferStatisticsRegistry.getInstance().completeRun(transferStatistics);
+        }
+    }
 
-            Map results = new HashMap();
+    /**
+     * Fetches the result of a sample from the central server and saves it to the encounter of the order. The sync task
+     * is marked as completed once the result is saved.
+     *
+     * @return the response of the central server, empty when the server was not reached
+     */
+    private Map receiveResult(SyncTask syncTask, SyncTaskType syncTaskType, CircuitBreaker circuitBreaker, TransferStatistics transferStatistics) {
+        UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 
-            SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_RESULT_PULL_TYPE_UUID);
+        Order order = getOrder(syncTask.getSyncTask());
 
-            try {
-                results = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl(), syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", dataOutput, false);
-            } catch (Exception e) {
-                log.error("Failed to fetch results", e);
-                logSyncTask(500, e.getMessage(), order, syncTaskType, false, false);
-            }
-            Integer responseCode = null;
-            String responseMessage = null;
+        String dataOutput = generateVLFHIRResultRequestBody(VL_RECEIVE_RESULT_FHIR_JSON_STRING, ugandaEMRSyncService.getHealthCenterCode(), ugandaEMRSyncService.getPatientIdentifier(order.getEncounter().getPatient(), PATIENT_IDENTIFIER_TYPE), String.valueOf(syncTask.getSyncTask())).get("json");
 
-            // Parsing responseCode and responseMessage
-            if (results.containsKey("responseCode") && results.containsKey("responseMessage")) {
-                responseCode = Integer.parseInt(results.get("responseCode").toString());
-                responseMessage = results.get("responseMessage").toString();
-            }
+        Map results = new HashMap();
 
-            // Processing results if responseCode is valid and status is not pending
-            if (responseCode != null && (responseCode == 200 || responseCode == 201) && !results.isEmpty() && results.containsKey("status") && !results.get("status").equals("pending")) {
-                Map reasonReference = (Map) results.get("reasonReference");
-                ArrayList<Map> result = (ArrayList<Map>) reasonReference.get("result");
+        try {
+            results = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl(), syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", dataOutput, false, Boolean.TRUE.equals(syncTaskType.getGzipRequests()), transferStatistics);
+            circuitBreaker.recordResponse(results);
+        } catch (Exception e) {
+            log.error("Failed to fetch results", e);
+            circuitBreaker.recordFailure();
+            logSyncTask(500, e.getMessage(), order, syncTaskType, false, false);
+        }
+        Integer responseCode = null;
+        String responseMessage = null;
 
-                // Saving Viral Load Results
-                if (order.getEncounter() != null && !result.isEmpty()) {
-                    Object qualitativeResult = result.get(0).get("valueString");
-                    Object quantitativeResult = result.get(0).get("valueInteger");
+        // Parsing responseCode and responseMessage
+        if (results.containsKey("responseCode") && results.containsKey("responseMessage")) {
+            responseCode = Integer.parseInt(results.get("responseCode").toString());
+            responseMessage = results.get("responseMessage").toString();
+        }
 
-                    if (quantitativeResult != null && qualitativeResult != null) {
+        // Processing results if responseCode is valid and status is not pending
+        if (responseCode != null && (responseCode == 200 || responseCode == 201) && !results.isEmpty() && results.containsKey("status") && !results.get("status").equals("pending")) {
+            Map reasonReference = (Map) results.get("reasonReference");
+            ArrayList<Map> result = (ArrayList<Map>) reasonReference.get("result");
+
+            // Saving Viral Load Results
+            if (order.getEncounter() != null && !result.isEmpty()) {
+                Object qualitativeResult = result.get(0).get("valueString");
+                Object quantitativeResult = result.get(0).get("valueInteger");
+
+                if (quantitativeResult != null && qualitativeResult != null) {
+                    try {
+                        ugandaEMRSyncService.addVLToEncounter(qualitativeResult.toString(), quantitativeResult.toString(), order.getEncounter().getEncounterDatetime().toString(), order.getEncounter(), order);
+                        syncTask.setActionCompleted(true);
+                        ugandaEMRSyncService.saveSyncTask(syncTask);
+                        logSyncTask(responseCode, result.get(0).get("valueString").toString(), order, syncTaskType, false, false);
                         try {
-                            ugandaEMRSyncService.addVLToEncounter(qualitativeResult.toString(), quantitativeResult.toString(), order.getEncounter().getEncounterDatetime().toString(), order.getEncounter(), order);
-                            syncTask.setActionCompleted(true);
-                            ugandaEMRSyncService.saveSyncTask(syncTask);
-                            logSyncTask(responseCode, result.get(0).get("valueString").toString(), order, syncTaskType, false, false);
-                            try {
-                                Context.getOrderService().discontinueOrder(order, "Completed", new Date(), order.getOrderer(), order.getEncounter());
-                            } catch (Exception e) {
-                                log.error("Failed to discontinue order", e);
-                            }
+                            Context.getOrderService().discontinueOrder(order, "Completed", new Date(), order.getOrderer(), order.getEncounter());
                         } catch (Exception e) {
-                            log.error("Failed to add results to patient encounter", e);
-                            logSyncTask(500, e.getMessage(), order, syncTaskType, false, false);
+                            log.error("Failed to discontinue order", e);
                         }
-                    } else {
-                        logSyncTask(500, "Internal server error: Results of Viral load have a null value", order, syncTaskType, false, false);
+                    } catch (Exception e) {
+                        log.error("Failed to add results to patient encounter", e);
+                        logSyncTask(500, e.getMessage(), order, syncTaskType, false, false);
                     }
+                } else {
+                    logSyncTask(500, "Internal server error: Results of Viral load have a null value", order, syncTaskType, false, false);
                 }
-            } else {
-                // Logging based on responseCode or status
-                if (responseCode != null && !results.containsKey("status")) {
-                    logSyncTask(responseCode, responseMessage, order, syncTaskType, false, false);
-                } else if (results.containsKey("status")) {
-                    logSyncTask(responseCode, results.get("status").toString(), order, syncTaskType, false, false);
-                }
             }
+        } else {
+            // Logging based on responseCode or status
+            if (responseCode != null && !results.containsKey("status")) {
+                logSyncTask(responseCode, responseMessage, order, syncTaskType, false, false);
+            } else if (results.containsKey("status")) {
+                logSyncTask(responseCode, results.get("status").toString(), order, syncTaskType, false, false);
+            }
+        }
+        return results;
+    }
 
+    private boolean isSuccessfulResponse(Map results) {
+        if (results.get("responseCode") == null) {
+            return false;
         }
+        String responseCode = results.get("responseCode").toString();
+        return responseCode.equals("200") || responseCode.equals("201");
     }
 
     private SyncTask logSyncTask(Integer statusCode, String status, Order order, SyncTaskType syncTaskType, boolean anyFurtherAction, boolean anyFurtherActionCompleted) {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
-        List<SyncTask> syncTasks = ugandaEMRSyncService.getSyncTasksBySyncTaskId(order.getAccessionNumber()).stream().filter(syncTask -> syncTask.getSyncTaskType().equals(syncTaskType)).collect(Collectors.toList());
+        List<SyncTask> syncTasks = ugandaEMRSyncService.getSyncTasksBySyncTaskIdAndType(order.getAccessionNumber(), syncTaskType);
         if (!syncTasks.isEmpty()) {
             SyncTask existingTask = syncTasks.get(0);
             existingTask.setRequireAction(anyFurtherAction);
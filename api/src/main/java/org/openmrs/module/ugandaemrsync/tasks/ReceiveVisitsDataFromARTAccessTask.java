@@ -20,6 +20,7 @@ import org.openmrs.api.FormService;
 import org.openmrs.api.VisitService;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
@@ -65,7 +66,7 @@ public class ReceiveVisitsDataFromARTAccessTask extends AbstractTask {
             return;
         }
 
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             return;
         }
 
@@ -77,7 +78,7 @@ public class ReceiveVisitsDataFromARTAccessTask extends AbstractTask {
             artAccessServerUrlEndPoint = syncTaskType.getUrl();
             artAccessServerUrlEndPoint = addParametersToUrl(artAccessServerUrlEndPoint);
 
-            if (!ugandaEMRHttpURLConnection.isServerAvailable(artAccessServerUrlEndPoint)) {
+            if (!ConnectivityMonitor.getInstance().isServerAvailable(artAccessServerUrlEndPoint)) {
                 log.error("server not available ");
                 return;
             }
@@ -1,7 +1,7 @@
 package org.openmrs.module.ugandaemrsync.tasks;
 
 import org.openmrs.module.ugandaemrsync.server.SyncDataRecord;
-import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
 /**
@@ -10,8 +10,7 @@ import org.openmrs.scheduler.tasks.AbstractTask;
 public class SendAllDataCentralServerTask extends AbstractTask {
 
 	public void execute() {
-		UgandaEMRHttpURLConnection ugandaEMRHttpURLConnection = new UgandaEMRHttpURLConnection();
-		if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+		if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
 			return;
 		}
 		SyncDataRecord syncDataRecord = new SyncDataRecord();
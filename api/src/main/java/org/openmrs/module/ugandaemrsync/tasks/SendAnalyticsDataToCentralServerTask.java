@@ -23,6 +23,7 @@ import org.openmrs.module.reporting.report.renderer.template.TemplateEngine;
 import org.openmrs.module.reporting.report.renderer.template.TemplateEngineManager;
 import org.openmrs.module.reporting.report.service.ReportService;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.scheduler.tasks.AbstractTask;
 import org.openmrs.util.OpenmrsUtil;
@@ -82,12 +83,12 @@ public class SendAnalyticsDataToCentralServerTask extends AbstractTask {
 
 
         //Check internet connectivity
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             return;
         }
 
         //Check destination server availability
-        if (!ugandaEMRHttpURLConnection.isServerAvailable(analyticsBaseUrl)) {
+        if (!ConnectivityMonitor.getInstance().isServerAvailable(analyticsBaseUrl)) {
             return;
         }
 
@@ -8,6 +8,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.scheduler.tasks.AbstractTask;
 import org.openmrs.ui.framework.SimpleObject;
@@ -69,7 +70,7 @@ public class SendDHIS2DataToCentralServerTask extends AbstractTask  {
         }
 
         //Check internet connectivity
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             map.put("responseCode", responseCode);
             map.put("responseMessage", "Failed to connect to the internet. Check connection");
             try {
@@ -81,7 +82,7 @@ public class SendDHIS2DataToCentralServerTask extends AbstractTask  {
         }
 
         //Check destination server availability
-        if (!ugandaEMRHttpURLConnection.isServerAvailable(baseUrl)) {
+        if (!ConnectivityMonitor.getInstance().isServerAvailable(baseUrl)) {
             map.put("responseCode", responseCode);
             map.put("responseMessage", "Server Not Available");
 
@@ -17,6 +17,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.scheduler.tasks.AbstractTask;
 import org.openmrs.util.OpenmrsUtil;
@@ -102,12 +103,12 @@ public class SendRecencyDataToCentralServerTask extends AbstractTask {
 			}
 		}
 		//Check internet connectivity
-		if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+		if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
 			return;
 		}
 		
 		//Check destination server availability
-		if (!ugandaEMRHttpURLConnection.isServerAvailable(recencyBaseUrl)) {
+		if (!ConnectivityMonitor.getInstance().isServerAvailable(recencyBaseUrl)) {
 			return;
 		}
 		log.info("Sending recency data to central server ");
@@ -14,6 +14,7 @@ import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.reporting.report.definition.service.ReportDefinitionService;
 import org.openmrs.module.reporting.report.renderer.RenderingMode;
 import org.openmrs.module.reporting.report.util.ReportUtil;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
 import org.openmrs.module.ugandaemrsync.server.TaskType;
@@ -97,13 +98,13 @@ public class SendSMSAppointmentTask extends AbstractTask {
 
         }
         //Check internet connectivity
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             log.error("No network for server");
             return;
         }
 
         //Check destination server availability
-        if (!ugandaEMRHttpURLConnection.isServerAvailable(baseUrl)) {
+        if (!ConnectivityMonitor.getInstance().isServerAvailable(baseUrl)) {
             log.error("Server cant be reached");
             return;
         }
@@ -7,9 +7,11 @@ import org.openmrs.Order;
 import org.openmrs.Patient;
 import org.openmrs.TestOrder;
 
-import org.openmrs.api.AdministrationService;
 import org.openmrs.api.OrderService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
+import org.openmrs.module.ugandaemrsync.api.TransferStatistics;
+import org.openmrs.module.ugandaemrsync.api.TransferStatisticsRegistry;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.api.impl.UgandaEMRSyncServiceImpl;
@@ -40,7 +42,7 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
         List<Order> orderList = new ArrayList<>();
 
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             return;
         }
 
@@ -54,92 +56,141 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
 
         SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VL_PROGRAM_DATA_SYNC_TYPE_UUID);
         SyncTaskType firstMessageSyncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID);
+        TransferStatistics transferStatistics = TransferStatisticsRegistry.getInstance().startRun(syncTaskType.getUrl());
+        try {
+            Map<String, List<SyncTask>> syncTasksByAccessionNumber = ugandaEMRSyncService.getSyncTasksBySyncTaskIds(orderList.stream().map(Order::getAccessionNumber).collect(Collectors.toList()), Arrays.asList(syncTaskType, firstMessageSyncTaskType))
+                    .stream().collect(Collectors.groupingBy(SyncTask::getSyncTask));
 
-        for (Order order : orderList) {
-            List<SyncTask> allSyncTasks =  ugandaEMRSyncService.getSyncTasksBySyncTaskId(order.getAccessionNumber());
-            List<SyncTask> successfullVLProgramSyncTasks = allSyncTasks.stream().filter(p -> syncTaskType.getId().equals(p.getSyncTaskType().getId()) && (p.getStatusCode()==200 || p.getStatusCode()==201)).collect(Collectors.toList());
-            List<SyncTask> firstSyncTaskToRun = allSyncTasks.stream().filter(p -> firstMessageSyncTaskType.getId().equals(p.getSyncTaskType().getId())).collect(Collectors.toList());
-
-            if (successfullVLProgramSyncTasks.size()<1 && firstSyncTaskToRun.size()>0) {
-
-
-                try {
-                    Map<String, String> dataOutput = generateVLProgramDataFHIRBody((TestOrder) order, VL_SEND_PROGRAM_DATA_FHIR_JSON_STRING);
-                    String json = dataOutput.get("json");
-                    String empty_fields = dataOutput.get("empty_fields");
-                    String patientARTno = dataOutput.get("patient");
-                    ugandaEMRSyncService.deleteSyncTask(order.getAccessionNumber(),syncTaskType);
-                    Map map = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl(), syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", json, false);
-                    if (map != null) {
-                        SyncTask newSyncTask = new SyncTask();
-                        newSyncTask.setDateSent(new Date());
-                        newSyncTask.setCreator(Context.getUserService().getUser(1));
-                        newSyncTask.setSentToUrl(syncTaskType.getUrl());
-                        newSyncTask.setRequireAction(true);
-                        newSyncTask.setActionCompleted(true);
-                        newSyncTask.setSyncTask(order.getAccessionNumber());
-                        newSyncTask.setStatusCode((Integer) map.get("responseCode"));
-                        if(empty_fields!="") {
-                            newSyncTask.setStatus((String) map.get("responseMessage") + " Patient "+ patientARTno+" empty fields: " + empty_fields);
-                        }else{
-                            newSyncTask.setStatus((String) map.get("responseMessage"));
+            List<Order> ordersToSend = new ArrayList<>();
+            for (Order order : orderList) {
+                List<SyncTask> allSyncTasks = syncTasksByAccessionNumber.getOrDefault(order.getAccessionNumber(), Collections.emptyList());
+                List<SyncTask> successfullVLProgramSyncTasks = allSyncTasks.stream().filter(p -> syncTaskType.getId().equals(p.getSyncTaskType().getId()) && (p.getStatusCode()==200 || p.getStatusCode()==201)).collect(Collectors.toList());
+                List<SyncTask> firstSyncTaskToRun = allSyncTasks.stream().filter(p -> firstMessageSyncTaskType.getId().equals(p.getSyncTaskType().getId())).collect(Collectors.toList());
+
+                if (successfullVLProgramSyncTasks.size()<1 && firstSyncTaskToRun.size()>0) {
+                    ordersToSend.add(order);
+                }
+            }
+
+            // the clinical facts of all the patients are loaded at once rather than queried for each order
+            Map<Integer, ViralLoadProgramDataSnapshot> snapshots = new HashMap<>();
+            try {
+                snapshots = ViralLoadProgramDataSnapshot.load(ordersToSend.stream().map(order -> order.getPatient().getPatientId()).collect(Collectors.toSet()));
+            } catch (Exception e) {
+                log.error("Failed to load the clinical data of the patients of the orders", e);
+            }
+            String healthCenterCode = ugandaEMRSyncService.getHealthCenterCode();
+
+            for (Order order : ordersToSend) {
+                ViralLoadProgramDataSnapshot snapshot = snapshots.get(order.getPatient().getPatientId());
+                if (snapshot == null) {
+                    // loaded on its own when the batch failed, so that one patient's data does not hold back the rest
+                    snapshot = loadSnapshot(order.getPatient().getPatientId());
+                }
+                if (snapshot != null) {
+                    try {
+                        Map<String, String> dataOutput = generateVLProgramDataFHIRBody((TestOrder) order, VL_SEND_PROGRAM_DATA_FHIR_JSON_STRING, snapshot, healthCenterCode);
+                        String json = dataOutput.get("json");
+                        String empty_fields = dataOutput.get("empty_fields");
+                        String patientARTno = dataOutput.get("patient");
+                        ugandaEMRSyncService.deleteSyncTask(order.getAccessionNumber(),syncTaskType);
+                        Map map = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl(), syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", json, false, Boolean.TRUE.equals(syncTaskType.getGzipRequests()), transferStatistics);
+                        if (map != null) {
+                            SyncTask newSyncTask = new SyncTask();
+                            newSyncTask.setDateSent(new Date());
+                            newSyncTask.setCreator(Context.getUserService().getUser(1));
+                            newSyncTask.setSentToUrl(syncTaskType.getUrl());
+                            newSyncTask.setRequireAction(true);
+                            newSyncTask.setActionCompleted(true);
+                            newSyncTask.setSyncTask(order.getAccessionNumber());
+                            newSyncTask.setStatusCode((Integer) map.get("responseCode"));
+                            if(empty_fields!="") {
+                                newSyncTask.setStatus((String) map.get("responseMessage") + " Patient "+ patientARTno+" empty fields: " + empty_fields);
+                            }else{
+                                newSyncTask.setStatus((String) map.get("responseMessage"));
+                            }
+                            newSyncTask.setSyncTaskType(ugandaEMRSyncService.getSyncTaskTypeByUUID(VL_PROGRAM_DATA_SYNC_TYPE_UUID));
+                            ugandaEMRSyncService.saveSyncTask(newSyncTask);
                         }
-                        newSyncTask.setSyncTaskType(ugandaEMRSyncService.getSyncTaskTypeByUUID(VL_PROGRAM_DATA_SYNC_TYPE_UUID));
-                        ugandaEMRSyncService.saveSyncTask(newSyncTask);
+                    } catch (Exception e) {
+                        log.error("Failed to create sync task",e);
                     }
-                } catch (Exception e) {
-                    log.error("Failed to create sync task",e);
                 }
             }
+        } finally {
+            TransferStatisticsRegistry.getInstance().completeRun(transferStatistics);
         }
     }
 
+    private ViralLoadProgramDataSnapshot loadSnapshot(Integer patientId) {
+        try {
+            return ViralLoadProgramDataSnapshot.load(Collections.singletonList(patientId)).get(patientId);
+        } catch (Exception e) {
+            log.error("Failed to load the clinical data of patient " + patientId, e);
+            return null;
+        }
+    }
 
     public Map<String, String> generateVLProgramDataFHIRBody(TestOrder testOrder, String jsonFHIRMap) {
+        ViralLoadProgramDataSnapshot snapshot = null;
+        if (testOrder != null) {
+            Integer patientId = testOrder.getPatient().getPatientId();
+            snapshot = ViralLoadProgramDataSnapshot.load(Collections.singletonList(patientId)).get(patientId);
+        }
+        return generateVLProgramDataFHIRBody(testOrder, jsonFHIRMap, snapshot, new UgandaEMRSyncServiceImpl().getHealthCenterCode());
+    }
+
+    /**
+     * Generates the program data of an order from the snapshot of its patient, without querying the database for the
+     * clinical facts of the patient
+     *
+     * @param testOrder the viral load order
+     * @param jsonFHIRMap the template of the program data
+     * @param snapshot the facts of the patient of the order
+     * @param healthCenterCode the code of the facility
+     * @return the program data, the fields that could not be filled and the ART number of the patient
+     */
+    public Map<String, String> generateVLProgramDataFHIRBody(TestOrder testOrder, String jsonFHIRMap, ViralLoadProgramDataSnapshot snapshot, String healthCenterCode) {
         Map<String, String> jsonMap = new HashMap<>();
-        UgandaEMRSyncService ugandaEMRSyncService = new UgandaEMRSyncServiceImpl();
         String filledJsonFile = "";
         String empty_fields="";
         if (testOrder != null) {
-            AdministrationService administrationService = Context.getAdministrationService();
+            if (snapshot == null) {
+                snapshot = new ViralLoadProgramDataSnapshot(testOrder.getPatient().getPatientId());
+            }
 
-            String healthCenterCode = ugandaEMRSyncService.getHealthCenterCode();
             String otherID= "";
             Patient patient = testOrder.getPatient();
-            int patientId = patient.getPatientId();
             Date date_activated = testOrder.getDateActivated();
-            String patientARTNO = ugandaEMRSyncService.getPatientIdentifier(testOrder.getPatient(),PATIENT_IDENTIFIER_TYPE);
-            String patientOpenMRSID = ugandaEMRSyncService.getPatientIdentifier(testOrder.getPatient(),OPENMRS_IDENTIFIER_TYPE_UUID);
-            String patientANCID = ugandaEMRSyncService.getPatientIdentifier(testOrder.getPatient(),ANC_IDENTIFIER_TYPE_UUID);
-            String patientNATIONALID = ugandaEMRSyncService.getPatientIdentifier(testOrder.getPatient(),NATIONAL_ID_IDENTIFIER_TYPE_UUID);
-            String patientPNC_ID= ugandaEMRSyncService.getPatientIdentifier(testOrder.getPatient(),PNC_IDENTIFIER_TYPE_UUID);
+            String patientARTNO = snapshot.getIdentifier(PATIENT_IDENTIFIER_TYPE);
+            String patientOpenMRSID = snapshot.getIdentifier(OPENMRS_IDENTIFIER_TYPE_UUID);
+            String patientANCID = snapshot.getIdentifier(ANC_IDENTIFIER_TYPE_UUID);
+            String patientNATIONALID = snapshot.getIdentifier(NATIONAL_ID_IDENTIFIER_TYPE_UUID);
+            String patientPNC_ID= snapshot.getIdentifier(PNC_IDENTIFIER_TYPE_UUID);
             String sampleID = testOrder.getAccessionNumber();
             String gender = patient.getGender();
-            List current_regimenList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,90315,date_activated),true);
-            List current_regimen_orders_List = administrationService.executeSQL(String.format(Latest_drug_order_of_person, patientId,date_activated),true);
+            Integer current_regimen_code = snapshot.getLatestValueCoded(90315, date_activated);
+            Integer current_regimen_order_code = snapshot.getLatestRegimenDrugOrderConcept(date_activated);
 
             String current_regimen="";
             int regimen_code=0;
-            if(current_regimenList.size() > 0) {
-                ArrayList regimenList = (ArrayList) current_regimenList.get(0);
-                 regimen_code = Integer.parseInt(regimenList.get(0).toString());
+            if(current_regimen_code != null) {
+                regimen_code = current_regimen_code;
                 current_regimen = Context.getConceptService().getConcept(regimen_code).getName().getName();
-            }else if (current_regimen_orders_List.size()>0){
-                ArrayList regimenList = (ArrayList) current_regimen_orders_List.get(0);
-                regimen_code = Integer.parseInt(regimenList.get(0).toString());
+            }else if (current_regimen_order_code != null){
+                regimen_code = current_regimen_order_code;
 
                 current_regimen = Context.getConceptService().getConcept(regimen_code).getName().getName();
             }
             if(current_regimen.isEmpty())
                 empty_fields += ", current regimen";
 
-            List obs_dsdmList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,165143,date_activated),true);
+            Integer obs_dsdm = snapshot.getLatestValueCoded(165143, date_activated);
 
             String dsdm="";
             String dsdm_hie_code="";
-            if(obs_dsdmList.size()>0) {
-                ArrayList myList = (ArrayList) obs_dsdmList.get(0);
-                int dsdm_code = Integer.parseInt(myList.get(0).toString());
+            if(obs_dsdm != null) {
+                int dsdm_code = obs_dsdm;
 
 
                 if(dsdm_code==165138){
@@ -166,13 +217,12 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
             if(dsdm_hie_code.isEmpty())
                 dsdm_hie_code="734163000_01";
 
-            List obs_adherenceList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,90221,date_activated),true);
+            Integer obs_adherence = snapshot.getLatestValueCoded(90221, date_activated);
             String adherence="";
             String adherence_hie_code ="";
             Integer adherence_code;
-            if(obs_adherenceList.size()>0) {
-                ArrayList myList = (ArrayList) obs_adherenceList.get(0);
-                adherence_code =Integer.parseInt(myList.get(0).toString());
+            if(obs_adherence != null) {
+                adherence_code = obs_adherence;
                 if(adherence_code==90156){
                     adherence = "Good >= 95%";
                     adherence_hie_code = "1156699004_01";
@@ -187,16 +237,13 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
             if(adherence_hie_code.isEmpty())
                 empty_fields += ", adherence";
 
-            List current_regimen_start_date = administrationService.executeSQL(String.format("SELECT TIMESTAMPDIFF(MONTH, obs_datetime,'%s') from obs where person_id=%s and concept_id=90315 and voided=0 and value_coded = %s ORDER BY obs_datetime ASC LIMIT 1",date_activated.toString(),patientId,regimen_code),true);
-            List current_regimen_start_date_by_orders = administrationService.executeSQL(String.format("SELECT TIMESTAMPDIFF(MONTH, date_activated,'%s') from orders o INNER JOIN order_type ot ON o.order_type_id = ot.order_type_id\n" +
-                    "\t INNER JOIN drug_order d_o ON o.order_id = d_o.order_id\n" +
-                    "\t where ot.uuid='131168f4-15f5-102d-96e4-000c29c2a5d7' and patient_id= %s  and o.voided=0 and o.concept_id = %s ORDER BY date_activated ASC LIMIT 1",date_activated.toString(),patientId,regimen_code),true);
+            Integer current_regimen_start_date = snapshot.getMonthsSinceFirstObs(90315, regimen_code, date_activated);
+            Integer current_regimen_start_date_by_orders = snapshot.getMonthsSinceFirstDrugOrder(regimen_code, date_activated);
 
             String duration_string="";
             String duration_string_hie_code="";
-            if(current_regimen_start_date.size()>0) {
-                ArrayList myList = (ArrayList) current_regimen_start_date.get(0);
-                int duration= Integer.parseInt(myList.get(0).toString());
+            if(current_regimen_start_date != null) {
+                int duration= current_regimen_start_date;
                  if(duration >=60) {
                      duration_string=">5yrs";
                      duration_string_hie_code = "261773006_05";
@@ -217,9 +264,8 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
                      duration_string="< 6months";
                      duration_string_hie_code = "261773006_01";
                  }
-            } else if (current_regimen_start_date_by_orders.size()>0) {
-                ArrayList myList = (ArrayList) current_regimen_start_date_by_orders.get(0);
-                int duration= Integer.parseInt(myList.get(0).toString());
+            } else if (current_regimen_start_date_by_orders != null) {
+                int duration= current_regimen_start_date_by_orders;
                 if(duration >=60) {
                     duration_string=">5yrs";
                     duration_string_hie_code = "261773006_05";
@@ -244,13 +290,12 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
             if (duration_string_hie_code.isEmpty())
                 empty_fields += ", duration on art";
 
-            List obs_pregnantList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,90041,date_activated),true);
+            Integer obs_pregnant = snapshot.getLatestValueCoded(90041, date_activated);
 
             Boolean pregnant=false;
             Boolean breastfeeding=false;
-            if(obs_pregnantList.size()>0){
-                ArrayList myList = (ArrayList) obs_pregnantList.get(0);
-                int preg_status = Integer.parseInt(myList.get(0).toString());
+            if(obs_pregnant != null){
+                int preg_status = obs_pregnant;
               if(preg_status==1065){
                   pregnant= true;
               }else if(preg_status==99601){
@@ -258,15 +303,14 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
               }
             }
 
-            List obs_tbList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,90216,date_activated),true);
+            Integer obs_tb = snapshot.getLatestValueCoded(90216, date_activated);
 
             Boolean hasActiveTB = false;
             String tb_phase="";
             String tb_phase_hie_code="";
             List<Integer> diagnosed_concepts = Arrays.asList(165295, 165296, 165297, 165298, 165299,165300);
-            if(obs_tbList.size()>0){
-                ArrayList myList = (ArrayList) obs_tbList.get(0);
-                int tb_status_answer =Integer.parseInt(myList.get(0).toString());
+            if(obs_tb != null){
+                int tb_status_answer = obs_tb;
               if(tb_status_answer==90071){
                   tb_phase= "Continuation Phase";
                   tb_phase_hie_code ="371569005_02";
@@ -278,39 +322,30 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
               }
             }
 
-            List artStartList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"DATE(value_datetime)", patientId,99161,date_activated),true);
-            Date artStartDate = null;
-            if(artStartList.size()>0){
-                ArrayList myList = (ArrayList) artStartList.get(0);
-                artStartDate = Context.getService(UgandaEMRSyncService.class).convertStringToDate(myList.get(0).toString(),"","yyyy-MM-dd");
-            }
+            Date artStartDate = snapshot.getLatestValueDate(99161, date_activated);
 
             if(artStartDate==null)
                 empty_fields += ", ART Start Date";
 
-            List obs_indication_for_VL = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,168689,date_activated),true);
+            Integer obs_indication_for_VL = snapshot.getLatestValueCoded(168689, date_activated);
 
             String vl_indication_hie_code ="";
             int vl_indicator_code=0;
-            if(obs_indication_for_VL.size()>0) {
-                ArrayList myList = (ArrayList) obs_indication_for_VL.get(0);
-                 vl_indicator_code = Integer.parseInt(myList.get(0).toString());
+            if(obs_indication_for_VL != null) {
+                vl_indicator_code = obs_indication_for_VL;
 
                 vl_indication_hie_code = getVl_indication_hie_code(vl_indicator_code);
             }
             if(vl_indication_hie_code.isEmpty()){
 //                do manual fill of vl indication warning : this is a hack
-                List last_vl = administrationService.executeSQL(String.format(Latest_obs_of_Person,"DATE(value_datetime)", patientId,163023,date_activated),true);
+                Date last_vl_date = snapshot.getLatestValueDate(163023, date_activated);
                 if(pregnant){
                         vl_indicator_code= 166508;
                 }else if(artStartDate!=null && isSixToSevenMonthsAgo(artStartDate,date_activated)){
                         vl_indicator_code=168683;
                 }else if( artStartDate!=null &&isTwelveToThirteenMonthsAgo(artStartDate,date_activated)){
                         vl_indicator_code = 168684;
-                }else if(last_vl.size()>0){
-                        ArrayList myList = (ArrayList) last_vl.get(0);
-                        Date  last_vl_date = Context.getService(UgandaEMRSyncService.class).convertStringToDate(myList.get(0).toString(),"","yyyy-MM-dd");
-
+                }else if(last_vl_date!=null){
                         if(patient.getAge() <= 15 && last_vl_date!=null && isSixToSevenMonthsAgo(last_vl_date,date_activated)){
                             vl_indicator_code=168688 ;
                         }else if(patient.getAge() >15 && last_vl_date!=null && isTwelveToThirteenMonthsAgo(last_vl_date,date_activated)){
@@ -327,13 +362,12 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
                 }
             }
 
-            List obs_WHOList = administrationService.executeSQL(String.format(Latest_obs_of_Person,"value_coded", patientId,90203,date_activated),true);
+            Integer obs_WHO = snapshot.getLatestValueCoded(90203, date_activated);
 
             String who_hie_code = "";
             String who_display = "";
-            if(obs_WHOList.size()>0){
-                ArrayList myList = (ArrayList) obs_WHOList.get(0);
-                int who_stage_concept =(Integer)myList.get(0);
+            if(obs_WHO != null){
+                int who_stage_concept = obs_WHO;
 
                 switch (who_stage_concept) {
                     case 90033:
@@ -385,13 +419,13 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
             if(who_hie_code.isEmpty())
                 empty_fields += ", who code";
 
-            String regimenline = getRegimenLineOfPatient(patient);
+            String regimenline = snapshot.getRegimenLine();
             String coded_regimen_line ="";
-            if(regimenline=="first"){
+            if(ViralLoadProgramDataSnapshot.FIRST_LINE.equals(regimenline)){
                coded_regimen_line= firstLineBody;
-            }else if (regimenline=="second"){
+            }else if (ViralLoadProgramDataSnapshot.SECOND_LINE.equals(regimenline)){
                coded_regimen_line=secondLineBody;
-            }else if(regimenline=="third"){
+            }else if(ViralLoadProgramDataSnapshot.THIRD_LINE.equals(regimenline)){
                coded_regimen_line=thirdLineBody;
             }
             if(coded_regimen_line.isEmpty())
@@ -450,32 +484,6 @@ public class SendViralLoadProgramDataToCentralServerTask extends AbstractTask {
         return orders;
     }
 
-    private String getRegimenLineOfPatient(Patient patient){
-        int patientno = patient.getPatientId();
-        String line="";
-        String firstLineQuery = String.format(REGIMEN_LINE_QUERY,"ab6d1f1d-fcf6-4255-8b6f-2bf8959ad8f2",patientno);
-
-        List firstLineResults = Context.getAdministrationService().executeSQL(firstLineQuery,true);
-        if(firstLineResults.size()>0 ){
-            line ="first";
-        }else {
-            String secondLineQuery = String.format(REGIMEN_LINE_QUERY, "9a42a3ad-d8a4-4f2e-9fa0-04d5f2e6436e", patientno);
-            List secondLineResults = Context.getAdministrationService().executeSQL(secondLineQuery, true);
-            if (secondLineResults.size() > 0) {
-                line = "second";
-            }
-
-            String thirdLineQuery = String.format(REGIMEN_LINE_QUERY,"5d2d0e7e-69a6-408a-b5ce-8d93fb72bc21",patientno);
-            List thirdLineResults = Context.getAdministrationService().executeSQL(thirdLineQuery,true);
-            if(thirdLineResults.size()>0 ){
-                line ="third";
-            }
-        }
-
-        return line;
-    }
-
-
     public boolean isSixToSevenMonthsAgo(Date date,Date dateActivated) {
         // Convert Date to LocalDate
         LocalDate inputDate = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
@@ -20,6 +20,11 @@ import org.openmrs.module.ugandaemrsync.api.impl.UgandaEMRSyncServiceImpl;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
 import org.openmrs.module.ugandaemrsync.server.SyncConstant;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreaker;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreakerRegistry;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
+import org.openmrs.module.ugandaemrsync.api.TransferStatistics;
+import org.openmrs.module.ugandaemrsync.api.TransferStatisticsRegistry;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
@@ -32,6 +37,9 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Objects;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VIRAL_LOAD_SYNC_TYPE_UUID;
@@ -53,7 +61,7 @@ public class SendViralLoadRequestToCentralServerTask extends AbstractTask {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
         List<Order> orderList = new ArrayList<>();
 
-        if (!ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+        if (!ConnectivityMonitor.getInstance().isConnectionAvailable()) {
             return;
         }
 
@@ -66,41 +74,52 @@ public class SendViralLoadRequestToCentralServerTask extends AbstractTask {
         }
 
         SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID);
-
-        for (Order order : orderList) {
-            List<SyncTask> allSyncTasks = ugandaEMRSyncService.getAllSyncTask();
-            List<SyncTask> syncTasks = allSyncTasks.stream().filter(p -> order.getAccessionNumber().equals(p.getSyncTask()) && syncTaskType.getId().equals(p.getSyncTaskType().getId())).collect(Collectors.toList());
-
-            if (syncTasks.size()<1){
-                Map<String, String> dataOutput = generateVLFHIROrderTestRequestBody((TestOrder) order, VL_SEND_SAMPLE_FHIR_JSON_STRING);
-                String json = dataOutput.get("json");
-
-                try {
-                    Map map = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl(), syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", json, false);
-                    if (map != null) {
-                        Map responseType = handleReturnedResponses(order, map);
-                        Integer response = (Integer) map.get("responseCode");
-
-                        if (map.get("responseCode").toString().equals("400") && responseType.get("responseType").toString().equals("Duplicate")) {
-                            response = 200;
+        CircuitBreaker circuitBreaker = CircuitBreakerRegistry.getInstance().getCircuitBreaker(syncTaskType.getUrl());
+        TransferStatistics transferStatistics = TransferStatisticsRegistry.getInstance().startRun(syncTaskType.getUrl());
+        try {
+            Set<String> sentAccessionNumbers = ugandaEMRSyncService.getSyncTasksBySyncTaskIds(orderList.stream().map(Order::getAccessionNumber).collect(Collectors.toList()), Collections.singletonList(syncTaskType))
+                    .stream().map(SyncTask::getSyncTask).collect(Collectors.toCollection(HashSet::new));
+
+            for (Order order : orderList) {
+                if (!sentAccessionNumbers.contains(order.getAccessionNumber())){
+                    if (!circuitBreaker.allowRequest()) {
+                        log.info("Requests to " + syncTaskType.getUrl() + " are paused until " + circuitBreaker.getOpenUntil() + ", remaining orders will be sent in the next run");
+                        break;
+                    }
+                    Map<String, String> dataOutput = generateVLFHIROrderTestRequestBody((TestOrder) order, VL_SEND_SAMPLE_FHIR_JSON_STRING);
+                    String json = dataOutput.get("json");
+
+                    try {
+                        Map map = ugandaEMRHttpURLConnection.sendPostBy(syncTaskType.getUrl(), syncTaskType.getUrlUserName(), syncTaskType.getUrlPassword(), "", json, false, Boolean.TRUE.equals(syncTaskType.getGzipRequests()), transferStatistics);
+                        circuitBreaker.recordResponse(map);
+                        if (map != null) {
+                            Map responseType = handleReturnedResponses(order, map);
+                            Integer response = (Integer) map.get("responseCode");
+
+                            if (map.get("responseCode").toString().equals("400") && responseType.get("responseType").toString().equals("Duplicate")) {
+                                response = 200;
+                            }
+
+                            SyncTask newSyncTask = new SyncTask();
+                            newSyncTask.setDateSent(new Date());
+                            newSyncTask.setCreator(Context.getUserService().getUser(1));
+                            newSyncTask.setSentToUrl(syncTaskType.getUrl());
+                            newSyncTask.setRequireAction(true);
+                            newSyncTask.setActionCompleted(false);
+                            newSyncTask.setSyncTask(order.getAccessionNumber());
+                            newSyncTask.setStatusCode((Integer) response);
+                            newSyncTask.setStatus((String) map.get("responseMessage"));
+                            newSyncTask.setSyncTaskType(ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID));
+                            ugandaEMRSyncService.saveSyncTask(newSyncTask);
+                            sentAccessionNumbers.add(order.getAccessionNumber());
                         }
-
-                        SyncTask newSyncTask = new SyncTask();
-                        newSyncTask.setDateSent(new Date());
-                        newSyncTask.setCreator(Context.getUserService().getUser(1));
-                        newSyncTask.setSentToUrl(syncTaskType.getUrl());
-                        newSyncTask.setRequireAction(true);
-                        newSyncTask.setActionCompleted(false);
-                        newSyncTask.setSyncTask(order.getAccessionNumber());
-                        newSyncTask.setStatusCode((Integer) response);
-                        newSyncTask.setStatus((String) map.get("responseMessage"));
-                        newSyncTask.setSyncTaskType(ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID));
-                        ugandaEMRSyncService.saveSyncTask(newSyncTask);
+                    } catch (Exception e) {
+                        log.error("Failed to create sync task",e);
                     }
-                } catch (Exception e) {
-                    log.error("Failed to create sync task",e);
                 }
             }
+        } finally {
+            TransferStatisticsRegistry.getInstance().completeRun(transferStatistics);
         }
     }
 
@@ -0,0 +1,332 @@
+package org.openmrs.module.ugandaemrsync.tasks;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.DateUtils;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.ANC_IDENTIFIER_TYPE_UUID;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.NATIONAL_ID_IDENTIFIER_TYPE_UUID;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.OPENMRS_IDENTIFIER_TYPE_UUID;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.PATIENT_IDENTIFIER_TYPE;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.PNC_IDENTIFIER_TYPE_UUID;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VL_PROGRAM_DATA_DRUG_ORDER_QUERY;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VL_PROGRAM_DATA_IDENTIFIER_QUERY;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VL_PROGRAM_DATA_OBS_QUERY;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VL_PROGRAM_DATA_REGIMEN_CONCEPTS_QUERY;
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.VL_PROGRAM_DATA_REGIMEN_LINE_QUERY;
+
+/**
+ * The clinical facts of a patient that go into the viral load program data sent to the central server. The facts of
+ * all the patients in a run are loaded with a few queries by {@link #load(Collection)}, so that generating the data of
+ * an order reads from memory instead of querying the database for each fact.
+ */
+public class ViralLoadProgramDataSnapshot {
+
+    public static final String FIRST_LINE = "first";
+
+    public static final String SECOND_LINE = "second";
+
+    public static final String THIRD_LINE = "third";
+
+    static final String FIRST_LINE_STATE_UUID = "ab6d1f1d-fcf6-4255-8b6f-2bf8959ad8f2";
+
+    static final String SECOND_LINE_STATE_UUID = "9a42a3ad-d8a4-4f2e-9fa0-04d5f2e6436e";
+
+    static final String THIRD_LINE_STATE_UUID = "5d2d0e7e-69a6-408a-b5ce-8d93fb72bc21";
+
+    /**
+     * The concepts of the observations read when generating the program data
+     */
+    static final List<Integer> OBS_CONCEPTS = Arrays.asList(90315, 165143, 90221, 90041, 90216, 99161, 168689, 163023, 90203);
+
+    static final List<String> IDENTIFIER_TYPE_UUIDS = Arrays.asList(PATIENT_IDENTIFIER_TYPE, OPENMRS_IDENTIFIER_TYPE_UUID, ANC_IDENTIFIER_TYPE_UUID, NATIONAL_ID_IDENTIFIER_TYPE_UUID, PNC_IDENTIFIER_TYPE_UUID);
+
+    /**
+     * The number of patients whose facts are loaded by a query, keeps the patient id lists within what the database
+     * accepts
+     */
+    private static final int PATIENT_BATCH_SIZE = 500;
+
+    private static final Comparator<ObsValue> OBS_ORDER = Comparator.comparing((ObsValue obsValue) -> obsValue.obsDatetime).thenComparing(obsValue -> obsValue.obsId);
+
+    private static final Comparator<DrugOrderValue> DRUG_ORDER_ORDER = Comparator.comparing(drugOrderValue -> drugOrderValue.dateActivated);
+
+    private final Integer patientId;
+
+    private final Map<Integer, List<ObsValue>> obsByConcept = new HashMap<>();
+
+    private final List<DrugOrderValue> drugOrders = new ArrayList<>();
+
+    private final Map<String, String> identifiers = new HashMap<>();
+
+    private final Set<String> activeRegimenLineStates = new HashSet<>();
+
+    ViralLoadProgramDataSnapshot(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    /**
+     * Loads the facts of the given patients
+     *
+     * @param patientIds the patients in the run
+     * @return the snapshot of each patient, a patient without any facts gets an empty snapshot
+     */
+    public static Map<Integer, ViralLoadProgramDataSnapshot> load(Collection<Integer> patientIds) {
+        Map<Integer, ViralLoadProgramDataSnapshot> snapshots = new HashMap<>();
+        if (patientIds == null || patientIds.isEmpty()) {
+            return snapshots;
+        }
+        List<Integer> patientIdList = new ArrayList<>(new LinkedHashSet<>(patientIds));
+        for (Integer patientId : patientIdList) {
+            snapshots.put(patientId, new ViralLoadProgramDataSnapshot(patientId));
+        }
+
+        AdministrationService administrationService = Context.getAdministrationService();
+        Set<Integer> regimenConcepts = new HashSet<>();
+        for (Object row : administrationService.executeSQL(VL_PROGRAM_DATA_REGIMEN_CONCEPTS_QUERY, true)) {
+            regimenConcepts.add(toInteger(((List) row).get(0)));
+        }
+
+        String obsConcepts = OBS_CONCEPTS.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String identifierTypes = IDENTIFIER_TYPE_UUIDS.stream().map(uuid -> "'" + uuid + "'").collect(Collectors.joining(","));
+        String regimenLineStates = Arrays.asList(FIRST_LINE_STATE_UUID, SECOND_LINE_STATE_UUID, THIRD_LINE_STATE_UUID).stream().map(uuid -> "'" + uuid + "'").collect(Collectors.joining(","));
+
+        for (int from = 0; from < patientIdList.size(); from += PATIENT_BATCH_SIZE) {
+            String patients = patientIdList.subList(from, Math.min(from + PATIENT_BATCH_SIZE, patientIdList.size())).stream().map(String::valueOf).collect(Collectors.joining(","));
+
+            for (Object row : administrationService.executeSQL(String.format(VL_PROGRAM_DATA_OBS_QUERY, obsConcepts, patients), true)) {
+                List columns = (List) row;
+                ViralLoadProgramDataSnapshot snapshot = snapshots.get(toInteger(columns.get(0)));
+                if (snapshot != null) {
+                    snapshot.addObs(toInteger(columns.get(1)), toInteger(columns.get(2)), (Date) columns.get(3), toInteger(columns.get(4)), (Date) columns.get(5));
+                }
+            }
+
+            for (Object row : administrationService.executeSQL(String.format(VL_PROGRAM_DATA_DRUG_ORDER_QUERY, patients), true)) {
+                List columns = (List) row;
+                ViralLoadProgramDataSnapshot snapshot = snapshots.get(toInteger(columns.get(0)));
+                Integer conceptId = toInteger(columns.get(1));
+                if (snapshot != null && columns.get(2) != null) {
+                    snapshot.addDrugOrder(conceptId, (Date) columns.get(2), regimenConcepts.contains(conceptId));
+                }
+            }
+
+            for (Object row : administrationService.executeSQL(String.format(VL_PROGRAM_DATA_IDENTIFIER_QUERY, identifierTypes, patients), true)) {
+                List columns = (List) row;
+                ViralLoadProgramDataSnapshot snapshot = snapshots.get(toInteger(columns.get(0)));
+                if (snapshot != null && columns.get(2) != null) {
+                    snapshot.addIdentifier((String) columns.get(1), columns.get(2).toString());
+                }
+            }
+
+            for (Object row : administrationService.executeSQL(String.format(VL_PROGRAM_DATA_REGIMEN_LINE_QUERY, regimenLineStates, patients), true)) {
+                List columns = (List) row;
+                ViralLoadProgramDataSnapshot snapshot = snapshots.get(toInteger(columns.get(0)));
+                if (snapshot != null) {
+                    snapshot.addActiveRegimenLineState((String) columns.get(1));
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * @param identifierTypeUuid the uuid of the identifier type
+     * @return the identifier of the patient of the given type, an empty string when the patient has none
+     */
+    public String getIdentifier(String identifierTypeUuid) {
+        return identifiers.getOrDefault(identifierTypeUuid, "");
+    }
+
+    /**
+     * @param conceptId the question concept
+     * @param onOrBefore the date the observation may not be after
+     * @return the coded answer of the latest observation of the concept, null when there is none
+     */
+    public Integer getLatestValueCoded(Integer conceptId, Date onOrBefore) {
+        ObsValue obsValue = getLatestObs(conceptId, onOrBefore);
+        return obsValue == null ? null : obsValue.valueCoded;
+    }
+
+    /**
+     * @param conceptId the question concept
+     * @param onOrBefore the date the observation may not be after
+     * @return the day of the date answer of the latest observation of the concept, null when there is none
+     */
+    public Date getLatestValueDate(Integer conceptId, Date onOrBefore) {
+        ObsValue obsValue = getLatestObs(conceptId, onOrBefore);
+        return obsValue == null || obsValue.valueDatetime == null ? null : DateUtils.truncate(obsValue.valueDatetime, Calendar.DATE);
+    }
+
+    /**
+     * @param onOrBefore the date the drug order may not be activated after, only the day is compared
+     * @return the concept of the latest regimen drug order, null when there is none
+     */
+    public Integer getLatestRegimenDrugOrderConcept(Date onOrBefore) {
+        Date day = DateUtils.truncate(onOrBefore, Calendar.DATE);
+        DrugOrderValue latest = null;
+        for (DrugOrderValue drugOrderValue : drugOrders) {
+            if (drugOrderValue.regimen && !DateUtils.truncate(drugOrderValue.dateActivated, Calendar.DATE).after(day)) {
+                latest = drugOrderValue;
+            }
+        }
+        return latest == null ? null : latest.conceptId;
+    }
+
+    /**
+     * @param conceptId the question concept
+     * @param valueCoded the coded answer
+     * @param until the date to count to
+     * @return the whole months from the first observation of the concept with the answer, null when there is none
+     */
+    public Integer getMonthsSinceFirstObs(Integer conceptId, Integer valueCoded, Date until) {
+        for (ObsValue obsValue : obsByConcept.getOrDefault(conceptId, new ArrayList<>())) {
+            if (valueCoded != null && valueCoded.equals(obsValue.valueCoded)) {
+                return monthsBetween(obsValue.obsDatetime, until);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param conceptId the drug order concept
+     * @param until the date to count to
+     * @return the whole months from the first drug order of the concept, null when there is none
+     */
+    public Integer getMonthsSinceFirstDrugOrder(Integer conceptId, Date until) {
+        for (DrugOrderValue drugOrderValue : drugOrders) {
+            if (drugOrderValue.conceptId != null && drugOrderValue.conceptId.equals(conceptId)) {
+                return monthsBetween(drugOrderValue.dateActivated, until);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@link #FIRST_LINE}, {@link #SECOND_LINE} or {@link #THIRD_LINE} depending on the active regimen line
+     *         state of the patient, an empty string when there is none
+     */
+    public String getRegimenLine() {
+        if (activeRegimenLineStates.contains(FIRST_LINE_STATE_UUID)) {
+            return FIRST_LINE;
+        } else if (activeRegimenLineStates.contains(THIRD_LINE_STATE_UUID)) {
+            return THIRD_LINE;
+        } else if (activeRegimenLineStates.contains(SECOND_LINE_STATE_UUID)) {
+            return SECOND_LINE;
+        }
+        return "";
+    }
+
+    void addObs(Integer conceptId, Integer obsId, Date obsDatetime, Integer valueCoded, Date valueDatetime) {
+        if (obsDatetime == null) {
+            return;
+        }
+        List<ObsValue> obsValues = obsByConcept.computeIfAbsent(conceptId, key -> new ArrayList<>());
+        ObsValue obsValue = new ObsValue(obsId == null ? 0 : obsId, obsDatetime, valueCoded, valueDatetime);
+        // rows are loaded in order, so the position is normally found at the end of the list
+        int position = obsValues.size();
+        while (position > 0 && OBS_ORDER.compare(obsValues.get(position - 1), obsValue) > 0) {
+            position--;
+        }
+        obsValues.add(position, obsValue);
+    }
+
+    void addDrugOrder(Integer conceptId, Date dateActivated, boolean regimen) {
+        DrugOrderValue drugOrderValue = new DrugOrderValue(conceptId, dateActivated, regimen);
+        int position = drugOrders.size();
+        while (position > 0 && DRUG_ORDER_ORDER.compare(drugOrders.get(position - 1), drugOrderValue) > 0) {
+            position--;
+        }
+        drugOrders.add(position, drugOrderValue);
+    }
+
+    void addIdentifier(String identifierTypeUuid, String identifier) {
+        identifiers.putIfAbsent(identifierTypeUuid, identifier);
+    }
+
+    void addActiveRegimenLineState(String stateUuid) {
+        if (StringUtils.isNotBlank(stateUuid)) {
+            activeRegimenLineStates.add(stateUuid);
+        }
+    }
+
+    private ObsValue getLatestObs(Integer conceptId, Date onOrBefore) {
+        ObsValue latest = null;
+        for (ObsValue obsValue : obsByConcept.getOrDefault(conceptId, new ArrayList<>())) {
+            if (obsValue.obsDatetime.after(onOrBefore)) {
+                break;
+            }
+            latest = obsValue;
+        }
+        return latest;
+    }
+
+    private static int monthsBetween(Date from, Date to) {
+        LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(from.getTime()), ZoneId.systemDefault());
+        LocalDateTime end = LocalDateTime.ofInstant(Instant.ofEpochMilli(to.getTime()), ZoneId.systemDefault());
+        return (int) ChronoUnit.MONTHS.between(start, end);
+    }
+
+    private static Integer toInteger(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString());
+    }
+
+    private static class ObsValue {
+
+        private final Integer obsId;
+
+        private final Date obsDatetime;
+
+        private final Integer valueCoded;
+
+        private final Date valueDatetime;
+
+        private ObsValue(Integer obsId, Date obsDatetime, Integer valueCoded, Date valueDatetime) {
+            this.obsId = obsId;
+            this.obsDatetime = obsDatetime;
+            this.valueCoded = valueCoded;
+            this.valueDatetime = valueDatetime;
+        }
+    }
+
+    private static class DrugOrderValue {
+
+        private final Integer conceptId;
+
+        private final Date dateActivated;
+
+        private final boolean regimen;
+
+        private DrugOrderValue(Integer conceptId, Date dateActivated, boolean regimen) {
+            this.conceptId = conceptId;
+            this.dateActivated = dateActivated;
+            this.regimen = regimen;
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package org.openmrs.module.ugandaemrsync.util;
 
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.util.OpenmrsUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.CONNECTION_SUCCESS_200;
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.CONNECTION_SUCCESS_201;
@@ -30,5 +37,41 @@ public class UgandaEMRSyncUtil {
         return cal.getTime();
     }
 
+    /**
+     * Gzip compresses a string
+     *
+     * @param value the string to compress
+     * @return the gzip compressed utf-8 bytes of the string
+     */
+    public static byte[] compress(String value) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new APIException("Failed to compress value", e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Decompresses bytes produced by {@link #compress(String)}
+     *
+     * @param compressedValue the gzip compressed bytes
+     * @return the original string
+     */
+    public static String decompress(byte[] compressedValue) {
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressedValue))) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = gzipInputStream.read(buffer)) != -1) {
+                byteArrayOutputStream.write(buffer, 0, length);
+            }
+            return new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new APIException("Failed to decompress value", e);
+        }
+    }
+
 
 }
@@ -0,0 +1,116 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+	private static final long INITIAL_BACKOFF = 1000;
+
+	private static final long MAX_BACKOFF = 4000;
+
+	private TestCircuitBreaker circuitBreaker;
+
+	@Before
+	public void setUp() {
+		circuitBreaker = new TestCircuitBreaker();
+	}
+
+	@Test
+	public void recordFailure_shouldOpenTheCircuitOnceTheThresholdIsReached() {
+		circuitBreaker.recordFailure();
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.allowRequest());
+
+		circuitBreaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.allowRequest());
+	}
+
+	@Test
+	public void allowRequest_shouldLetOneTrialThroughOnceTheBackoffHasPassed() {
+		openCircuit();
+		circuitBreaker.now += INITIAL_BACKOFF;
+
+		assertTrue(circuitBreaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.allowRequest());
+	}
+
+	@Test
+	public void recordSuccess_shouldCloseTheCircuitAfterASuccessfulTrial() {
+		openCircuit();
+		circuitBreaker.now += INITIAL_BACKOFF;
+		circuitBreaker.allowRequest();
+
+		circuitBreaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertEquals(0, circuitBreaker.getConsecutiveFailures());
+		assertTrue(circuitBreaker.allowRequest());
+	}
+
+	@Test
+	public void recordFailure_shouldDoubleTheBackoffWhenTheTrialFails() {
+		openCircuit();
+		circuitBreaker.now += INITIAL_BACKOFF;
+		circuitBreaker.allowRequest();
+
+		circuitBreaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertEquals(2, circuitBreaker.getTimesOpened());
+		long backoff = circuitBreaker.getOpenUntil().getTime() - circuitBreaker.now;
+		assertTrue(backoff >= INITIAL_BACKOFF && backoff <= 2 * INITIAL_BACKOFF);
+	}
+
+	@Test
+	public void recordFailure_shouldNotWaitLongerThanTheMaximumBackoff() {
+		openCircuit();
+		for (int i = 0; i < 10; i++) {
+			circuitBreaker.now = circuitBreaker.getOpenUntil().getTime();
+			circuitBreaker.allowRequest();
+			circuitBreaker.recordFailure();
+		}
+		assertTrue(circuitBreaker.getOpenUntil().getTime() - circuitBreaker.now <= MAX_BACKOFF);
+	}
+
+	@Test
+	public void recordResponse_shouldOnlyCountUnreachableAndServerErrorsAsFailures() {
+		assertTrue(CircuitBreaker.isFailure(new HashMap()));
+		assertTrue(CircuitBreaker.isFailure(response(503)));
+		assertFalse(CircuitBreaker.isFailure(response(400)));
+		assertFalse(CircuitBreaker.isFailure(response(201)));
+	}
+
+	private void openCircuit() {
+		for (int i = 0; i < 3; i++) {
+			circuitBreaker.recordFailure();
+		}
+	}
+
+	private Map response(int responseCode) {
+		Map map = new HashMap();
+		map.put("responseCode", responseCode);
+		return map;
+	}
+
+	private static class TestCircuitBreaker extends CircuitBreaker {
+
+		private long now = 1000000;
+
+		TestCircuitBreaker() {
+			super("https://ugisl.mets.or.ug/fhir", 3, INITIAL_BACKOFF, MAX_BACKOFF);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.json.JSONArray;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CONCEPT_CODING_CACHE_MAX_SIZE;
+
+public class ConceptCodingCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private ConceptCodingCache newCache(int maxSize) {
+		return new ConceptCodingCache(maxSize, uuid -> {
+			loads.incrementAndGet();
+			return uuid.startsWith("missing") ? null : new ConceptCodingCache.ConceptCodings(false,
+					Collections.singletonList(new String[]{"UgandaEMR", uuid, "Concept " + uuid}));
+		});
+	}
+
+	@Test
+	public void getConceptCodings_shouldLoadEachConceptOnce() {
+		ConceptCodingCache conceptCodingCache = newCache(10);
+
+		conceptCodingCache.getConceptCodings("5090");
+		conceptCodingCache.getConceptCodings("5090");
+		conceptCodingCache.getConceptCodings("5089");
+
+		assertEquals(2, loads.get());
+		assertEquals(1, conceptCodingCache.getHits());
+		assertEquals(2, conceptCodingCache.getMisses());
+		assertEquals(1.0 / 3, conceptCodingCache.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void getConceptCodings_shouldEvictTheLeastRecentlyUsedConcept() {
+		ConceptCodingCache conceptCodingCache = newCache(2);
+
+		conceptCodingCache.getConceptCodings("1");
+		conceptCodingCache.getConceptCodings("2");
+		conceptCodingCache.getConceptCodings("1");
+		conceptCodingCache.getConceptCodings("3");
+		conceptCodingCache.getConceptCodings("1");
+		conceptCodingCache.getConceptCodings("2");
+
+		assertEquals(2, conceptCodingCache.getSize());
+		assertEquals(2, conceptCodingCache.getEvictions());
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void invalidate_shouldLoadTheConceptAgain() {
+		ConceptCodingCache conceptCodingCache = newCache(10);
+
+		conceptCodingCache.getConceptCodings("5090");
+		conceptCodingCache.invalidate("5090");
+		conceptCodingCache.getConceptCodings("5090");
+
+		assertEquals(2, loads.get());
+		assertEquals(1, conceptCodingCache.getInvalidations());
+	}
+
+	@Test
+	public void getConceptCodings_shouldNotCacheMissingConcepts() {
+		ConceptCodingCache conceptCodingCache = newCache(10);
+
+		assertNull(conceptCodingCache.getConceptCodings("missing-concept"));
+		assertEquals(0, conceptCodingCache.getSize());
+	}
+
+	@Test
+	public void globalPropertyChanged_shouldResetTheCacheWhenTheMaximumSizeChanges() {
+		ConceptCodingCache conceptCodingCache = newCache(10);
+		conceptCodingCache.getConceptCodings("5090");
+
+		assertTrue(conceptCodingCache.supportsPropertyName(GP_CONCEPT_CODING_CACHE_MAX_SIZE));
+		assertFalse(conceptCodingCache.supportsPropertyName("ugandaemrsync.http.maxConnectionsTotal"));
+		conceptCodingCache.globalPropertyChanged(new GlobalProperty(GP_CONCEPT_CODING_CACHE_MAX_SIZE, "500"));
+
+		assertEquals(0, conceptCodingCache.getSize());
+		assertEquals(0, conceptCodingCache.getMisses());
+		conceptCodingCache.getConceptCodings("5090");
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void appendCodings_shouldAddNewCodingsEachTime() {
+		ConceptCodingCache.ConceptCodings conceptCodings = newCache(10).getConceptCodings("5090");
+		JSONArray first = new JSONArray();
+		JSONArray second = new JSONArray();
+
+		conceptCodings.appendCodings(first);
+		conceptCodings.appendCodings(second);
+		first.getJSONObject(0).put("code", "changed");
+
+		assertEquals("UgandaEMR", second.getJSONObject(0).getString("system"));
+		assertEquals("5090", second.getJSONObject(0).getString("code"));
+		assertEquals("Concept 5090", second.getJSONObject(0).getString("display"));
+	}
+}
@@ -0,0 +1,90 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectivityMonitorTest {
+
+	private static final String SERVER_URL = "https://ugisl.mets.or.ug/fhir/Bundle";
+
+	private TestConnectivityMonitor connectivityMonitor;
+
+	@Before
+	public void setUp() {
+		connectivityMonitor = new TestConnectivityMonitor();
+	}
+
+	@Test
+	public void isServerAvailable_shouldProbeOnceWithinTheCacheTtl() {
+		assertTrue(connectivityMonitor.isServerAvailable(SERVER_URL));
+		assertTrue(connectivityMonitor.isServerAvailable("https://ugisl.mets.or.ug/"));
+		assertEquals(1, connectivityMonitor.probes);
+	}
+
+	@Test
+	public void isServerAvailable_shouldProbeAgainOnceTheCacheTtlExpires() {
+		connectivityMonitor.cacheTtl = 0;
+		connectivityMonitor.isServerAvailable(SERVER_URL);
+		connectivityMonitor.isServerAvailable(SERVER_URL);
+		assertEquals(2, connectivityMonitor.probes);
+	}
+
+	@Test
+	public void recordFailure_shouldMarkHostDownAfterConsecutiveFailures() {
+		connectivityMonitor.recordFailure(SERVER_URL);
+		connectivityMonitor.recordFailure(SERVER_URL);
+		assertTrue(connectivityMonitor.isHostUp(SERVER_URL));
+
+		connectivityMonitor.recordFailure(SERVER_URL);
+		assertFalse(connectivityMonitor.isHostUp(SERVER_URL));
+		assertFalse(connectivityMonitor.isServerAvailable(SERVER_URL));
+		assertEquals(0, connectivityMonitor.probes);
+	}
+
+	@Test
+	public void recordSuccess_shouldResetConsecutiveFailures() {
+		connectivityMonitor.recordFailure(SERVER_URL);
+		connectivityMonitor.recordFailure(SERVER_URL);
+		connectivityMonitor.recordSuccess(SERVER_URL);
+		connectivityMonitor.recordFailure(SERVER_URL);
+		assertTrue(connectivityMonitor.isHostUp(SERVER_URL));
+	}
+
+	@Test
+	public void isServerAvailable_shouldTrackHostsSeparately() {
+		connectivityMonitor.reachable = false;
+		assertFalse(connectivityMonitor.isServerAvailable("http://no-server.exists.ug"));
+		connectivityMonitor.reachable = true;
+		assertTrue(connectivityMonitor.isServerAvailable(SERVER_URL));
+		assertEquals(2, connectivityMonitor.probes);
+	}
+
+	private static class TestConnectivityMonitor extends ConnectivityMonitor {
+
+		private int probes;
+
+		private boolean reachable = true;
+
+		private int cacheTtl = 60000;
+
+		@Override
+		protected boolean probe(String url) {
+			probes++;
+			return reachable;
+		}
+
+		@Override
+		protected int getCacheTtl() {
+			return cacheTtl;
+		}
+
+		@Override
+		protected int getFailureThreshold() {
+			return 3;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiredFhirResourcePurgerTest {
+
+    @Test
+    public void purge_shouldDeleteBatchesUntilNoExpiredResourcesAreLeft() {
+        TestExpiredFhirResourcePurger purger = new TestExpiredFhirResourcePurger(10, 60, new AtomicLong(1000000), 0, 10, 10, 4);
+
+        assertEquals(24, purger.purge(new Date()));
+        assertEquals(3, purger.getBatches());
+        assertTrue(purger.isCompleted());
+    }
+
+    @Test
+    public void purge_shouldStopOnceTheTimeBudgetIsUsedUp() {
+        TestExpiredFhirResourcePurger purger = new TestExpiredFhirResourcePurger(10, 60, new AtomicLong(1000000), 25000, 10, 10, 10, 10);
+
+        assertEquals(30, purger.purge(new Date()));
+        assertEquals(3, purger.getBatches());
+        assertFalse(purger.isCompleted());
+        assertEquals(0.4, purger.getResourcesPerSecond(), 0.001);
+    }
+
+    private static class TestExpiredFhirResourcePurger extends ExpiredFhirResourcePurger {
+
+        private final Queue<Integer> batches = new LinkedList<>();
+
+        private final AtomicLong now;
+
+        private final long batchDuration;
+
+        TestExpiredFhirResourcePurger(int batchSize, int timeBudget, AtomicLong now, long batchDuration, Integer... batches) {
+            super(batchSize, timeBudget, now::get);
+            this.now = now;
+            this.batchDuration = batchDuration;
+            for (Integer batch : batches) {
+                this.batches.add(batch);
+            }
+        }
+
+        @Override
+        protected int purgeBatch(Date date, int batchSize) {
+            now.addAndGet(batchDuration);
+            Integer batch = batches.poll();
+            return batch == null ? 0 : batch;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FhirSerializerTest {
+
+	private final FhirSerializer fhirSerializer = new FhirSerializer();
+
+	@Test
+	public void getJsonParser_shouldReuseTheParserWithinAThread() {
+		assertSame(fhirSerializer.getJsonParser(), fhirSerializer.getJsonParser());
+	}
+
+	@Test
+	public void getJsonParser_shouldGiveEachThreadItsOwnParser() throws InterruptedException {
+		AtomicReference<IParser> otherThreadParser = new AtomicReference<>();
+		Thread thread = new Thread(() -> otherThreadParser.set(fhirSerializer.getJsonParser()));
+		thread.start();
+		thread.join();
+
+		assertNotSame(fhirSerializer.getJsonParser(), otherThreadParser.get());
+	}
+
+	@Test
+	public void encodeResourceToString_shouldEncodeTheResourceAsJson() {
+		Patient patient = new Patient();
+		patient.setId("8d8718c2-c2cc-11de-8d13-0010c6dffd0f");
+		patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+
+		String json = fhirSerializer.encodeResourceToString(patient);
+
+		assertTrue(json.contains("\"resourceType\":\"Patient\""));
+		assertTrue(json.contains("\"gender\":\"female\""));
+	}
+}
@@ -0,0 +1,54 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SendRetryPolicyTest {
+
+    private static final long NOW = 1000000;
+
+    private final SendRetryPolicy sendRetryPolicy = new SendRetryPolicy(60, 300, 3600, () -> NOW);
+
+    @Test
+    public void classify_shouldSeparateNetworkServerAndClientErrors() {
+        assertEquals(SendRetryPolicy.ErrorClass.NETWORK, SendRetryPolicy.classify(null));
+        assertEquals(SendRetryPolicy.ErrorClass.NETWORK, SendRetryPolicy.classify(new HashMap()));
+        assertEquals(SendRetryPolicy.ErrorClass.SERVER_ERROR, SendRetryPolicy.classify(response(503)));
+        assertEquals(SendRetryPolicy.ErrorClass.SERVER_ERROR, SendRetryPolicy.classify(response(429)));
+        assertEquals(SendRetryPolicy.ErrorClass.CLIENT_ERROR, SendRetryPolicy.classify(response(400)));
+        assertEquals(SendRetryPolicy.ErrorClass.CLIENT_ERROR, SendRetryPolicy.classify(response(422)));
+    }
+
+    @Test
+    public void getBackoff_shouldDoubleWithEachAttemptUpToTheMaximum() {
+        assertEquals(60000, sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.NETWORK, 1));
+        assertEquals(240000, sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.NETWORK, 3));
+        assertEquals(60000L * SendRetryPolicy.MAX_BACKOFF_FACTOR, sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.NETWORK, 50));
+    }
+
+    @Test
+    public void getBackoff_shouldBackOffLongerFromClientErrorsThanFromServerErrors() {
+        assertTrue(sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.CLIENT_ERROR, 1) > sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.SERVER_ERROR, 1));
+        assertTrue(sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.SERVER_ERROR, 1) > sendRetryPolicy.getBackoff(SendRetryPolicy.ErrorClass.NETWORK, 1));
+    }
+
+    @Test
+    public void getNextAttemptDate_shouldBeWithinTheJitteredBackoff() {
+        for (int i = 0; i < 20; i++) {
+            Date nextAttemptDate = sendRetryPolicy.getNextAttemptDate(SendRetryPolicy.ErrorClass.SERVER_ERROR, 2);
+            long backoff = nextAttemptDate.getTime() - NOW;
+            assertTrue(backoff >= 300000 && backoff <= 600000);
+        }
+    }
+
+    private static Map response(int responseCode) {
+        return Collections.singletonMap("responseCode", responseCode);
+    }
+}
@@ -0,0 +1,40 @@
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransferStatisticsTest {
+
+	@Test
+	public void getBytesSaved_shouldReturnTheDifferenceBetweenContentAndSentBytes() {
+		TransferStatistics transferStatistics = new TransferStatistics("https://ugisl.mets.or.ug/fhir");
+		transferStatistics.record(10000, 1000, 200, 100);
+		transferStatistics.record(5000, 500, -1, 50);
+
+		assertEquals(2, transferStatistics.getRequests());
+		assertEquals(13500, transferStatistics.getBytesSaved());
+		assertEquals(200, transferStatistics.getReceivedBytes());
+	}
+
+	@Test
+	public void getEstimatedTimeSaved_shouldUseTheObservedThroughput() {
+		TransferStatistics transferStatistics = new TransferStatistics("https://ugisl.mets.or.ug/fhir");
+		transferStatistics.record(10000, 1000, 0, 100);
+
+		assertEquals(900, transferStatistics.getEstimatedTimeSaved());
+	}
+
+	@Test
+	public void add_shouldAccumulateRuns() {
+		TransferStatistics total = new TransferStatistics("https://ugisl.mets.or.ug/fhir");
+		TransferStatistics run = new TransferStatistics("https://ugisl.mets.or.ug/fhir");
+		run.record(1000, 1000, 10, 20);
+		total.add(run);
+		total.add(run);
+
+		assertEquals(2, total.getRequests());
+		assertEquals(2000, total.getSentBytes());
+		assertEquals(40, total.getTransferTime());
+	}
+}
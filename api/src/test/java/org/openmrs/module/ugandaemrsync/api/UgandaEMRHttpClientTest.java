@@ -0,0 +1,79 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.ugandaemrsync.api;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.io.IOException;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_HTTP_MAX_CONNECTIONS_TOTAL;
+
+public class UgandaEMRHttpClientTest extends BaseModuleContextSensitiveTest {
+
+    private UgandaEMRHttpClient ugandaEMRHttpClient;
+
+    @Before
+    public void setUp() {
+        ugandaEMRHttpClient = Context.getRegisteredComponent("ugandaemrsync.UgandaEMRHttpClient", UgandaEMRHttpClient.class);
+        Context.getAdministrationService().addGlobalPropertyListener(ugandaEMRHttpClient);
+    }
+
+    @After
+    public void tearDown() {
+        Context.getAdministrationService().removeGlobalPropertyListener(ugandaEMRHttpClient);
+        ugandaEMRHttpClient.shutdown();
+    }
+
+    @Test
+    public void getHttpClient_shouldReuseThePoolUntilItIsShutDown() throws Exception {
+        CloseableHttpClient httpClient = ugandaEMRHttpClient.getHttpClient();
+        Assert.assertSame(httpClient, ugandaEMRHttpClient.getHttpClient());
+
+        ugandaEMRHttpClient.shutdown();
+
+        CloseableHttpClient rebuiltHttpClient = ugandaEMRHttpClient.getHttpClient();
+        Assert.assertNotNull(rebuiltHttpClient);
+        Assert.assertNotSame(httpClient, rebuiltHttpClient);
+    }
+
+    @Test
+    public void getHttpClient_shouldRebuildThePoolWhenAnHttpGlobalPropertyChanges() throws Exception {
+        CloseableHttpClient httpClient = ugandaEMRHttpClient.getHttpClient();
+
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("ugandaemrsync.unrelated", "1"));
+        Assert.assertSame(httpClient, ugandaEMRHttpClient.getHttpClient());
+
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty(GP_HTTP_MAX_CONNECTIONS_TOTAL, "7"));
+        Assert.assertNotSame(httpClient, ugandaEMRHttpClient.getHttpClient());
+    }
+
+    @Test
+    public void getHttpClient_shouldKeepTheReplacedPoolOpenForCallersHoldingIt() throws Exception {
+        CloseableHttpClient httpClient = ugandaEMRHttpClient.getHttpClient();
+
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty(GP_HTTP_MAX_CONNECTIONS_TOTAL, "7"));
+        Assert.assertNotSame(httpClient, ugandaEMRHttpClient.getHttpClient());
+
+        // a closed pool throws an IllegalStateException before connecting, an open one fails to connect
+        try {
+            httpClient.execute(new HttpGet("http://localhost:1/")).close();
+        } catch (IOException e) {
+            Assert.assertFalse(e.getMessage().contains("shut down"));
+        }
+    }
+}
@@ -21,17 +21,25 @@ import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
+import org.openmrs.module.ugandaemrsync.model.SyncChangeEvent;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirCase;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirGenerationCursor;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfileLog;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResourceArchive;
+import org.openmrs.module.ugandaemrsync.model.SyncOutboxItem;
 import org.openmrs.module.ugandaemrsync.server.SyncConstant;
 import org.openmrs.module.ugandaemrsync.server.SyncGlobalProperties;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.openmrs.module.ugandaemrsync.server.SyncConstant.FHIR_FILTER_OBJECT_STRING;
@@ -151,6 +159,28 @@ public class UgandaEMRSyncServiceTest extends BaseModuleContextSensitiveTest {
         Assert.assertEquals(1, syncTask.size());
     }
 
+    @Test
+    public void getSyncTasksBySyncTaskIdAndType_shouldOnlyReturnSyncTasksOfTheType() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID);
+        SyncTaskType otherSyncTaskType = ugandaEMRSyncService.getAllSyncTaskType().stream().filter(type -> !type.equals(syncTaskType)).findFirst().get();
+
+        Assert.assertEquals(1, ugandaEMRSyncService.getSyncTasksBySyncTaskIdAndType("1234", syncTaskType).size());
+        Assert.assertEquals(0, ugandaEMRSyncService.getSyncTasksBySyncTaskIdAndType("1234", otherSyncTaskType).size());
+    }
+
+    @Test
+    public void getSyncTasksBySyncTaskIds_shouldReturnTheSyncTasksOfAllMatchingSyncTaskIds() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID);
+
+        List<SyncTask> syncTasks = ugandaEMRSyncService.getSyncTasksBySyncTaskIds(Arrays.asList("1234", "5678"), Collections.singletonList(syncTaskType));
+
+        Assert.assertEquals(1, syncTasks.size());
+        Assert.assertEquals("1234", syncTasks.get(0).getSyncTask());
+        Assert.assertTrue(ugandaEMRSyncService.getSyncTasksBySyncTaskIds(Collections.emptyList(), Collections.singletonList(syncTaskType)).isEmpty());
+    }
+
     @Test
     public void getSyncTaskBySyncTaskId_ShouldReturnSyncTask() {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
@@ -301,6 +331,28 @@ public class UgandaEMRSyncServiceTest extends BaseModuleContextSensitiveTest {
         Assert.assertEquals("Example Profile", syncFhirResources.get(0).getGeneratorProfile().getName());
     }
 
+    @Test
+    public void saveFHIRResources_shouldSaveResourcesInBatches() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        int resourcesBeforeSave = ugandaEMRSyncService.getSyncFHIRResourceBySyncFhirProfile(syncFhirProfile, false).size();
+
+        List<SyncFhirResource> syncFhirResources = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            SyncFhirResource syncFhirResource = new SyncFhirResource();
+            syncFhirResource.setGeneratorProfile(syncFhirProfile);
+            syncFhirResource.setResource("{\"resourceType\":\"Bundle\",\"id\":\"" + i + "\"}");
+            syncFhirResource.setSynced(false);
+            syncFhirResources.add(syncFhirResource);
+        }
+
+        List<SyncFhirResource> savedResources = ugandaEMRSyncService.saveFHIRResources(syncFhirResources);
+
+        Assert.assertEquals(120, savedResources.size());
+        Assert.assertTrue(savedResources.stream().allMatch(syncFhirResource -> syncFhirResource.getResourceId() > 0 && syncFhirResource.getDateCreated() != null));
+        Assert.assertEquals(resourcesBeforeSave + 120, ugandaEMRSyncService.getSyncFHIRResourceBySyncFhirProfile(syncFhirProfile, false).size());
+    }
+
     @Test
     public void getSyncFHIRResourceById_shouldGetResources() {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
@@ -390,6 +442,296 @@ public class UgandaEMRSyncServiceTest extends BaseModuleContextSensitiveTest {
         Assert.assertNotNull("ART-MALE-1", syncFhirCase1.getCaseIdentifier());
     }
 
+    @Test
+    public void getNewSyncFhirCaseCandidates_shouldOnlyReturnCandidatesWithoutACase() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+
+        List<Object[]> candidates = ugandaEMRSyncService.getNewSyncFhirCaseCandidates(syncFhirProfile,
+                "select 2 as patient_id, 'ART-MALE-1' as case_identifier union select 7 as patient_id, 'ART-FEMALE-2' as case_identifier", null);
+
+        Assert.assertEquals(1, candidates.size());
+        Assert.assertEquals(7, candidates.get(0)[0]);
+        Assert.assertEquals("ART-FEMALE-2", candidates.get(0)[1]);
+    }
+
+    @Test
+    public void saveSyncFHIRCases_shouldSaveAllCases() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        int numberOfCases = ugandaEMRSyncService.getSyncFhirCasesByProfile(syncFhirProfile).size();
+
+        List<SyncFhirCase> syncFhirCases = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            SyncFhirCase syncFhirCase = new SyncFhirCase();
+            syncFhirCase.setPatient(Context.getPatientService().getPatient(7));
+            syncFhirCase.setProfile(syncFhirProfile);
+            syncFhirCase.setCaseIdentifier("CASE-" + i);
+            syncFhirCases.add(syncFhirCase);
+        }
+
+        ugandaEMRSyncService.saveSyncFHIRCases(syncFhirCases);
+
+        Assert.assertNotNull(syncFhirCases.get(59).getCaseId());
+        Assert.assertNotNull(syncFhirCases.get(59).getUuid());
+        Assert.assertEquals(numberOfCases + 60, ugandaEMRSyncService.getSyncFhirCasesByProfile(syncFhirProfile).size());
+    }
+
+    @Test
+    public void getChangedSyncFhirCasesByProfile_shouldOnlyReturnCasesChangedSinceLastUpdate() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        SyncFhirCase syncFhirCase = ugandaEMRSyncService.getSyncFhirCaseById(1);
+
+        syncFhirCase.setLastUpdateDate(new SimpleDateFormat("yyyy-MM-dd").parse("2100-01-01"));
+        ugandaEMRSyncService.saveSyncFHIRCase(syncFhirCase);
+        Context.flushSession();
+        Assert.assertFalse(ugandaEMRSyncService.getChangedSyncFhirCasesByProfile(syncFhirProfile).contains(syncFhirCase));
+
+        syncFhirCase.setLastUpdateDate(new SimpleDateFormat("yyyy-MM-dd").parse("1900-01-01"));
+        ugandaEMRSyncService.saveSyncFHIRCase(syncFhirCase);
+        Context.flushSession();
+        Assert.assertTrue(ugandaEMRSyncService.getChangedSyncFhirCasesByProfile(syncFhirProfile).contains(syncFhirCase));
+    }
+
+    @Test
+    public void getChangedSyncFhirCaseIdsByProfile_shouldReturnTheIdsOfTheChangedCases() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        SyncFhirCase syncFhirCase = ugandaEMRSyncService.getSyncFhirCaseById(1);
+
+        syncFhirCase.setLastUpdateDate(new SimpleDateFormat("yyyy-MM-dd").parse("2100-01-01"));
+        ugandaEMRSyncService.saveSyncFHIRCase(syncFhirCase);
+        Context.flushSession();
+        Assert.assertFalse(ugandaEMRSyncService.getChangedSyncFhirCaseIdsByProfile(syncFhirProfile).contains(syncFhirCase.getCaseId()));
+
+        syncFhirCase.setLastUpdateDate(new SimpleDateFormat("yyyy-MM-dd").parse("1900-01-01"));
+        ugandaEMRSyncService.saveSyncFHIRCase(syncFhirCase);
+        Context.flushSession();
+        List<Integer> changedCaseIds = ugandaEMRSyncService.getChangedSyncFhirCaseIdsByProfile(syncFhirProfile);
+        Assert.assertEquals(ugandaEMRSyncService.getChangedSyncFhirCasesByProfile(syncFhirProfile).stream().map(SyncFhirCase::getCaseId).collect(Collectors.toSet()), changedCaseIds.stream().collect(Collectors.toSet()));
+        Assert.assertTrue(changedCaseIds.contains(syncFhirCase.getCaseId()));
+    }
+
+    @Test
+    public void getEncountersAfterCursor_shouldReturnTheEncountersAfterTheSavedCursorPageByPage() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+
+        SyncFhirGenerationCursor syncFhirGenerationCursor = new SyncFhirGenerationCursor();
+        syncFhirGenerationCursor.setProfile(syncFhirProfile);
+        syncFhirGenerationCursor.setResourceType("Encounter");
+        syncFhirGenerationCursor.setLastDateChanged(new SimpleDateFormat("yyyy-MM-dd").parse("1900-01-01"));
+        syncFhirGenerationCursor.setLastId(0);
+
+        List<Object[]> firstPage = ugandaEMRSyncService.getEncountersAfterCursor(syncFhirGenerationCursor, new Date(), null, 2);
+        Assert.assertEquals(2, firstPage.size());
+
+        syncFhirGenerationCursor.setLastId((Integer) firstPage.get(1)[0]);
+        syncFhirGenerationCursor.setLastDateChanged((Date) firstPage.get(1)[1]);
+        ugandaEMRSyncService.saveFHIRResourcesAndCursor(new ArrayList<>(), syncFhirGenerationCursor);
+        Context.flushSession();
+
+        SyncFhirGenerationCursor savedCursor = ugandaEMRSyncService.getSyncFhirGenerationCursor(syncFhirProfile, "Encounter");
+        Assert.assertEquals(firstPage.get(1)[0], savedCursor.getLastId());
+
+        List<Object[]> secondPage = ugandaEMRSyncService.getEncountersAfterCursor(savedCursor, new Date(), null, 2);
+        Assert.assertFalse(secondPage.isEmpty());
+        for (Object[] encounter : secondPage) {
+            Assert.assertNotEquals(firstPage.get(0)[0], encounter[0]);
+            Assert.assertNotEquals(firstPage.get(1)[0], encounter[0]);
+        }
+    }
+
+    @Test
+    public void getEncountersAfterCursor_shouldMergeChangedAndNeverChangedEncountersInTheOrderTheyWereLastChanged() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        Context.getAdministrationService().executeSQL("update encounter set date_changed = '1901-01-01' where encounter_id = 1000", false);
+
+        SyncFhirGenerationCursor syncFhirGenerationCursor = new SyncFhirGenerationCursor();
+        syncFhirGenerationCursor.setProfile(syncFhirProfile);
+        syncFhirGenerationCursor.setResourceType("Encounter");
+        syncFhirGenerationCursor.setLastDateChanged(dateFormat.parse("1900-01-01"));
+        syncFhirGenerationCursor.setLastId(0);
+
+        List<Object[]> encounters = ugandaEMRSyncService.getEncountersAfterCursor(syncFhirGenerationCursor, new Date(), null, 3);
+        Assert.assertEquals(3, encounters.size());
+        Assert.assertEquals(1000, encounters.get(0)[0]);
+        Assert.assertEquals(dateFormat.parse("1901-01-01"), new Date(((Date) encounters.get(0)[1]).getTime()));
+        for (int i = 1; i < encounters.size(); i++) {
+            Date previous = (Date) encounters.get(i - 1)[1];
+            Date current = (Date) encounters.get(i)[1];
+            Assert.assertTrue(previous.before(current) || (previous.equals(current) && (Integer) encounters.get(i - 1)[0] < (Integer) encounters.get(i)[0]));
+        }
+    }
+
+    @Test
+    public void getChangedSyncFhirCasesByProfile_shouldUseCapturedChangesForCasesUpdatedAfterCaptureStarted() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        SyncFhirCase syncFhirCase = ugandaEMRSyncService.getSyncFhirCaseById(1);
+        Integer patientId = syncFhirCase.getPatient().getPatientId();
+
+        insertSyncChangeEvent(SyncChangeEvent.ENTITY_TYPE_PATIENT, patientId, patientId, "2100-01-01");
+        syncFhirCase.setLastUpdateDate(dateFormat.parse("2100-01-02"));
+        ugandaEMRSyncService.saveSyncFHIRCase(syncFhirCase);
+        Context.flushSession();
+        Assert.assertFalse(ugandaEMRSyncService.getChangedSyncFhirCasesByProfile(syncFhirProfile).contains(syncFhirCase));
+
+        insertSyncChangeEvent(SyncChangeEvent.ENTITY_TYPE_PATIENT, patientId, patientId, "2100-01-03");
+        Context.flushSession();
+        Assert.assertTrue(ugandaEMRSyncService.getChangedSyncFhirCasesByProfile(syncFhirProfile).contains(syncFhirCase));
+    }
+
+    @Test
+    public void purgeSyncChangeEvents_shouldDeleteChangesCapturedBeforeTheDate() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+        insertSyncChangeEvent(SyncChangeEvent.ENTITY_TYPE_PATIENT, 7, 7, "2024-01-01");
+        insertSyncChangeEvent(SyncChangeEvent.ENTITY_TYPE_PATIENT, 7, 7, "2024-03-01");
+        Context.flushSession();
+
+        Assert.assertEquals(1, ugandaEMRSyncService.purgeSyncChangeEvents(dateFormat.parse("2024-02-01")));
+        Assert.assertEquals(dateFormat.parse("2024-03-01"), ugandaEMRSyncService.getOldestSyncChangeEventDate());
+    }
+
+    private void insertSyncChangeEvent(String entityType, Integer entityId, Integer patient, String dateCreated) {
+        // saveSyncChangeEvent commits in a transaction of its own, so the events are inserted in the transaction of the
+        // test to be rolled back with it
+        Context.getAdministrationService().executeSQL("insert into sync_change_event (entity_type, entity_id, patient, date_created) values ('"
+                + entityType + "', " + entityId + ", " + patient + ", '" + dateCreated + " 00:00:00')", false);
+    }
+
+    @Test
+    public void purgeExpiredSyncFhirResources_shouldDeleteABatchOfExpiredResources() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        Date date = new SimpleDateFormat("yyyy-MM-dd").parse("2022-01-01");
+
+        Assert.assertEquals(1, ugandaEMRSyncService.purgeExpiredSyncFhirResources(date, 10));
+        Assert.assertEquals(0, ugandaEMRSyncService.purgeExpiredSyncFhirResources(date, 10));
+        Context.clearSession();
+
+        Assert.assertNull(ugandaEMRSyncService.getSyncFHIRResourceById(5));
+        Assert.assertNotNull(ugandaEMRSyncService.getSyncFHIRResourceById(2));
+    }
+
+    @Test
+    public void purgeExpiredSyncFhirResources_shouldDeleteAllExpiredResourcesWhenNoLimitIsGiven() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        Date date = new SimpleDateFormat("yyyy-MM-dd").parse("2022-01-01");
+
+        Assert.assertEquals(1, ugandaEMRSyncService.getExpiredSyncFHIRResources(date).size());
+        Assert.assertEquals(1, ugandaEMRSyncService.purgeExpiredSyncFhirResources(date, null));
+        Context.clearSession();
+
+        Assert.assertEquals(0, ugandaEMRSyncService.getExpiredSyncFHIRResources(date).size());
+    }
+
+    @Test
+    public void archiveSyncedFhirResources_shouldMoveResourcesSyncedBeforeTheDateToTheArchive() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileById(1);
+        Map<Integer, Integer> countsBeforeArchiving = ugandaEMRSyncService.getSyncedFhirResourceCountsByStatusCode(syncFhirProfile, dateFormat.parse("2021-01-01"), dateFormat.parse("2022-01-01"));
+
+        Assert.assertEquals(2, ugandaEMRSyncService.archiveSyncedFhirResources(dateFormat.parse("2021-05-15"), 10, true));
+        Context.clearSession();
+
+        Assert.assertNull(ugandaEMRSyncService.getSyncFHIRResourceById(4));
+        Assert.assertNotNull(ugandaEMRSyncService.getSyncFHIRResourceById(2));
+        List<SyncFhirResourceArchive> syncFhirResourceArchives = ugandaEMRSyncService.getSyncFhirResourceArchives(syncFhirProfile, dateFormat.parse("2021-05-18"), dateFormat.parse("2021-05-19"));
+        Assert.assertEquals(2, syncFhirResourceArchives.size());
+        for (SyncFhirResourceArchive syncFhirResourceArchive : syncFhirResourceArchives) {
+            Assert.assertTrue(syncFhirResourceArchive.getResource().contains("Bundle"));
+        }
+        Assert.assertEquals(countsBeforeArchiving, ugandaEMRSyncService.getSyncedFhirResourceCountsByStatusCode(syncFhirProfile, dateFormat.parse("2021-01-01"), dateFormat.parse("2022-01-01")));
+
+        Assert.assertEquals(1, ugandaEMRSyncService.purgeExpiredSyncFhirResources(dateFormat.parse("2022-01-01"), 10));
+    }
+
+    @Test
+    public void claimSyncOutboxItems_shouldSkipItemsLeasedByAnotherSender() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        List<SyncFhirResource> syncFhirResources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            SyncFhirResource syncFhirResource = new SyncFhirResource();
+            syncFhirResource.setGeneratorProfile(syncFhirProfile);
+            syncFhirResource.setResource("{\"resourceType\":\"Bundle\",\"id\":\"" + i + "\"}");
+            syncFhirResource.setSynced(false);
+            syncFhirResources.add(syncFhirResource);
+        }
+        ugandaEMRSyncService.saveFHIRResources(syncFhirResources);
+        Context.clearSession();
+
+        List<SyncOutboxItem> claimedByFirstSender = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirProfile.getSyncFhirProfileId(), null, "first", 600, 2);
+        Assert.assertEquals(2, claimedByFirstSender.size());
+        Assert.assertEquals(Integer.valueOf(syncFhirResources.get(0).getResourceId()), claimedByFirstSender.get(0).getItemId());
+
+        List<SyncOutboxItem> claimedBySecondSender = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirProfile.getSyncFhirProfileId(), null, "second", 600, 10);
+        Assert.assertEquals(1, claimedBySecondSender.size());
+        Assert.assertEquals(Integer.valueOf(syncFhirResources.get(2).getResourceId()), claimedBySecondSender.get(0).getItemId());
+
+        List<Integer> firstSenderItemIds = claimedByFirstSender.stream().map(SyncOutboxItem::getOutboxItemId).collect(Collectors.toList());
+        Assert.assertEquals(0, ugandaEMRSyncService.completeSyncOutboxItems("second", firstSenderItemIds));
+        Assert.assertEquals(1, ugandaEMRSyncService.completeSyncOutboxItems("first", firstSenderItemIds.subList(0, 1)));
+        Assert.assertEquals(1, ugandaEMRSyncService.releaseSyncOutboxItems("first", firstSenderItemIds.subList(1, 2), true));
+        Context.clearSession();
+
+        List<SyncOutboxItem> claimedAfterRelease = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirProfile.getSyncFhirProfileId(), null, "second", 600, 10);
+        Assert.assertEquals(1, claimedAfterRelease.size());
+        Assert.assertEquals(firstSenderItemIds.get(1), claimedAfterRelease.get(0).getOutboxItemId());
+        Assert.assertEquals(Integer.valueOf(1), claimedAfterRelease.get(0).getAttempts());
+    }
+
+    @Test
+    public void saveSyncTask_shouldQueueTheViralLoadResultOfASentSample() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID(VIRAL_LOAD_SYNC_TYPE_UUID);
+        SyncTask syncTask = new SyncTask();
+        syncTask.setDateSent(new Date());
+        syncTask.setCreator(Context.getUserService().getUser(1));
+        syncTask.setSentToUrl(syncTaskType.getUrl());
+        syncTask.setRequireAction(true);
+        syncTask.setActionCompleted(false);
+        syncTask.setSyncTask("5678");
+        syncTask.setStatusCode(200);
+        syncTask.setStatus("SUCCESS");
+        syncTask.setSyncTaskType(syncTaskType);
+        ugandaEMRSyncService.saveSyncTask(syncTask);
+        Context.clearSession();
+
+        List<SyncOutboxItem> syncOutboxItems = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_VIRAL_LOAD_RESULT, null, null, "receiver", 600, 10);
+        Assert.assertEquals(1, syncOutboxItems.size());
+        Assert.assertEquals(Integer.valueOf(syncTask.getId()), syncOutboxItems.get(0).getItemId());
+    }
+
+    @Test
+    public void rescheduleSyncOutboxItems_shouldNotClaimItemsBeforeTheirNextAttempt() {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("c91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        SyncFhirResource syncFhirResource = new SyncFhirResource();
+        syncFhirResource.setGeneratorProfile(syncFhirProfile);
+        syncFhirResource.setResource("{\"resourceType\":\"Bundle\"}");
+        syncFhirResource.setSynced(false);
+        ugandaEMRSyncService.saveFHIRResource(syncFhirResource);
+        Context.clearSession();
+
+        SyncOutboxItem syncOutboxItem = ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirProfile.getSyncFhirProfileId(), null, "sender", 600, 10).get(0);
+        Context.evictFromSession(syncOutboxItem);
+        syncOutboxItem.setAttempts(1);
+        syncOutboxItem.setLastErrorClass(SendRetryPolicy.ErrorClass.CLIENT_ERROR.name());
+        syncOutboxItem.setNextAttemptAt(new Date(System.currentTimeMillis() + 3600000));
+        Assert.assertEquals(1, ugandaEMRSyncService.rescheduleSyncOutboxItems("sender", Collections.singletonList(syncOutboxItem)));
+        Context.clearSession();
+
+        Assert.assertTrue(ugandaEMRSyncService.claimSyncOutboxItems(SyncOutboxItem.ITEM_TYPE_FHIR_RESOURCE, syncFhirProfile.getSyncFhirProfileId(), null, "sender", 600, 10).isEmpty());
+    }
+
     @Test
     public void addTestResultsToEncounter_shouldSaveCD4ResultsToEncounter() {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
@@ -0,0 +1,49 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AddressKeyMapperTest {
+
+    private static final String PATIENT = "{\"resourceType\":\"Patient\",\"name\":[{\"family\":\"Statesman\"}],\"address\":[{\"extension\":[{\"url\":\"http://fhir.openmrs.org/ext/address\",\"extension\":[{\"url\":\"http://fhir.openmrs.org/ext/address#address5\",\"valueString\":\"Kisugu\"},{\"url\":\"http://fhir.openmrs.org/ext/address#address4\",\"valueString\":\"address4 parish\"}]}],\"district\":\"Kampala\",\"state\":\"Central\"}]}";
+
+    @Test
+    public void transform_shouldRenameAddressFieldsAndExtensions() {
+        JSONObject patient = new JSONObject(PATIENT);
+
+        AddressKeyMapper.fromMapping(null).transform(patient);
+
+        JSONObject address = patient.getJSONArray("address").getJSONObject(0);
+        JSONObject addressExtension = address.getJSONArray("extension").getJSONObject(0);
+        Assert.assertEquals("Central", address.getString("city"));
+        Assert.assertFalse(address.has("state"));
+        Assert.assertEquals("http://fhir.openmrs.org/ext/address", addressExtension.getString("url"));
+        Assert.assertEquals("http://fhir.openmrs.org/ext/address#village", addressExtension.getJSONArray("extension").getJSONObject(0).getString("url"));
+        Assert.assertEquals("http://fhir.openmrs.org/ext/address#parish", addressExtension.getJSONArray("extension").getJSONObject(1).getString("url"));
+    }
+
+    @Test
+    public void transform_shouldNotChangeValuesOrFieldsOutsideTheAddress() {
+        JSONObject patient = new JSONObject(PATIENT);
+
+        AddressKeyMapper.fromMapping(null).transform(patient);
+
+        Assert.assertEquals("Statesman", patient.getJSONArray("name").getJSONObject(0).getString("family"));
+        Assert.assertEquals("address4 parish", patient.getJSONArray("address").getJSONObject(0).getJSONArray("extension").getJSONObject(0).getJSONArray("extension").getJSONObject(1).getString("valueString"));
+    }
+
+    @Test
+    public void fromMapping_shouldUseTheGivenMapping() {
+        JSONObject patient = new JSONObject(PATIENT);
+
+        AddressKeyMapper addressKeyMapper = AddressKeyMapper.fromMapping("address5 = cell, district=county, invalid");
+        addressKeyMapper.transform(patient);
+
+        JSONObject address = patient.getJSONArray("address").getJSONObject(0);
+        Assert.assertEquals(2, addressKeyMapper.getMapping().size());
+        Assert.assertEquals("Kampala", address.getString("county"));
+        Assert.assertEquals("Central", address.getString("state"));
+        Assert.assertEquals("http://fhir.openmrs.org/ext/address#cell", address.getJSONArray("extension").getJSONObject(0).getJSONArray("extension").getJSONObject(0).getString("url"));
+    }
+}
@@ -0,0 +1,44 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FhirResourceBundleWriterTest {
+
+    @Test
+    public void write_shouldHandOverEachBundleWhenItIsFull() {
+        List<String> bundles = new ArrayList<>();
+        FhirResourceBundleWriter fhirResourceBundleWriter = new FhirResourceBundleWriter(2, bundles::add);
+
+        fhirResourceBundleWriter.write("{\"resource\":1}");
+        fhirResourceBundleWriter.write("{\"resource\":2}");
+        Assert.assertEquals(1, bundles.size());
+
+        fhirResourceBundleWriter.write("{\"resource\":3}");
+        fhirResourceBundleWriter.write("");
+        fhirResourceBundleWriter.close();
+
+        Assert.assertEquals(2, bundles.size());
+        Assert.assertEquals(3, fhirResourceBundleWriter.getNumberOfResources());
+        Assert.assertEquals("Bundle", new JSONObject(bundles.get(0)).getString("resourceType"));
+        Assert.assertEquals(2, new JSONObject(bundles.get(0)).getJSONArray("entry").getJSONArray(0).length());
+        Assert.assertEquals(1, new JSONObject(bundles.get(1)).getJSONArray("entry").getJSONArray(0).length());
+    }
+
+    @Test
+    public void close_shouldNotHandOverAnEmptyBundle() {
+        List<String> bundles = new ArrayList<>();
+        FhirResourceBundleWriter fhirResourceBundleWriter = new FhirResourceBundleWriter(2, bundles::add);
+
+        fhirResourceBundleWriter.write("{\"resource\":1}");
+        fhirResourceBundleWriter.write("{\"resource\":2}");
+        fhirResourceBundleWriter.close();
+
+        Assert.assertEquals(1, bundles.size());
+        Assert.assertEquals(1, fhirResourceBundleWriter.getNumberOfBundles());
+    }
+}
@@ -0,0 +1,40 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FhirResourcePagerTest {
+
+    @Test
+    public void fromUuids_shouldFetchOnePageAtATime() {
+        List<Integer> pageSizes = new ArrayList<>();
+        FhirResourcePager fhirResourcePager = FhirResourcePager.fromUuids(Arrays.asList("a", "b", "c", "missing", "e"), 2, uuids -> {
+            pageSizes.add(uuids.size());
+            return getPatients(uuids);
+        });
+
+        List<String> ids = new ArrayList<>();
+        for (IBaseResource iBaseResource : fhirResourcePager) {
+            ids.add(iBaseResource.getIdElement().getIdPart());
+        }
+
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "e"), ids);
+        Assert.assertEquals(Arrays.asList(2, 2, 1), pageSizes);
+    }
+
+    private Collection<IBaseResource> getPatients(Collection<String> uuids) {
+        return uuids.stream().filter(uuid -> !uuid.equals("missing")).map(uuid -> {
+            Patient patient = new Patient();
+            patient.setId(uuid);
+            return patient;
+        }).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,31 @@
+package org.openmrs.module.ugandaemrsync.server;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FhirResourceTransformPipelineTest {
+
+    @Test
+    public void transform_shouldApplyStepsInOrder() {
+        FhirResourceTransformPipeline pipeline = new FhirResourceTransformPipeline()
+                .addStep(resource -> resource.put("steps", resource.optString("steps") + "b"))
+                .addStep(resource -> resource.put("steps", resource.optString("steps") + "c"))
+                .addStep(0, resource -> resource.put("steps", resource.optString("steps") + "a"));
+
+        JSONObject resource = pipeline.transform(new JSONObject("{\"resourceType\":\"Patient\"}"));
+
+        Assert.assertEquals("abc", resource.getString("steps"));
+        Assert.assertEquals(3, pipeline.getSteps().size());
+    }
+
+    @Test
+    public void transform_shouldModifyTheSameTree() {
+        JSONObject resource = new JSONObject("{\"resourceType\":\"Patient\",\"contained\":[]}");
+
+        JSONObject transformed = new FhirResourceTransformPipeline().addStep(json -> json.remove("contained")).transform(resource);
+
+        Assert.assertSame(resource, transformed);
+        Assert.assertFalse(resource.has("contained"));
+    }
+}
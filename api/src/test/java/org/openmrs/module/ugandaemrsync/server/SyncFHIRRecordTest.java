@@ -8,6 +8,7 @@ import org.openmrs.Encounter;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirCase;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfileLog;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
@@ -15,8 +16,14 @@ import org.openmrs.test.BaseModuleContextSensitiveTest;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.openmrs.module.ugandaemrsync.UgandaEMRSyncConfig.GP_CASE_GENERATION_THREADS;
 
 public class SyncFHIRRecordTest extends BaseModuleContextSensitiveTest {
 
@@ -71,4 +78,81 @@ public class SyncFHIRRecordTest extends BaseModuleContextSensitiveTest {
         Assert.assertEquals(syncFhirResourcesBeforeSave.size() + 4, syncFhirResourcesAfterSave.size());
     }
 
+    @Test
+    public void generateCaseBasedFHIRResourceBundles_shouldSaveTheSameResourcesOnWorkerThreadsAsOnTheCallingThread() throws Exception {
+        UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
+        SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID("b91b12c3-65fe-4b1c-aba4-99e3a7e58cfa");
+        Set<String> generationThreads = ConcurrentHashMap.newKeySet();
+
+        new TestSyncFHIRRecord(generationThreads).identifyNewCases(syncFhirProfile, new Date());
+        for (int patientId = 10000; patientId < 10005; patientId++) {
+            SyncFhirCase syncFhirCase = new SyncFhirCase();
+            syncFhirCase.setProfile(syncFhirProfile);
+            syncFhirCase.setPatient(Context.getPatientService().getPatient(patientId));
+            syncFhirCase.setCaseIdentifier("CASE-" + patientId);
+            ugandaEMRSyncService.saveSyncFHIRCase(syncFhirCase);
+        }
+        Context.getAdministrationService().setGlobalProperty(GP_CASE_GENERATION_THREADS, "2");
+        Context.flushSession();
+        // the workers read the cases in sessions of their own, which only see committed data
+        getConnection().commit();
+        Context.clearSession();
+
+        try {
+            TestSyncFHIRRecord parallelSyncFHIRRecord = new TestSyncFHIRRecord(generationThreads);
+            parallelSyncFHIRRecord.setCaseResourceBatchSize(2);
+            parallelSyncFHIRRecord.generateCaseBasedFHIRResourceBundles(syncFhirProfile);
+            Context.clearSession();
+            List<String> parallelResources = getResources(ugandaEMRSyncService, syncFhirProfile);
+
+            Assert.assertTrue(generationThreads.size() > 1);
+            Assert.assertFalse(generationThreads.contains(Thread.currentThread().getName()));
+            Assert.assertTrue(parallelResources.size() >= 5);
+
+            Context.getAdministrationService().executeSQL("delete from sync_outbox where profile = " + syncFhirProfile.getId(), false);
+            Context.getAdministrationService().executeSQL("delete from sync_fhir_resource where generator_profile = " + syncFhirProfile.getId(), false);
+            Context.getAdministrationService().executeSQL("update sync_fhir_case set last_date_updated = null where profile = " + syncFhirProfile.getId(), false);
+            Context.getAdministrationService().setGlobalProperty(GP_CASE_GENERATION_THREADS, "1");
+            Context.flushSession();
+            Context.clearSession();
+            generationThreads.clear();
+
+            new TestSyncFHIRRecord(generationThreads).generateCaseBasedFHIRResourceBundles(syncFhirProfile);
+            Context.clearSession();
+
+            Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), generationThreads);
+            Assert.assertEquals(parallelResources, getResources(ugandaEMRSyncService, syncFhirProfile));
+        } finally {
+            deleteAllData();
+        }
+    }
+
+    private List<String> getResources(UgandaEMRSyncService ugandaEMRSyncService, SyncFhirProfile syncFhirProfile) {
+        return ugandaEMRSyncService.getSyncFHIRResourceBySyncFhirProfile(syncFhirProfile, false).stream().map(SyncFhirResource::getResource).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Generates a resource holding only the identifier of the case, and records the threads the resources were
+     * generated on
+     */
+    private static class TestSyncFHIRRecord extends SyncFHIRRecord {
+
+        private final Set<String> generationThreads;
+
+        TestSyncFHIRRecord(Set<String> generationThreads) {
+            this.generationThreads = generationThreads;
+        }
+
+        @Override
+        protected SyncFHIRRecord createCaseGenerationWorker() {
+            return new TestSyncFHIRRecord(generationThreads);
+        }
+
+        @Override
+        protected String generateFHIRCaseResource(SyncFhirProfile syncFhirProfile, SyncFhirCase syncFhirCase) {
+            generationThreads.add(Thread.currentThread().getName());
+            return "{\"resourceType\":\"Bundle\",\"id\":\"" + syncFhirCase.getCaseIdentifier() + "\"}";
+        }
+    }
+
 }
@@ -0,0 +1,85 @@
+package org.openmrs.module.ugandaemrsync.tasks;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Date;
+
+import static org.openmrs.module.ugandaemrsync.server.SyncConstant.PATIENT_IDENTIFIER_TYPE;
+
+public class ViralLoadProgramDataSnapshotTest {
+
+    private static Date date(String date) throws ParseException {
+        return DateUtils.parseDate(date, new String[]{"yyyy-MM-dd HH:mm"});
+    }
+
+    @Test
+    public void getLatestValueCoded_shouldReturnTheLatestAnswerOnOrBeforeTheDate() throws ParseException {
+        ViralLoadProgramDataSnapshot snapshot = new ViralLoadProgramDataSnapshot(2);
+        snapshot.addObs(90221, 3, date("2024-03-01 10:00"), 90158, null);
+        snapshot.addObs(90221, 1, date("2024-01-01 10:00"), 90156, null);
+        snapshot.addObs(90221, 2, date("2024-02-01 10:00"), 90157, null);
+
+        Assert.assertEquals(Integer.valueOf(90157), snapshot.getLatestValueCoded(90221, date("2024-02-15 08:00")));
+        Assert.assertEquals(Integer.valueOf(90158), snapshot.getLatestValueCoded(90221, date("2024-03-01 10:00")));
+        Assert.assertNull(snapshot.getLatestValueCoded(90221, date("2023-12-31 10:00")));
+        Assert.assertNull(snapshot.getLatestValueCoded(90203, date("2024-03-01 10:00")));
+    }
+
+    @Test
+    public void getLatestValueDate_shouldReturnTheDayOfTheLatestAnswer() throws ParseException {
+        ViralLoadProgramDataSnapshot snapshot = new ViralLoadProgramDataSnapshot(2);
+        snapshot.addObs(99161, 1, date("2024-01-01 10:00"), null, date("2020-06-15 13:45"));
+
+        Assert.assertEquals(date("2020-06-15 00:00"), snapshot.getLatestValueDate(99161, date("2024-02-01 10:00")));
+    }
+
+    @Test
+    public void getLatestRegimenDrugOrderConcept_shouldOnlyConsiderRegimenOrdersActivatedByTheDay() throws ParseException {
+        ViralLoadProgramDataSnapshot snapshot = new ViralLoadProgramDataSnapshot(2);
+        snapshot.addDrugOrder(1000, date("2024-01-01 10:00"), true);
+        snapshot.addDrugOrder(2000, date("2024-02-01 09:00"), false);
+        snapshot.addDrugOrder(3000, date("2024-02-01 18:00"), true);
+
+        Assert.assertEquals(Integer.valueOf(3000), snapshot.getLatestRegimenDrugOrderConcept(date("2024-02-01 08:00")));
+        Assert.assertEquals(Integer.valueOf(1000), snapshot.getLatestRegimenDrugOrderConcept(date("2024-01-31 08:00")));
+    }
+
+    @Test
+    public void getMonthsSinceFirstObs_shouldCountFromTheFirstObservationWithTheAnswer() throws ParseException {
+        ViralLoadProgramDataSnapshot snapshot = new ViralLoadProgramDataSnapshot(2);
+        snapshot.addObs(90315, 2, date("2023-06-01 10:00"), 1000, null);
+        snapshot.addObs(90315, 1, date("2022-01-01 10:00"), 2000, null);
+        snapshot.addObs(90315, 3, date("2023-09-01 10:00"), 1000, null);
+
+        Assert.assertEquals(Integer.valueOf(8), snapshot.getMonthsSinceFirstObs(90315, 1000, date("2024-02-15 10:00")));
+        Assert.assertNull(snapshot.getMonthsSinceFirstObs(90315, 0, date("2024-02-15 10:00")));
+    }
+
+    @Test
+    public void getRegimenLine_shouldPreferTheFirstThenTheThirdLine() {
+        ViralLoadProgramDataSnapshot snapshot = new ViralLoadProgramDataSnapshot(2);
+        Assert.assertEquals("", snapshot.getRegimenLine());
+
+        snapshot.addActiveRegimenLineState(ViralLoadProgramDataSnapshot.SECOND_LINE_STATE_UUID);
+        Assert.assertEquals(ViralLoadProgramDataSnapshot.SECOND_LINE, snapshot.getRegimenLine());
+
+        snapshot.addActiveRegimenLineState(ViralLoadProgramDataSnapshot.THIRD_LINE_STATE_UUID);
+        Assert.assertEquals(ViralLoadProgramDataSnapshot.THIRD_LINE, snapshot.getRegimenLine());
+
+        snapshot.addActiveRegimenLineState(ViralLoadProgramDataSnapshot.FIRST_LINE_STATE_UUID);
+        Assert.assertEquals(ViralLoadProgramDataSnapshot.FIRST_LINE, snapshot.getRegimenLine());
+    }
+
+    @Test
+    public void getIdentifier_shouldKeepTheFirstIdentifierOfAType() {
+        ViralLoadProgramDataSnapshot snapshot = new ViralLoadProgramDataSnapshot(2);
+        snapshot.addIdentifier(PATIENT_IDENTIFIER_TYPE, "ART-1");
+        snapshot.addIdentifier(PATIENT_IDENTIFIER_TYPE, "ART-2");
+
+        Assert.assertEquals("ART-1", snapshot.getIdentifier(PATIENT_IDENTIFIER_TYPE));
+        Assert.assertEquals("", snapshot.getIdentifier("unknown"));
+    }
+}
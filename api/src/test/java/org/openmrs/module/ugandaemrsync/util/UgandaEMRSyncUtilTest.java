@@ -0,0 +1,35 @@
+package org.openmrs.module.ugandaemrsync.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UgandaEMRSyncUtilTest {
+
+	private static final String ENTRY = "{\"fullUrl\":\"Observation/%d\",\"resource\":{\"resourceType\":\"Observation\",\"id\":\"%d\",\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"315124004\",\"display\":\"Viral load\"}]},\"subject\":{\"reference\":\"Patient/1\"},\"valueQuantity\":{\"value\":%d,\"unit\":\"copies/ml\"}}}";
+
+	@Test
+	public void decompress_shouldReturnTheCompressedResource() {
+		String resource = bundle(3) + "é";
+		assertEquals(resource, UgandaEMRSyncUtil.decompress(UgandaEMRSyncUtil.compress(resource)));
+	}
+
+	@Test
+	public void compress_shouldStoreABundleInLessThanAQuarterOfItsSize() {
+		String resource = bundle(50);
+		byte[] compressed = UgandaEMRSyncUtil.compress(resource);
+		assertTrue(compressed.length * 4 < resource.getBytes().length);
+	}
+
+	private String bundle(int entries) {
+		StringBuilder bundle = new StringBuilder("{\"resourceType\":\"Bundle\",\"type\":\"transaction\",\"entry\":[");
+		for (int i = 0; i < entries; i++) {
+			if (i > 0) {
+				bundle.append(",");
+			}
+			bundle.append(String.format(ENTRY, i, i, i * 37));
+		}
+		return bundle.append("]}").toString();
+	}
+}
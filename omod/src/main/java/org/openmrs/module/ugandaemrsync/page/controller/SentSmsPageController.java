@@ -3,6 +3,7 @@ package org.openmrs.module.ugandaemrsync.page.controller;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.appui.UiSessionContext;
+import org.openmrs.module.ugandaemrsync.api.ConnectivityMonitor;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRHttpURLConnection;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncTaskType;
@@ -31,7 +32,7 @@ public class SentSmsPageController {
 	public void controller(@SpringBean PageModel pageModel,
 	        @RequestParam(value = "breadcrumbOverride", required = false) String breadcrumbOverride,
 	        UiSessionContext sessionContext, PageModel model, UiUtils ui) {
-		if (isGpDhis2OrganizationUuidSet()&&ugandaEMRHttpURLConnection.isConnectionAvailable()) {
+		if (isGpDhis2OrganizationUuidSet()&&ConnectivityMonitor.getInstance().isConnectionAvailable()) {
 
 			UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 			SyncTaskType syncTaskType = ugandaEMRSyncService.getSyncTaskTypeByUUID("d63cb4b5-97ba-4380-aba9-d3f60634cd7a");
@@ -56,6 +56,10 @@ public class SyncFhirProfilePageController {
                      @RequestParam(value = "password", required = false) String password,
                      @RequestParam(value = "token", required = false) String token,
                      @RequestParam(value = "syncLimit", required = false) Integer syncLimit,
+                     @RequestParam(value = "maxConcurrentRequests", required = false) Integer maxConcurrentRequests,
+                     @RequestParam(value = "compressResources", required = false, defaultValue = "false") String compressResources,
+                     @RequestParam(value = "gzipRequests", required = false, defaultValue = "false") String gzipRequests,
+                     @RequestParam(value = "addressKeyMapping", required = false) String addressKeyMapping,
                      UiSessionContext uiSessionContext, UiUtils uiUtils, HttpServletRequest request) {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 
@@ -100,6 +104,10 @@ public class SyncFhirProfilePageController {
         syncFhirProfile.setUrlPassword(password);
         syncFhirProfile.setUrlToken(token);
         syncFhirProfile.setSyncLimit(syncLimit);
+        syncFhirProfile.setMaxConcurrentRequests(maxConcurrentRequests);
+        syncFhirProfile.setCompressResources(Boolean.parseBoolean(compressResources));
+        syncFhirProfile.setGzipRequests(Boolean.parseBoolean(gzipRequests));
+        syncFhirProfile.setAddressKeyMapping(addressKeyMapping);
         syncFhirProfile.setSearchable(Boolean.parseBoolean(searchable));
         syncFhirProfile.setSearchURL(searchURL);
         ugandaEMRSyncService.saveSyncFhirProfile(syncFhirProfile);
@@ -39,7 +39,7 @@ public class SyncTaskTypePageController {
         pageModel.put("breadcrumbOverride", breadcrumbOverride);
     }
 
-    public void post(@SpringBean PageModel pageModel, @RequestParam(value = "returnUrl", required = false) String returnUrl, @RequestParam(value = "syncTaskTypeName", required = false) String name, @RequestParam(value = "syncTaskTypeId", required = false) String syncTaskTypeId, @RequestParam(value = "dataType", required = false) String dataType, @RequestParam(value = "url", required = false) String url, @RequestParam(value = "username", required = false) String username, @RequestParam(value = "password", required = false) String password, @RequestParam(value = "token", required = false) String token, @RequestParam(value = "dataTypeId", required = false) String dataTypeId, UiSessionContext uiSessionContext, UiUtils uiUtils, HttpServletRequest request) {
+    public void post(@SpringBean PageModel pageModel, @RequestParam(value = "returnUrl", required = false) String returnUrl, @RequestParam(value = "syncTaskTypeName", required = false) String name, @RequestParam(value = "syncTaskTypeId", required = false) String syncTaskTypeId, @RequestParam(value = "dataType", required = false) String dataType, @RequestParam(value = "url", required = false) String url, @RequestParam(value = "username", required = false) String username, @RequestParam(value = "password", required = false) String password, @RequestParam(value = "token", required = false) String token, @RequestParam(value = "dataTypeId", required = false) String dataTypeId, @RequestParam(value = "gzipRequests", required = false, defaultValue = "false") String gzipRequests, UiSessionContext uiSessionContext, UiUtils uiUtils, HttpServletRequest request) {
         UgandaEMRSyncService ugandaEMRSyncService = Context.getService(UgandaEMRSyncService.class);
 
 
@@ -53,6 +53,7 @@ public class SyncTaskTypePageController {
             neSyncTaskType.setUrlPassword(password);
             neSyncTaskType.setUrlToken(token);
             neSyncTaskType.setDataTypeId(dataTypeId);
+            neSyncTaskType.setGzipRequests(Boolean.parseBoolean(gzipRequests));
             neSyncTaskType.setCreator(Context.getAuthenticatedUser());
             ugandaEMRSyncService.saveSyncTaskType(neSyncTaskType);
         } else {
@@ -65,6 +66,7 @@ public class SyncTaskTypePageController {
             syncTaskType.setUrlPassword(password);
             syncTaskType.setUrlToken(token);
             syncTaskType.setDataTypeId(dataTypeId);
+            syncTaskType.setGzipRequests(Boolean.parseBoolean(gzipRequests));
             syncTaskType.setDateChanged(new Date());
             syncTaskType.setChangedBy(Context.getAuthenticatedUser());
             ugandaEMRSyncService.saveSyncTaskType(syncTaskType);
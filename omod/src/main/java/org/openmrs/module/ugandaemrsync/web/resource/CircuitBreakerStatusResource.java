@@ -0,0 +1,48 @@
+package org.openmrs.module.ugandaemrsync.web.resource;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreaker;
+import org.openmrs.module.ugandaemrsync.api.CircuitBreakerRegistry;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + CircuitBreakerStatusResource.DATASET)
+public class CircuitBreakerStatusResource {
+    public static final String DATASET = "/synccircuitbreaker";
+
+    @ExceptionHandler(APIAuthenticationException.class)
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Object getCircuitBreakers() {
+        try {
+            List<SimpleObject> circuitBreakers = new ArrayList<>();
+            for (CircuitBreaker circuitBreaker : CircuitBreakerRegistry.getInstance().getCircuitBreakers()) {
+                SimpleObject status = new SimpleObject();
+                status.put("destination", circuitBreaker.getDestination());
+                status.put("state", circuitBreaker.getState().name());
+                status.put("consecutiveFailures", circuitBreaker.getConsecutiveFailures());
+                status.put("timesOpened", circuitBreaker.getTimesOpened());
+                status.put("openUntil", circuitBreaker.getOpenUntil());
+                status.put("lastFailureDate", circuitBreaker.getLastFailureDate());
+                circuitBreakers.add(status);
+            }
+
+            SimpleObject result = new SimpleObject();
+            result.put("results", circuitBreakers);
+            return new ResponseEntity<Object>(result, HttpStatus.OK);
+        } catch (Exception ex) {
+            return new ResponseEntity<String>("{Error: " + ex.getMessage() + "}", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.openmrs.module.ugandaemrsync.web.resource;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.module.ugandaemrsync.api.ConceptCodingCache;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + ConceptCodingCacheResource.DATASET)
+public class ConceptCodingCacheResource {
+    public static final String DATASET = "/syncconceptcodingcache";
+
+    @ExceptionHandler(APIAuthenticationException.class)
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Object getConceptCodingCacheStatistics() {
+        try {
+            ConceptCodingCache conceptCodingCache = ConceptCodingCache.getInstance();
+            SimpleObject statistics = new SimpleObject();
+            statistics.put("size", conceptCodingCache.getSize());
+            statistics.put("maxSize", conceptCodingCache.getMaxSize());
+            statistics.put("hits", conceptCodingCache.getHits());
+            statistics.put("misses", conceptCodingCache.getMisses());
+            statistics.put("hitRate", conceptCodingCache.getHitRate());
+            statistics.put("evictions", conceptCodingCache.getEvictions());
+            statistics.put("invalidations", conceptCodingCache.getInvalidations());
+            return new ResponseEntity<Object>(statistics, HttpStatus.OK);
+        } catch (Exception ex) {
+            return new ResponseEntity<String>("{Error: " + ex.getMessage() + "}", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
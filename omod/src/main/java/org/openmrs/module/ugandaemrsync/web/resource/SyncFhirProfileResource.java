@@ -92,6 +92,10 @@ public class SyncFhirProfileResource extends DelegatingCrudResource<SyncFhirProf
 			description.addProperty("conceptSource");
 			description.addProperty("url");
 			description.addProperty("syncLimit");
+			description.addProperty("maxConcurrentRequests");
+			description.addProperty("compressResources");
+			description.addProperty("gzipRequests");
+			description.addProperty("addressKeyMapping");
 			description.addProperty("urlToken");
 			description.addProperty("urlUserName");
 			description.addProperty("urlPassword");
@@ -120,6 +124,10 @@ public class SyncFhirProfileResource extends DelegatingCrudResource<SyncFhirProf
 			description.addProperty("conceptSource", Representation.REF);
 			description.addProperty("url");
 			description.addProperty("syncLimit");
+			description.addProperty("maxConcurrentRequests");
+			description.addProperty("compressResources");
+			description.addProperty("gzipRequests");
+			description.addProperty("addressKeyMapping");
 			description.addProperty("urlToken");
 			description.addProperty("urlUserName");
 			description.addProperty("urlPassword");
@@ -155,6 +163,10 @@ public class SyncFhirProfileResource extends DelegatingCrudResource<SyncFhirProf
 			description.addProperty("conceptSource", Representation.REF);
 			description.addProperty("url");
 			description.addProperty("syncLimit");
+			description.addProperty("maxConcurrentRequests");
+			description.addProperty("compressResources");
+			description.addProperty("gzipRequests");
+			description.addProperty("addressKeyMapping");
 			description.addProperty("urlToken");
 			description.addProperty("urlUserName");
 			description.addProperty("urlPassword");
@@ -195,6 +207,10 @@ public class SyncFhirProfileResource extends DelegatingCrudResource<SyncFhirProf
 		description.addProperty("resourceSearchParameter");
 		description.addProperty("conceptSource");
 		description.addProperty("syncLimit");
+		description.addProperty("maxConcurrentRequests");
+		description.addProperty("compressResources");
+		description.addProperty("gzipRequests");
+		description.addProperty("addressKeyMapping");
 		description.addProperty("url");
 		description.addProperty("urlToken");
 		description.addProperty("urlUserName");
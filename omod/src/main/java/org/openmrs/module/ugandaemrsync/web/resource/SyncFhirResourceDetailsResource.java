@@ -11,7 +11,7 @@ import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
-import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResourceArchive;
 import org.openmrs.module.ugandaemrsync.web.resource.DTO.FhirResourceDetails;
 import org.openmrs.module.ugandaemrsync.web.resource.mapper.ConverterHelper;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -129,6 +129,7 @@ public class SyncFhirResourceDetailsResource extends DelegatingCrudResource<Sync
 
 		SyncFhirProfile syncFhirProfile = ugandaEMRSyncService.getSyncFhirProfileByUUID(profileId);
 		List<SyncFhirResource> SyncFhirResourcesByQuery = new ArrayList<>();
+		List<SyncFhirResourceArchive> syncFhirResourceArchives = new ArrayList<>();
 		if(startDateString != null &&endDateString != null) {
 
 			try {
@@ -143,6 +144,7 @@ public class SyncFhirResourceDetailsResource extends DelegatingCrudResource<Sync
 					Date synceDateTo = DateUtil.parseYmd(endDateString);
 
 					SyncFhirResourcesByQuery = ugandaEMRSyncService.getSyncFHIRResourceBySyncFhirProfile(syncFhirProfile, startDateString, endDateString);
+					syncFhirResourceArchives = ugandaEMRSyncService.getSyncFhirResourceArchives(syncFhirProfile, synceDateFrom, DateUtil.getEndOfDay(synceDateTo));
 				}
 
 			} catch (Exception ex) {
@@ -153,6 +155,7 @@ public class SyncFhirResourceDetailsResource extends DelegatingCrudResource<Sync
 		if(!SyncFhirResourcesByQuery.isEmpty()){
 			fhirResourceDetails = ConverterHelper.convertSyncFhirResources(SyncFhirResourcesByQuery);
 		}
+		fhirResourceDetails.addAll(ConverterHelper.convertSyncFhirResourceArchives(syncFhirResourceArchives));
 
 		return new NeedsPaging<FhirResourceDetails>(fhirResourceDetails, context);
 	}
@@ -18,13 +18,12 @@ import org.openmrs.module.webservices.rest.web.representation.FullRepresentation
 import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -62,9 +61,16 @@ public class SyncFhirResourceResource extends DelegatingCrudResource<SyncFhirRes
     }
 
     @Override
-    public NeedsPaging<SyncFhirResource> doGetAll(RequestContext context) throws ResponseException {
-        return new NeedsPaging<SyncFhirResource>(new ArrayList<SyncFhirResource>(Context.getService(UgandaEMRSyncService.class)
-                .getAllFHirResources()), context);
+    public PageableResult doGetAll(RequestContext context) throws ResponseException {
+        List<SyncFhirResource> syncFhirResources = Context.getService(UgandaEMRSyncService.class)
+                .getSyncFHIRResourceBySyncFhirProfile(null, true, context.getStartIndex(), context.getLimit() + 1);
+
+        boolean hasMoreResults = syncFhirResources.size() > context.getLimit();
+        if (hasMoreResults) {
+            syncFhirResources = syncFhirResources.subList(0, context.getLimit());
+        }
+
+        return new AlreadyPaged<SyncFhirResource>(context, syncFhirResources, hasMoreResults);
     }
 
     @Override
@@ -158,11 +164,15 @@ public class SyncFhirResourceResource extends DelegatingCrudResource<SyncFhirRes
 
         List<SyncFhirResource> syncFhirResources;
 
+        // fetch one more than the page size to know if there is a next page without loading the whole list
+        syncFhirResources = ugandaEMRSyncService.getSyncFHIRResourceBySyncFhirProfile(generatorProfile, Boolean.parseBoolean(synced), context.getStartIndex(), context.getLimit() + 1);
 
-        syncFhirResources = ugandaEMRSyncService.getSyncFHIRResourceBySyncFhirProfile(generatorProfile, Boolean.parseBoolean(synced));
-
+        boolean hasMoreResults = syncFhirResources.size() > context.getLimit();
+        if (hasMoreResults) {
+            syncFhirResources = syncFhirResources.subList(0, context.getLimit());
+        }
 
-        return new NeedsPaging<SyncFhirResource>(syncFhirResources, context);
+        return new AlreadyPaged<SyncFhirResource>(context, syncFhirResources, hasMoreResults);
     }
 
     @Override
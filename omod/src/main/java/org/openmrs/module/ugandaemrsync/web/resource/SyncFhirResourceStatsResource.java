@@ -5,7 +5,6 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.ugandaemrsync.api.UgandaEMRSyncService;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirProfile;
-import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.springframework.http.HttpStatus;
@@ -17,9 +16,8 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.Map;
 
 @Controller
 @RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + SyncFhirResourceStatsResource.DATASET)
@@ -32,7 +30,6 @@ public class SyncFhirResourceStatsResource {
     @ResponseBody
     public Object getCasesByProfile(@RequestParam String startDate, @RequestParam String endDate,
                                     @RequestParam(required = true, value = "profile") String profile) {
-        List<SyncFhirResource> syncFhirResources = new ArrayList<>();
         try {
             if (!validateDateIsValidFormat(endDate)) {
                 SimpleObject message = new SimpleObject();
@@ -51,21 +48,21 @@ public class SyncFhirResourceStatsResource {
 
                 synceDateTo =DateUtil.getEndOfDay(synceDateTo);
 
-                syncFhirResources = ugandaEMRSyncService.getSyncedFHirResources(syncFhirProfile, synceDateFrom, synceDateTo);
+                // counts resources still in sync_fhir_resource together with archived ones
+                Map<Integer, Integer> countsByStatusCode = ugandaEMRSyncService.getSyncedFhirResourceCountsByStatusCode(syncFhirProfile, synceDateFrom, synceDateTo);
 
-                for (SyncFhirResource resource : syncFhirResources) {
-                    Integer statusCode = 0;
-                    statusCode =resource.getStatusCode();
-                    if (statusCode == 200 || statusCode == 201) {
+                for (Map.Entry<Integer, Integer> count : countsByStatusCode.entrySet()) {
+                    Integer statusCode = count.getKey();
+                    if (statusCode != null && (statusCode == 200 || statusCode == 201)) {
 
-                        successes++;
+                        successes += count.getValue();
                     } else {
 
-                        failures++;
+                        failures += count.getValue();
                     }
                 }
             }
-            String result ="{\"total\":" + syncFhirResources.size() + "," +
+            String result ="{\"total\":" + (successes + failures) + "," +
                     "\"successes\":" + successes+ "," +
                     "\"failures\":" + failures+ "}";
 
@@ -96,6 +96,7 @@ public class SyncTaskTypeResource extends DelegatingCrudResource<SyncTaskType> {
 			description.addProperty("urlPassword");
 			description.addProperty("tokenExpiryDate");
 			description.addProperty("tokenType");
+			description.addProperty("gzipRequests");
 			description.addSelfLink();
 			description.addLink("full", ".?v=" + RestConstants.REPRESENTATION_FULL);
 			return description;
@@ -135,6 +136,7 @@ public class SyncTaskTypeResource extends DelegatingCrudResource<SyncTaskType> {
 		description.addProperty("tokenExpiryDate");
 		description.addProperty("tokenType");
 		description.addProperty("tokenRefreshKey");
+		description.addProperty("gzipRequests");
 
 		return description;
 	}
@@ -0,0 +1,63 @@
+package org.openmrs.module.ugandaemrsync.web.resource;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.module.ugandaemrsync.api.TransferStatistics;
+import org.openmrs.module.ugandaemrsync.api.TransferStatisticsRegistry;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + TransferStatisticsResource.DATASET)
+public class TransferStatisticsResource {
+    public static final String DATASET = "/synctransferstatistics";
+
+    @ExceptionHandler(APIAuthenticationException.class)
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Object getTransferStatistics() {
+        try {
+            TransferStatisticsRegistry transferStatisticsRegistry = TransferStatisticsRegistry.getInstance();
+            List<SimpleObject> destinations = new ArrayList<>();
+            for (TransferStatistics lastRun : transferStatisticsRegistry.getLastRuns()) {
+                SimpleObject destination = new SimpleObject();
+                destination.put("destination", lastRun.getDestination());
+                destination.put("lastRun", toSimpleObject(lastRun));
+                destination.put("total", toSimpleObject(transferStatisticsRegistry.getTotals(lastRun.getDestination())));
+                destinations.add(destination);
+            }
+
+            SimpleObject result = new SimpleObject();
+            result.put("results", destinations);
+            return new ResponseEntity<Object>(result, HttpStatus.OK);
+        } catch (Exception ex) {
+            return new ResponseEntity<String>("{Error: " + ex.getMessage() + "}", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private SimpleObject toSimpleObject(TransferStatistics transferStatistics) {
+        SimpleObject statistics = new SimpleObject();
+        if (transferStatistics == null) {
+            return statistics;
+        }
+        statistics.put("startDate", transferStatistics.getStartDate());
+        statistics.put("endDate", transferStatistics.getEndDate());
+        statistics.put("requests", transferStatistics.getRequests());
+        statistics.put("contentBytes", transferStatistics.getContentBytes());
+        statistics.put("sentBytes", transferStatistics.getSentBytes());
+        statistics.put("receivedBytes", transferStatistics.getReceivedBytes());
+        statistics.put("bytesSaved", transferStatistics.getBytesSaved());
+        statistics.put("transferTime", transferStatistics.getTransferTime());
+        statistics.put("estimatedTimeSaved", transferStatistics.getEstimatedTimeSaved());
+        return statistics;
+    }
+}
@@ -7,6 +7,7 @@ import org.openmrs.PatientIdentifierType;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ugandaemrsync.model.SyncFhirResource;
+import org.openmrs.module.ugandaemrsync.model.SyncFhirResourceArchive;
 import org.openmrs.module.ugandaemrsync.model.SyncTask;
 import org.openmrs.module.ugandaemrsync.web.resource.DTO.FhirResourceDetails;
 import org.openmrs.module.ugandaemrsync.web.resource.DTO.SyncTaskDetails;
@@ -60,13 +61,17 @@ public class ConverterHelper {
     }
 
     public static FhirResourceDetails convertSyncFhirResourceDetails(SyncFhirResource syncFhirResource) {
+        return convertFhirResourceDetails(syncFhirResource.getPatient(), syncFhirResource.getStatusCode(), syncFhirResource.getDateCreated(), syncFhirResource.getDateSynced());
+    }
+
+    public static FhirResourceDetails convertSyncFhirResourceArchiveDetails(SyncFhirResourceArchive syncFhirResourceArchive) {
+        return convertFhirResourceDetails(syncFhirResourceArchive.getPatient(), syncFhirResourceArchive.getStatusCode(), syncFhirResourceArchive.getDateCreated(), syncFhirResourceArchive.getDateSynced());
+    }
+
+    private static FhirResourceDetails convertFhirResourceDetails(Patient patient, Integer statusCode, Date dateCreated, Date dateSent) {
 
         PatientIdentifierType identifierType = Context.getPatientService().getPatientIdentifierTypeByUuid(UIC_IDENTIFIER_TYPE);
 
-        Patient patient = syncFhirResource.getPatient();
-        Date dateSent = syncFhirResource.getDateSynced();
-        Date dateCreated = syncFhirResource.getDateCreated();
-        Integer statusCode = syncFhirResource.getStatusCode();
         String status= "";
         if(statusCode!=null){
             status = convertStatusCode(statusCode);
@@ -113,6 +118,14 @@ public class ConverterHelper {
         return result;
     }
 
+    public static List<FhirResourceDetails> convertSyncFhirResourceArchives(List<SyncFhirResourceArchive> syncFhirResourceArchives) {
+        List<FhirResourceDetails> result = new ArrayList<>();
+        for (SyncFhirResourceArchive syncFhirResourceArchive : syncFhirResourceArchives) {
+            result.add(convertSyncFhirResourceArchiveDetails(syncFhirResourceArchive));
+        }
+        return result;
+    }
+
     public static String convertStatusCode(int statusCode) {
         if (statusCode == 200 || statusCode == 201) {
             return "Successfully sent";